@@ -0,0 +1,128 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.app.Instrumentation;
+import android.media.AudioManager;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for AudioFocusController's state machine; focus changes are delivered by hand, as the system would.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AudioFocusControllerTest {
+
+    private final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+    private FakeTarget target;
+    private AudioFocusController controller;
+
+    @Before
+    public void setUp() {
+        target = new FakeTarget();
+        instrumentation.runOnMainSync(() -> {
+            controller = new AudioFocusController(instrumentation.getTargetContext(), target);
+            assertTrue(controller.requestFocus());
+        });
+    }
+
+    @After
+    public void tearDown() {
+        instrumentation.runOnMainSync(() -> controller.abandonFocus());
+    }
+
+    @Test
+    public void duck_rampsVolumeDownAndBackUp_withoutPausing() {
+        focusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK);
+        awaitVolume(AudioFocusController.DUCK_VOLUME);
+
+        focusChange(AudioManager.AUDIOFOCUS_GAIN);
+        awaitVolume(1f);
+
+        assertEquals(0, target.pauses);
+        // a ramp, not a jump
+        assertTrue(target.volumeChanges > 2);
+    }
+
+    @Test
+    public void transientLoss_pausesAndGain_resumes() {
+        focusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        assertEquals(1, target.pauses);
+
+        focusChange(AudioManager.AUDIOFOCUS_GAIN);
+        assertEquals(1, target.plays);
+    }
+
+    @Test
+    public void pausedByUser_duringTransientLoss_isNotResumed() {
+        focusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        instrumentation.runOnMainSync(() -> controller.onPaused());
+
+        focusChange(AudioManager.AUDIOFOCUS_GAIN);
+        assertEquals(0, target.plays);
+    }
+
+    @Test
+    public void permanentLoss_pausesAndGivesUpFocus() {
+        focusChange(AudioManager.AUDIOFOCUS_LOSS);
+        assertEquals(1, target.pauses);
+        instrumentation.runOnMainSync(() -> assertFalse(controller.hasFocus()));
+
+        // nothing is held any more, so nothing is resumed
+        focusChange(AudioManager.AUDIOFOCUS_GAIN);
+        assertEquals(0, target.plays);
+    }
+
+    @Test
+    public void requestFocus_whileHoldingIt_keepsTheSession() {
+        instrumentation.runOnMainSync(() -> {
+            assertTrue(controller.requestFocus());
+            assertTrue(controller.hasFocus());
+        });
+        focusChange(AudioManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        assertEquals(1, target.pauses);
+    }
+
+    private void focusChange(int focusChange) {
+        instrumentation.runOnMainSync(() -> controller.onAudioFocusChange(focusChange));
+    }
+
+    private void awaitVolume(float volume) {
+        long deadlineMs = SystemClock.uptimeMillis() + 2000;
+        while (target.volume != volume && SystemClock.uptimeMillis() < deadlineMs) {
+            SystemClock.sleep(10);
+        }
+        assertEquals(volume, target.volume, 0f);
+    }
+
+    // only touched on the main thread; read from the test thread after runOnMainSync() (or while polling)
+    private static class FakeTarget implements AudioFocusController.PlaybackTarget {
+        volatile int plays;
+        volatile int pauses;
+        volatile int volumeChanges;
+        volatile float volume = 1f;
+
+        @Override
+        public void play() {
+            plays++;
+        }
+
+        @Override
+        public void pause() {
+            pauses++;
+        }
+
+        @Override
+        public void setVolume(float volume) {
+            volumeChanges++;
+            this.volume = volume;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks every BufferingProfile against a local stand-in server streaming a WAV file at a throttled rate.
+ * Reports time-to-first-audio (play() until the player is actually playing) and peak buffer memory
+ * (DefaultAllocator's total bytes allocated, sampled while loading).
+ * Results are logged under the "BufferingBenchmark" tag and sent as instrumentation status.
+ */
+@UnstableApi
+@RunWith(AndroidJUnit4.class)
+public class BufferingProfileBenchmark {
+
+    private static final String TAG = "BufferingBenchmark";
+
+    private static final int SAMPLE_RATE = 44_100;
+    private static final int CHANNELS = 2;
+    private static final int DURATION_SECONDS = 120;
+    // ~6x real time for 16-bit stereo 44.1 kHz, like a decent mobile connection
+    private static final long THROTTLE_BYTES_PER_SECOND = 1024 * 1024;
+    private static final long OBSERVE_MS = 8_000;
+
+    private LocalHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalHttpServer(sineWav(), "audio/wav");
+        server.setThrottleBytesPerSecond(THROTTLE_BYTES_PER_SECOND);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void benchmarkProfiles() throws InterruptedException {
+        Map<BufferingProfile, long[]> results = new EnumMap<>(BufferingProfile.class);
+        for (BufferingProfile profile : BufferingProfile.values()) {
+            long[] result = run(profile);
+            results.put(profile, result);
+            String line = profile + ": timeToFirstAudioMs=" + result[0] + " peakBufferBytes=" + result[1];
+            Log.i(TAG, line);
+            Bundle status = new Bundle();
+            status.putString("stream", TAG + " " + line + "\n");
+            InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+        }
+
+        // sanity checks on the shape of the results, not absolute numbers (those depend on the device)
+        for (long[] result : results.values()) {
+            assertTrue("never started playing", result[0] >= 0);
+        }
+        assertTrue(results.get(BufferingProfile.LOW_MEMORY)[1] <= results.get(BufferingProfile.HIGH_RESILIENCE)[1]);
+        assertTrue(results.get(BufferingProfile.LOW_LATENCY_START)[0] <= results.get(BufferingProfile.HIGH_RESILIENCE)[0]);
+    }
+
+    // returns {time to first audio in ms (-1 if it never played), peak allocated buffer bytes}
+    private long[] run(BufferingProfile profile) throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        CountDownLatch playing = new CountDownLatch(1);
+        AtomicLong timeToFirstAudioMs = new AtomicLong(-1);
+        AtomicLong peakBytes = new AtomicLong();
+        ExoPlayer[] player = new ExoPlayer[1];
+        DefaultAllocator allocator = BufferingProfile.newAllocator();
+
+        Runnable sampler = new Runnable() {
+            @Override
+            public void run() {
+                peakBytes.set(Math.max(peakBytes.get(), allocator.getTotalBytesAllocated()));
+                mainHandler.postDelayed(this, 20);
+            }
+        };
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            long startMs = SystemClock.elapsedRealtime();
+            player[0] = new ExoPlayer.Builder(context)
+                    .setLoadControl(profile.buildLoadControl(allocator))
+                    .build();
+            player[0].addListener(new Player.Listener() {
+                @Override
+                public void onIsPlayingChanged(boolean isPlaying) {
+                    if (isPlaying && timeToFirstAudioMs.get() < 0) {
+                        timeToFirstAudioMs.set(SystemClock.elapsedRealtime() - startMs);
+                        playing.countDown();
+                    }
+                }
+            });
+            // a new URL per run, so nothing is reused between profiles
+            player[0].setMediaItem(MediaItem.fromUri(server.url("/" + profile.name() + ".wav")));
+            player[0].setVolume(0f);
+            player[0].setPlayWhenReady(true);
+            player[0].prepare();
+            mainHandler.post(sampler);
+        });
+
+        playing.await(30, TimeUnit.SECONDS);
+        // keep loading for a while, so the buffer reaches its steady-state size
+        Thread.sleep(OBSERVE_MS);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            mainHandler.removeCallbacks(sampler);
+            peakBytes.set(Math.max(peakBytes.get(), allocator.getTotalBytesAllocated()));
+            player[0].release();
+        });
+        return new long[]{timeToFirstAudioMs.get(), peakBytes.get()};
+    }
+
+    // a 440 Hz tone as a 16-bit PCM WAV file
+    private static byte[] sineWav() {
+        int dataBytes = SAMPLE_RATE * CHANNELS * 2 * DURATION_SECONDS;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[]{'R', 'I', 'F', 'F'}).putInt(36 + dataBytes).put(new byte[]{'W', 'A', 'V', 'E'});
+        buffer.put(new byte[]{'f', 'm', 't', ' '}).putInt(16).putShort((short) 1).putShort((short) CHANNELS)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * CHANNELS * 2).putShort((short) (CHANNELS * 2)).putShort((short) 16);
+        buffer.put(new byte[]{'d', 'a', 't', 'a'}).putInt(dataBytes);
+        for (int i = 0; i < SAMPLE_RATE * DURATION_SECONDS; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 8000);
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                buffer.putShort(sample);
+            }
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaMetadataCompat;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Microbenchmarks of what onLoadChildren() costs at 1k/10k/100k children: looking a page (or the whole list) up in MediaCatalog
+ * and flattening it into a Parcel, which is what sending the Result over binder does. Also times a full catalog rebuild.
+ */
+@RunWith(Parameterized.class)
+public class CatalogBenchmark {
+
+    private static final String ROOT_ID = "root";
+    private static final String ALBUM_ID = MediaCatalog.ALBUM_PREFIX + "Benchmark";
+    private static final int PAGE_SIZE = 50;
+
+    @Parameterized.Parameters(name = "children={0}")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{1_000}, {10_000}, {100_000}});
+    }
+
+    @Parameterized.Parameter
+    public int childCount;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private MediaCatalog mediaCatalog;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        List<MediaMetadataCompat> tracks = new ArrayList<>(childCount);
+        for (int i = 0; i < childCount; i++) {
+            String mediaUri = "content://media/external/audio/media/" + i;
+            tracks.add(new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, MediaCatalog.TRACK_PREFIX + mediaUri)
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI, mediaUri)
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, "Track " + i)
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, "Artist")
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, "Benchmark")
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI, "content://media/external/audio/albumart/1")
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, 180_000)
+                    .build());
+        }
+        mediaCatalog = new MediaCatalog(ROOT_ID, () -> tracks);
+        mediaCatalog.buildAsync();
+        awaitReady();
+        assertEquals(childCount, mediaCatalog.getChildren(ALBUM_ID, null).size());
+    }
+
+    @After
+    public void tearDown() {
+        mediaCatalog.release();
+    }
+
+    // a paging client (ex. Android Auto) asking for one page
+    @Test
+    public void loadPage() {
+        Bundle options = new Bundle();
+        options.putInt(MediaBrowserCompat.EXTRA_PAGE, 3);
+        options.putInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, PAGE_SIZE);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            flatten(mediaCatalog.getChildren(ALBUM_ID, options));
+        }
+    }
+
+    // a client asking for everything at once
+    @Test
+    public void loadAllChildren() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            flatten(mediaCatalog.getChildren(ALBUM_ID, null));
+        }
+    }
+
+    // what a library change costs before the new tree is swapped in
+    @Test
+    public void rebuild() throws InterruptedException {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            CountDownLatch rebuilt = new CountDownLatch(1);
+            mediaCatalog.rebuildAsync(rebuilt::countDown);
+            assertTrue(rebuilt.await(60, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void flatten(List<MediaBrowserCompat.MediaItem> children) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeTypedList(children);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private void awaitReady() throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        mediaCatalog.whenReady(ready::countDown);
+        assertTrue(ready.await(60, TimeUnit.SECONDS));
+    }
+}
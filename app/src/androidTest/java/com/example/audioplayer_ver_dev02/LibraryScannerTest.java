@@ -0,0 +1,200 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.v4.media.MediaMetadataCompat;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for LibraryScanner, against a fake MediaStore provider that keeps generation numbers like the real one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LibraryScannerTest {
+
+    private static final Uri COLLECTION_URI = Uri.parse("content://media/external/audio/media");
+
+    private FakeMediaProvider provider;
+    private LibraryScanner scanner;
+
+    @Before
+    public void setUp() {
+        provider = new FakeMediaProvider();
+        MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider("media", provider);
+        scanner = new LibraryScanner(resolver, COLLECTION_URI, provider);
+    }
+
+    @Test
+    public void firstScan_isFullAndIndexesEveryMusicRow() {
+        provider.put(1, "One", "Album A");
+        provider.put(2, "Two", "Album A");
+        provider.putNotMusic(3, "Ringtone");
+
+        LibraryScanner.ScanResult result = scanner.scan();
+
+        assertTrue(result.full);
+        assertEquals(2, scanner.getTracks().size());
+        MediaMetadataCompat first = scanner.getTracks().get(0);
+        assertEquals(MediaCatalog.TRACK_PREFIX + COLLECTION_URI + "/1", first.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID));
+        assertEquals("One", first.getString(MediaMetadataCompat.METADATA_KEY_TITLE));
+        assertEquals("Album A", first.getString(MediaMetadataCompat.METADATA_KEY_ALBUM));
+        assertEquals(3, first.getLong(MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER));
+    }
+
+    @Test
+    public void rescan_withoutChanges_readsNoRows() {
+        for (int i = 1; i <= 100; i++) {
+            provider.put(i, "Track " + i, "Album");
+        }
+        scanner.scan();
+        provider.metadataRowsReturned = 0;
+
+        LibraryScanner.ScanResult result = scanner.scan();
+
+        assertFalse(result.hasChanges());
+        assertEquals(0, provider.metadataRowsReturned);
+        assertEquals(100, scanner.getTracks().size());
+    }
+
+    @Test
+    public void rescan_readsOnlyAddedAndChangedRows() {
+        for (int i = 1; i <= 100; i++) {
+            provider.put(i, "Track " + i, "Album");
+        }
+        scanner.scan();
+        provider.metadataRowsReturned = 0;
+
+        provider.put(50, "Track 50 (remastered)", "Other Album");
+        provider.put(101, "Track 101", "Album");
+        LibraryScanner.ScanResult result = scanner.scan();
+
+        assertFalse(result.full);
+        assertEquals(2, result.addedOrChanged.size());
+        assertEquals(1, result.replaced.size());
+        assertEquals("Album", result.replaced.get(0).getString(MediaMetadataCompat.METADATA_KEY_ALBUM));
+        assertTrue(result.removed.isEmpty());
+        assertEquals(2, provider.metadataRowsReturned);
+        assertEquals(101, scanner.getTracks().size());
+    }
+
+    @Test
+    public void rescan_findsDeletedRows() {
+        provider.put(1, "One", "Album");
+        provider.put(2, "Two", "Album");
+        provider.put(3, "Three", "Album");
+        scanner.scan();
+
+        provider.delete(2);
+        LibraryScanner.ScanResult result = scanner.scan();
+
+        assertEquals(1, result.removed.size());
+        assertEquals("Two", result.removed.get(0).getString(MediaMetadataCompat.METADATA_KEY_TITLE));
+        assertEquals(2, scanner.getTracks().size());
+    }
+
+    @Test
+    public void versionChange_forcesFullScan() {
+        provider.put(1, "One", "Album");
+        scanner.scan();
+
+        provider.version = "rebuilt";
+        provider.delete(1);
+        provider.put(7, "Seven", "Album");
+        LibraryScanner.ScanResult result = scanner.scan();
+
+        assertTrue(result.full);
+        assertEquals(1, scanner.getTracks().size());
+        assertEquals("Seven", scanner.getTracks().get(0).getString(MediaMetadataCompat.METADATA_KEY_TITLE));
+    }
+
+    // a MediaStore stand-in: every insert/update bumps the generation and stamps the row with it
+    // understands exactly the selections LibraryScanner uses
+    private static class FakeMediaProvider extends MockContentProvider implements LibraryScanner.VersionSource {
+
+        private final Map<Long, Object[]> rows = new LinkedHashMap<>();
+        String version = "1";
+        long generation;
+        int metadataRowsReturned;
+
+        void put(long id, String title, String album) {
+            generation++;
+            rows.put(id, new Object[]{id, title, "Artist", album, (long) album.hashCode(), 180_000L, "3/12", generation, 1});
+        }
+
+        void putNotMusic(long id, String title) {
+            generation++;
+            rows.put(id, new Object[]{id, title, null, null, 0L, 1_000L, null, generation, 0});
+        }
+
+        void delete(long id) {
+            rows.remove(id);
+        }
+
+        @NonNull
+        @Override
+        public String getVersion() {
+            return version;
+        }
+
+        @Override
+        public long getGeneration() {
+            return generation;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            String[] columns = {
+                    MediaStore.Audio.Media._ID,
+                    MediaStore.Audio.Media.TITLE,
+                    MediaStore.Audio.Media.ARTIST,
+                    MediaStore.Audio.Media.ALBUM,
+                    MediaStore.Audio.Media.ALBUM_ID,
+                    MediaStore.Audio.Media.DURATION,
+                    MediaStore.Audio.Media.CD_TRACK_NUMBER,
+                    MediaStore.Audio.Media.GENERATION_MODIFIED,
+                    MediaStore.Audio.Media.IS_MUSIC,
+            };
+            long minGeneration = selection != null && selection.contains(MediaStore.Audio.Media.GENERATION_MODIFIED)
+                    ? Long.parseLong(selectionArgs[0]) : Long.MIN_VALUE;
+
+            MatrixCursor cursor = new MatrixCursor(projection);
+            List<Object> values = new ArrayList<>(projection.length);
+            for (Object[] row : rows.values()) {
+                if ((int) row[8] == 0 || (long) row[7] <= minGeneration) {
+                    continue;
+                }
+                values.clear();
+                for (String column : projection) {
+                    for (int i = 0; i < columns.length; i++) {
+                        if (columns[i].equals(column)) {
+                            values.add(row[i]);
+                        }
+                    }
+                }
+                cursor.addRow(values);
+                // ID-only queries (counting, finding deletions) don't count; they're what keeps rescans cheap
+                if (projection.length > 1) {
+                    metadataRowsReturned++;
+                }
+            }
+            return cursor;
+        }
+    }
+}
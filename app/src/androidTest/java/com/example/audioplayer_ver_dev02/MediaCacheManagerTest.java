@@ -0,0 +1,133 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for MediaCacheManager, against a local stand-in HTTP server serving a test file.
+ */
+@UnstableApi
+@RunWith(AndroidJUnit4.class)
+public class MediaCacheManagerTest {
+
+    private static final int FILE_SIZE = 3 * 1024 * 1024;
+
+    private byte[] file;
+    private File cacheDir;
+    private LocalHttpServer server;
+    private MediaCacheManager mediaCacheManager;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        file = new byte[FILE_SIZE];
+        new Random(42).nextBytes(file);
+        server = new LocalHttpServer(file, "audio/mpeg");
+        cacheDir = new File(context.getCacheDir(), "media-test-" + SystemClock.elapsedRealtimeNanos());
+        mediaCacheManager = new MediaCacheManager(context, cacheDir, 8L * 1024 * 1024, new DefaultHttpDataSource.Factory());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mediaCacheManager.release();
+        server.close();
+        deleteRecursively(cacheDir);
+    }
+
+    @Test
+    public void secondRead_isServedFromCache() throws IOException {
+        Uri uri = Uri.parse(server.url("/track.mp3"));
+
+        assertArrayEquals(file, read(uri, 0, C.LENGTH_UNSET));
+        int requestsAfterFirstRead = server.getRequestCount();
+
+        assertArrayEquals(file, read(uri, 0, C.LENGTH_UNSET));
+        assertEquals(requestsAfterFirstRead, server.getRequestCount());
+    }
+
+    @Test
+    public void seekBackIntoFetchedRange_doesNotHitNetwork() throws IOException {
+        Uri uri = Uri.parse(server.url("/track.mp3"));
+
+        // the player read the middle of the file, then the user seeks back inside that range
+        read(uri, 1024 * 1024, 1024 * 1024);
+        int requests = server.getRequestCount();
+
+        byte[] again = read(uri, 1536 * 1024, 256 * 1024);
+        assertArrayEquals(Arrays.copyOfRange(file, 1536 * 1024, 1792 * 1024), again);
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void precache_fetchesStartOfUpcomingItem() throws Exception {
+        Uri uri = Uri.parse(server.url("/next.mp3"));
+
+        mediaCacheManager.precache(uri);
+        long deadline = SystemClock.elapsedRealtime() + 10_000;
+        while (mediaCacheManager.getCachedBytes(uri, 0, MediaCacheManager.PRECACHE_BYTES) < MediaCacheManager.PRECACHE_BYTES
+                && SystemClock.elapsedRealtime() < deadline) {
+            Thread.sleep(20);
+        }
+        int requests = server.getRequestCount();
+
+        assertArrayEquals(Arrays.copyOf(file, 64 * 1024), read(uri, 0, 64 * 1024));
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void cacheSize_isBoundedByEviction() throws IOException {
+        // 4 distinct 3 MB files through an 8 MB cache
+        for (int i = 0; i < 4; i++) {
+            read(Uri.parse(server.url("/track" + i + ".mp3")), 0, C.LENGTH_UNSET);
+        }
+        assertTrue(mediaCacheManager.getCacheSpace() <= 8L * 1024 * 1024);
+    }
+
+    private byte[] read(Uri uri, long position, long length) throws IOException {
+        DataSource dataSource = mediaCacheManager.getDataSourceFactory().createDataSource();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            dataSource.open(new DataSpec.Builder().setUri(uri).setPosition(position).setLength(length).build());
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            dataSource.close();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
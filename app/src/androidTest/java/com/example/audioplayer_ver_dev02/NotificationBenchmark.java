@@ -0,0 +1,100 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.graphics.Color;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.core.app.NotificationCompat;
+import androidx.media.session.MediaButtonReceiver;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Microbenchmarks of building the media notification: updating MediaNotificationManager's one cached builder,
+ * against building everything (PendingIntents, actions, MediaStyle) from scratch on every update.
+ * Posting is left out; that's a binder call to the system whose cost doesn't depend on how the notification was built.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotificationBenchmark {
+
+    private static final String CHANNEL_ID = "benchmark";
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private MediaSessionCompat mediaSession;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> mediaSession = new MediaSessionCompat(context, "NotificationBenchmark"));
+    }
+
+    @After
+    public void tearDown() {
+        mediaSession.release();
+    }
+
+    @Test
+    public void update_cachedBuilder() {
+        NotificationCompat.Builder builder = newBuilder();
+        NotificationCompat.Action playAction = playPauseAction(R.drawable.ic_play_pause, R.string.play);
+        NotificationCompat.Action pauseAction = playPauseAction(R.drawable.ic_pause, R.string.pause);
+        int i = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            boolean playing = (i & 1) == 0;
+            builder.setContentTitle("Title " + i++)
+                    .clearActions()
+                    .addAction(playing ? pauseAction : playAction)
+                    .build();
+        }
+    }
+
+    @Test
+    public void update_newBuilder() {
+        int i = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            boolean playing = (i & 1) == 0;
+            newBuilder()
+                    .setContentTitle("Title " + i++)
+                    .addAction(playing
+                            ? playPauseAction(R.drawable.ic_pause, R.string.pause)
+                            : playPauseAction(R.drawable.ic_play_pause, R.string.play))
+                    .build();
+        }
+    }
+
+    // the same setup MediaNotificationManager does once
+    private NotificationCompat.Builder newBuilder() {
+        PendingIntent stopIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(context, PlaybackStateCompat.ACTION_STOP);
+        return new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setDeleteIntent(stopIntent)
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+                .setSmallIcon(R.drawable.ic_notification_icon_temp)
+                .setColor(Color.argb(255, 0, 50, 100))
+                .setOnlyAlertOnce(true)
+                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(mediaSession.getSessionToken())
+                        .setShowActionsInCompactView(0)
+                        .setShowCancelButton(true)
+                        .setCancelButtonIntent(stopIntent));
+    }
+
+    private NotificationCompat.Action playPauseAction(int icon, int title) {
+        PendingIntent playPauseIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(context, PlaybackStateCompat.ACTION_PLAY_PAUSE);
+        return new NotificationCompat.Action(icon, context.getString(title), playPauseIntent);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for PlaybackStateStore: what one store saves, a new one (a new process) restores.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlaybackStateStoreTest {
+
+    private static final List<PlaybackStateStore.QueueItem> QUEUE = Arrays.asList(
+            new PlaybackStateStore.QueueItem("track:1", "content://media/external/audio/media/1", "One"),
+            new PlaybackStateStore.QueueItem("track:2", "content://media/external/audio/media/2", null),
+            new PlaybackStateStore.QueueItem("track:3", "content://media/external/audio/media/3", "Three"));
+
+    private File directory;
+    private PlaybackStateStore store;
+
+    @Before
+    public void setUp() {
+        directory = new File(InstrumentationRegistry.getInstrumentation().getTargetContext().getCacheDir(), "PlaybackStateStoreTest");
+        deleteRecursively(directory);
+        store = new PlaybackStateStore(directory);
+    }
+
+    @After
+    public void tearDown() {
+        store.release();
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void nothingSaved_restoresNothing() {
+        assertNull(store.restore());
+    }
+
+    @Test
+    public void savedQueueAndPosition_areRestored() {
+        store.saveQueue(QUEUE);
+        store.savePosition(2, 61_000);
+        store.flush();
+
+        PlaybackStateStore.SavedState restored = new PlaybackStateStore(directory).restore();
+
+        assertNotNull(restored);
+        assertEquals(QUEUE, restored.queue);
+        assertEquals("One", restored.queue.get(0).title);
+        assertNull(restored.queue.get(1).title);
+        assertEquals(2, restored.index);
+        assertEquals(61_000, restored.positionMs);
+        assertEquals("track:3", restored.currentItem().mediaId);
+    }
+
+    @Test
+    public void onlyTheLatestPosition_isKept() {
+        store.saveQueue(QUEUE);
+        store.savePosition(0, 1_000);
+        store.savePosition(1, 2_000);
+        store.flush();
+        store.savePosition(1, 3_000);
+        store.flush();
+
+        PlaybackStateStore.SavedState restored = new PlaybackStateStore(directory).restore();
+
+        assertNotNull(restored);
+        assertEquals(1, restored.index);
+        assertEquals(3_000, restored.positionMs);
+    }
+
+    @Test
+    public void newQueue_startsFromItsFirstItem() {
+        store.saveQueue(QUEUE);
+        store.savePosition(2, 61_000);
+        store.flush();
+        store.saveQueue(QUEUE.subList(0, 2));
+        store.flush();
+
+        PlaybackStateStore.SavedState restored = new PlaybackStateStore(directory).restore();
+
+        assertNotNull(restored);
+        assertEquals(2, restored.queue.size());
+        assertEquals(0, restored.index);
+        assertEquals(0, restored.positionMs);
+    }
+
+    @Test
+    public void tornPositionRecord_fallsBackToTheStartOfTheQueue() throws IOException {
+        store.saveQueue(QUEUE);
+        store.savePosition(2, 61_000);
+        store.flush();
+        try (RandomAccessFile position = new RandomAccessFile(new File(directory, "position"), "rw")) {
+            position.seek(10);
+            position.write(0x7f);
+        }
+
+        PlaybackStateStore.SavedState restored = new PlaybackStateStore(directory).restore();
+
+        assertNotNull(restored);
+        assertEquals(QUEUE, restored.queue);
+        assertEquals(0, restored.index);
+        assertEquals(0, restored.positionMs);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
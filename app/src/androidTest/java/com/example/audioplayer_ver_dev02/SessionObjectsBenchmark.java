@@ -0,0 +1,102 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.SystemClock;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.media3.common.Player;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Microbenchmarks of the objects the service builds on every player event: PlaybackStateCompat, MediaMetadataCompat,
+ * PlaybackStatePublisher's "is this worth publishing" check, and PlaybackStateListener's handling of a state change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SessionObjectsBenchmark {
+
+    private static final long ACTIONS = PlaybackStateCompat.ACTION_PLAY
+            | PlaybackStateCompat.ACTION_PAUSE
+            | PlaybackStateCompat.ACTION_SEEK_TO
+            | PlaybackStateCompat.ACTION_SKIP_TO_NEXT;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    // what PlayerSessionBridge does: one builder, reused
+    @Test
+    public void playbackState_reusedBuilder() {
+        PlaybackStateCompat.Builder builder = new PlaybackStateCompat.Builder();
+        long position = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            builder.setActions(ACTIONS)
+                    .setActiveQueueItemId(3)
+                    .setBufferedPosition(position + 30_000)
+                    .setState(PlaybackStateCompat.STATE_PLAYING, position++, 1f, SystemClock.elapsedRealtime())
+                    .build();
+        }
+    }
+
+    @Test
+    public void playbackState_newBuilder() {
+        long position = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            new PlaybackStateCompat.Builder()
+                    .setActions(ACTIONS)
+                    .setActiveQueueItemId(3)
+                    .setBufferedPosition(position + 30_000)
+                    .setState(PlaybackStateCompat.STATE_PLAYING, position++, 1f, SystemClock.elapsedRealtime())
+                    .build();
+        }
+    }
+
+    @Test
+    public void metadata_build() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, "track:content://media/external/audio/media/1")
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI, "content://media/external/audio/media/1")
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, "Title")
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, "Artist")
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, "Album")
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI, "content://media/external/audio/albumart/1")
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, 180_000)
+                    .build();
+        }
+    }
+
+    // the check that keeps most position-only updates from being published at all
+    @Test
+    public void publisher_isExtrapolationOf() {
+        PlaybackStateCompat previous = new PlaybackStateCompat.Builder()
+                .setActions(ACTIONS)
+                .setState(PlaybackStateCompat.STATE_PLAYING, 10_000, 1f, 1_000)
+                .build();
+        PlaybackStateCompat current = new PlaybackStateCompat.Builder()
+                .setActions(ACTIONS)
+                .setState(PlaybackStateCompat.STATE_PLAYING, 11_020, 1f, 2_000)
+                .build();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            PlaybackStatePublisher.isExtrapolationOf(previous, current);
+        }
+    }
+
+    // includes the logcat write
+    @Test
+    public void playbackStateListener_onPlaybackStateChanged() {
+        PlaybackStateListener listener = new PlaybackStateListener();
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            listener.onPlaybackStateChanged(Player.STATE_READY);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.audio.BaseAudioProcessor;
+import androidx.media3.common.util.UnstableApi;
+
+import java.nio.ByteBuffer;
+
+// a pass-through stage in the player's audio sink that hands every buffer to an AudioAnalyzer on the way
+// runs on the player's playback thread, so it only copies: the analyzer mixes the PCM into its ring, and the output buffer
+// is reused by BaseAudioProcessor (nothing is allocated per buffer)
+//
+// 16-bit and float PCM are analyzed; anything else (ex. passthrough or offloaded audio never gets here, but 24/32-bit
+// PCM could) makes the stage inactive, so the sink skips it
+@OptIn(markerClass = UnstableApi.class)
+class AnalyzingAudioProcessor extends BaseAudioProcessor {
+
+    private final AudioAnalyzer audioAnalyzer;
+
+    AnalyzingAudioProcessor(@NonNull AudioAnalyzer audioAnalyzer) {
+        this.audioAnalyzer = audioAnalyzer;
+    }
+
+    @Override
+    protected AudioFormat onConfigure(AudioFormat inputAudioFormat) {
+        if (inputAudioFormat.encoding != C.ENCODING_PCM_16BIT && inputAudioFormat.encoding != C.ENCODING_PCM_FLOAT) {
+            return AudioFormat.NOT_SET;
+        }
+        audioAnalyzer.setSampleRate(inputAudioFormat.sampleRate);
+        return inputAudioFormat;
+    }
+
+    @Override
+    public void queueInput(ByteBuffer inputBuffer) {
+        int remaining = inputBuffer.remaining();
+        if (remaining == 0) {
+            return;
+        }
+        if (inputAudioFormat.encoding == C.ENCODING_PCM_FLOAT) {
+            audioAnalyzer.writeFloat(inputBuffer, inputAudioFormat.channelCount);
+        } else {
+            audioAnalyzer.writePcm16(inputBuffer, inputAudioFormat.channelCount);
+        }
+        replaceOutputBuffer(remaining).put(inputBuffer).flip();
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.media3.common.audio.AudioProcessor;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultRenderersFactory;
+import androidx.media3.exoplayer.audio.AudioCapabilities;
+import androidx.media3.exoplayer.audio.AudioSink;
+import androidx.media3.exoplayer.audio.DefaultAudioSink;
+
+// DefaultRenderersFactory, with an AnalyzingAudioProcessor in the audio sink's processing chain
+// the sink is otherwise built exactly like DefaultRenderersFactory builds it
+@OptIn(markerClass = UnstableApi.class)
+class AnalyzingRenderersFactory extends DefaultRenderersFactory {
+
+    private final AudioAnalyzer audioAnalyzer;
+
+    AnalyzingRenderersFactory(@NonNull Context context, @NonNull AudioAnalyzer audioAnalyzer) {
+        super(context);
+        this.audioAnalyzer = audioAnalyzer;
+    }
+
+    @Override
+    protected AudioSink buildAudioSink(Context context, boolean enableFloatOutput, boolean enableAudioTrackPlaybackParams, boolean enableOffload) {
+        return new DefaultAudioSink.Builder()
+                .setAudioCapabilities(AudioCapabilities.getCapabilities(context))
+                .setEnableFloatOutput(enableFloatOutput)
+                .setEnableAudioTrackPlaybackParams(enableAudioTrackPlaybackParams)
+                .setOffloadMode(enableOffload ? DefaultAudioSink.OFFLOAD_MODE_ENABLED_GAPLESS_REQUIRED : DefaultAudioSink.OFFLOAD_MODE_DISABLED)
+                .setAudioProcessors(new AudioProcessor[]{new AnalyzingAudioProcessor(audioAnalyzer)})
+                .build();
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.ImageDecoder;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// decodes album art at the size it's actually displayed at, off the main thread, and keeps the results in a byte-bounded LRU
+// full-resolution covers can be several MB each; the notification's large icon only needs a couple hundred pixels
+//
+// browse items never carry bitmaps (MediaCatalog only passes the art's URI along), so nothing large goes over binder;
+// the service only decodes art for the things it draws itself (the notification)
+class ArtworkLoader {
+
+    private static final String LOG_TAG = "MyArtworkLoader";
+
+    // never let decoded art use more than this, however much heap the device has
+    private static final int MAX_CACHE_BYTES = 16 * 1024 * 1024;
+    // a remote cover bigger than this is given up on instead of being held in memory whole (and decoded)
+    private static final int MAX_DOWNLOAD_BYTES = 8 * 1024 * 1024;
+    // a stalled server only holds up the decode thread (and every cover queued behind it) this long
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+
+    interface Callback {
+        // called on the main thread; bitmap is null when the art couldn't be loaded
+        void onArtworkLoaded(@Nullable Bitmap bitmap);
+    }
+
+    private final ContentResolver contentResolver;
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> bitmapCache;
+
+    // cache key -> callbacks waiting on a decode that's already running; only touched on the main thread
+    private final Map<String, List<Callback>> inFlight = new HashMap<>();
+
+    ArtworkLoader(@NonNull Context context) {
+        contentResolver = context.getApplicationContext().getContentResolver();
+        int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_CACHE_BYTES);
+        bitmapCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    // returns the decoded art if it's already cached at this size, without doing any work
+    @Nullable
+    Bitmap getCached(@NonNull Uri artUri, int targetSizePx) {
+        return bitmapCache.get(cacheKey(artUri, targetSizePx));
+    }
+
+    // decodes artUri so that its longest side is at most targetSizePx; must be called on the main thread
+    void load(@NonNull Uri artUri, int targetSizePx, @NonNull Callback callback) {
+        String key = cacheKey(artUri, targetSizePx);
+        Bitmap cached = bitmapCache.get(key);
+        if (cached != null) {
+            callback.onArtworkLoaded(cached);
+            return;
+        }
+
+        List<Callback> waiting = inFlight.get(key);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>(1);
+        waiting.add(callback);
+        inFlight.put(key, waiting);
+
+        decodeExecutor.execute(() -> {
+            Bitmap bitmap = decode(artUri, targetSizePx);
+            mainHandler.post(() -> {
+                if (bitmap != null) {
+                    bitmapCache.put(key, bitmap);
+                }
+                List<Callback> callbacks = inFlight.remove(key);
+                if (callbacks != null) {
+                    for (Callback waitingCallback : callbacks) {
+                        waitingCallback.onArtworkLoaded(bitmap);
+                    }
+                }
+            });
+        });
+    }
+
+    void release() {
+        decodeExecutor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+        bitmapCache.evictAll();
+    }
+
+    private Bitmap decode(Uri artUri, int targetSizePx) {
+        try {
+            ImageDecoder.Source source;
+            String scheme = artUri.getScheme();
+            if ("http".equals(scheme) || "https".equals(scheme)) {
+                source = ImageDecoder.createSource(ByteBuffer.wrap(download(artUri)));
+            } else {
+                source = ImageDecoder.createSource(contentResolver, artUri);
+            }
+            return ImageDecoder.decodeBitmap(source, (decoder, info, headerSource) -> {
+                // downsample while decoding, so the full-size bitmap is never allocated
+                int width = info.getSize().getWidth();
+                int height = info.getSize().getHeight();
+                float scale = Math.min(1f, (float) targetSizePx / Math.max(width, height));
+                decoder.setTargetSize(Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+                // notifications parcel the bitmap, which hardware bitmaps can't always do
+                decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+            });
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "couldn't decode artwork " + artUri, e);
+            return null;
+        }
+    }
+
+    private static byte[] download(Uri artUri) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(artUri.toString()).openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + responseCode);
+            }
+            long contentLength = connection.getContentLengthLong();
+            if (contentLength > MAX_DOWNLOAD_BYTES) {
+                throw new IOException("artwork is " + contentLength + " bytes, over " + MAX_DOWNLOAD_BYTES);
+            }
+            try (InputStream inputStream = connection.getInputStream()) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    // the length header may be missing, or wrong
+                    if (outputStream.size() + read > MAX_DOWNLOAD_BYTES) {
+                        throw new IOException("artwork is over " + MAX_DOWNLOAD_BYTES + " bytes");
+                    }
+                    outputStream.write(buffer, 0, read);
+                }
+                return outputStream.toByteArray();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String cacheKey(Uri artUri, int targetSizePx) {
+        return targetSizePx + "|" + artUri;
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.audioplayer_ver_dev02;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// levels (RMS and peak, in dBFS) and a magnitude spectrum of what the player is playing, for visualizers and loudness logging
+//
+// - the audio path (AnalyzingAudioProcessor, on the player's playback thread) only mixes each frame to mono and stores it
+//      in a preallocated float ring buffer; it never allocates, locks, or waits
+// - the analysis runs on its own thread, once every FFT_SIZE new samples: levels over every sample since the last pass,
+//      and an FFT (Hann window, radix-2, preallocated tables) over the latest FFT_SIZE samples
+// - if the analysis falls behind by more than the ring holds, the samples it missed are dropped (and counted), rather
+//      than the audio path waiting for it
+// - with nothing playing, the analysis thread parks until the audio path writes again
+//
+// single producer (the audio path), single consumer (the analysis thread)
+// plain Java (not even androidx annotations), so it can be tested and benchmarked on the JVM (see :benchmark-jvm)
+class AudioAnalyzer {
+
+    static final int FFT_SIZE = 1024;
+    // about 170 ms at 48 kHz; a lot of slack for the analysis thread
+    static final int RING_SIZE = 8 * FFT_SIZE;
+    // what silence is reported as
+    static final float MIN_DB = -120f;
+
+    // told about every analysis pass, on the analysis thread
+    // the Frame (and its spectrum array) is reused for the next pass; copy whatever has to outlive the call
+    interface Listener {
+        void onAnalysis(Frame frame);
+    }
+
+    static class Frame {
+        // over the samples since the previous pass
+        float rmsDb;
+        float peakDb;
+        // FFT_SIZE / 2 bins of binHz each, in dBFS
+        final float[] spectrumDb = new float[FFT_SIZE / 2];
+        float binHz;
+        // samples the analysis missed (since the previous pass) because it fell behind
+        long droppedSamples;
+    }
+
+    // the ring: written only by the audio path, read only by the analysis thread
+    private final float[] ring = new float[RING_SIZE];
+    // total samples ever written; the sample at index i is in ring[i % RING_SIZE]
+    private final AtomicLong writeCount = new AtomicLong();
+    private volatile int sampleRateHz;
+
+    // analysis thread state
+    private long readCount;
+    // dropped, but not reported in a Frame yet
+    private long droppedSamples;
+    private final float[] window = new float[FFT_SIZE];
+    private final float[] hann = new float[FFT_SIZE];
+    private final float[] real = new float[FFT_SIZE];
+    private final float[] imaginary = new float[FFT_SIZE];
+    private final int[] bitReversed = new int[FFT_SIZE];
+    private final float[] cosTable = new float[FFT_SIZE / 2];
+    private final float[] sinTable = new float[FFT_SIZE / 2];
+    private final Frame frame = new Frame();
+
+    private volatile Listener[] listeners = new Listener[0];
+    private volatile Thread analysisThread;
+    // set by the analysis thread before it parks with nothing to do; the audio path wakes it once, then leaves it be
+    private volatile boolean idle;
+
+    AudioAnalyzer() {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            hann[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (FFT_SIZE - 1)));
+        }
+        int bits = Integer.numberOfTrailingZeros(FFT_SIZE);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            bitReversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        for (int i = 0; i < FFT_SIZE / 2; i++) {
+            cosTable[i] = (float) Math.cos(2 * Math.PI * i / FFT_SIZE);
+            sinTable[i] = (float) -Math.sin(2 * Math.PI * i / FFT_SIZE);
+        }
+    }
+
+    synchronized void addListener(Listener listener) {
+        Listener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    synchronized void removeListener(Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                Listener[] updated = new Listener[listeners.length - 1];
+                System.arraycopy(listeners, 0, updated, 0, i);
+                System.arraycopy(listeners, i + 1, updated, i, listeners.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    // starts the analysis thread
+    synchronized void start() {
+        if (analysisThread != null) {
+            return;
+        }
+        analysisThread = new Thread(this::analysisLoop, "audio-analyzer");
+        analysisThread.setDaemon(true);
+        analysisThread.start();
+    }
+
+    synchronized void release() {
+        Thread thread = analysisThread;
+        analysisThread = null;
+        if (thread != null) {
+            thread.interrupt();
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // the format of what's written from now on (ex. from AudioProcessor.onConfigure())
+    void setSampleRate(int sampleRateHz) {
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    // audio path: interleaved 16-bit PCM from buffer's position to its limit (the position isn't moved)
+    void writePcm16(ByteBuffer buffer, int channelCount) {
+        int position = buffer.position();
+        int frameBytes = 2 * channelCount;
+        int frames = (buffer.limit() - position) / frameBytes;
+        long count = writeCount.get();
+        float scale = 1f / (32768f * channelCount);
+        for (int i = 0; i < frames; i++) {
+            int offset = position + i * frameBytes;
+            int sum = 0;
+            for (int channel = 0; channel < channelCount; channel++) {
+                sum += buffer.getShort(offset + 2 * channel);
+            }
+            ring[(int) (count++ & (RING_SIZE - 1))] = sum * scale;
+        }
+        published(count);
+    }
+
+    // audio path: interleaved float PCM from buffer's position to its limit (the position isn't moved)
+    void writeFloat(ByteBuffer buffer, int channelCount) {
+        int position = buffer.position();
+        int frameBytes = 4 * channelCount;
+        int frames = (buffer.limit() - position) / frameBytes;
+        long count = writeCount.get();
+        float scale = 1f / channelCount;
+        for (int i = 0; i < frames; i++) {
+            int offset = position + i * frameBytes;
+            float sum = 0f;
+            for (int channel = 0; channel < channelCount; channel++) {
+                sum += buffer.getFloat(offset + 4 * channel);
+            }
+            ring[(int) (count++ & (RING_SIZE - 1))] = sum * scale;
+        }
+        published(count);
+    }
+
+    private void published(long count) {
+        // an ordered write, cheaper than a volatile one: the analysis thread still sees the samples before the count
+        // (so it may miss idle being set in the meantime; then it just waits for the next write)
+        writeCount.lazySet(count);
+        if (idle) {
+            idle = false;
+            Thread thread = analysisThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    private void analysisLoop() {
+        while (analysisThread == Thread.currentThread()) {
+            if (!analyze()) {
+                // nothing new; sleep until the audio path writes (it checks idle after every write, so re-check once)
+                idle = true;
+                if (writeCount.get() - readCount < FFT_SIZE) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    // one analysis pass on the calling thread, if there are at least FFT_SIZE new samples; false if there weren't
+    // only ever called from one thread at a time (the analysis thread, or a test or benchmark that doesn't start() it)
+    boolean analyze() {
+        long available = writeCount.get();
+        if (available - readCount < FFT_SIZE) {
+            return false;
+        }
+        if (available - readCount > RING_SIZE - FFT_SIZE) {
+            // too far behind; skip to what's certain not to be overwritten while this pass reads it
+            long newReadCount = available - (RING_SIZE - FFT_SIZE);
+            droppedSamples += newReadCount - readCount;
+            readCount = newReadCount;
+        }
+
+        double sumSquares = 0;
+        float peak = 0f;
+        for (long i = readCount; i < available; i++) {
+            float sample = ring[(int) (i & (RING_SIZE - 1))];
+            sumSquares += sample * sample;
+            peak = Math.max(peak, Math.abs(sample));
+        }
+        long windowStart = available - FFT_SIZE;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            window[i] = ring[(int) ((windowStart + i) & (RING_SIZE - 1))];
+        }
+        if (writeCount.get() - readCount > RING_SIZE) {
+            // the audio path lapped this pass while it was reading; what was read may be torn
+            droppedSamples += available - readCount;
+            readCount = available;
+            return true;
+        }
+
+        frame.rmsDb = toDb((float) Math.sqrt(sumSquares / (available - readCount)));
+        frame.peakDb = toDb(peak);
+        frame.droppedSamples = droppedSamples;
+        droppedSamples = 0;
+        readCount = available;
+        spectrum();
+        Listener[] current = listeners;
+        for (Listener listener : current) {
+            listener.onAnalysis(frame);
+        }
+        return true;
+    }
+
+    // the magnitude spectrum of window, into frame.spectrumDb
+    private void spectrum() {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            real[bitReversed[i]] = window[i] * hann[i];
+            imaginary[i] = 0f;
+        }
+        for (int size = 2; size <= FFT_SIZE; size <<= 1) {
+            int half = size >> 1;
+            int step = FFT_SIZE / size;
+            for (int start = 0; start < FFT_SIZE; start += size) {
+                for (int k = 0; k < half; k++) {
+                    float cos = cosTable[k * step];
+                    float sin = sinTable[k * step];
+                    int even = start + k;
+                    int odd = even + half;
+                    float oddReal = real[odd] * cos - imaginary[odd] * sin;
+                    float oddImaginary = real[odd] * sin + imaginary[odd] * cos;
+                    real[odd] = real[even] - oddReal;
+                    imaginary[odd] = imaginary[even] - oddImaginary;
+                    real[even] += oddReal;
+                    imaginary[even] += oddImaginary;
+                }
+            }
+        }
+        // a full-scale sine comes out at 0 dBFS (the Hann window halves the amplitude)
+        float scale = 4f / FFT_SIZE;
+        for (int i = 0; i < FFT_SIZE / 2; i++) {
+            frame.spectrumDb[i] = toDb((float) Math.sqrt(real[i] * real[i] + imaginary[i] * imaginary[i]) * scale);
+        }
+        int rate = sampleRateHz;
+        frame.binHz = rate > 0 ? (float) rate / FFT_SIZE : 0f;
+    }
+
+    private static float toDb(float amplitude) {
+        return amplitude <= 0f ? MIN_DB : Math.max(MIN_DB, (float) (20 * Math.log10(amplitude)));
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioAttributes;
+import android.media.AudioFocusRequest;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+// owns the service's audio focus and its "becoming noisy" (headphones unplugged) receiver, as one state machine:
+//
+//      IDLE --requestFocus()--> FOCUSED <--gain / loss--> DUCKED (volume ramped down, still playing)
+//                                  ^ \--transient loss--> PAUSED_TRANSIENT (paused by us, resumed on gain)
+//                                  |
+//      IDLE <--abandonFocus() / permanent loss-- (any)
+//
+// - the AudioFocusRequest (and its attributes) is built once; requestFocus() while focus is already held is free
+// - transient "can duck" losses are handled here, by ramping the player's volume down and back up, instead of pausing
+//      (the request says willPauseWhenDucked, which stops the system from ducking us itself and tells us instead)
+// - the noisy receiver is registered when a play session starts and unregistered when it ends (pause, stop, focus lost for good),
+//      exactly once each
+//
+// must be used on the main thread
+class AudioFocusController implements AudioManager.OnAudioFocusChangeListener {
+
+    private static final String LOG_TAG = "MyAudioFocusController";
+
+    // how loud ducked playback is, and how long a volume change takes
+    static final float DUCK_VOLUME = 0.2f;
+    private static final long RAMP_DURATION_MS = 300;
+    private static final long RAMP_STEP_MS = 16;
+
+    // what the controller does to the player; implemented by the service, which owns it
+    interface PlaybackTarget {
+        void play();
+
+        void pause();
+
+        void setVolume(float volume);
+    }
+
+    private enum State {
+        IDLE,
+        FOCUSED,
+        DUCKED,
+        PAUSED_TRANSIENT,
+    }
+
+    private final Context context;
+    private final AudioManager audioManager;
+    private final PlaybackTarget target;
+    private final AudioFocusRequest focusRequest;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private State state = State.IDLE;
+    private boolean noisyReceiverRegistered;
+
+    private float volume = 1f;
+    private float rampFromVolume;
+    private float rampToVolume = 1f;
+    private long rampStartMs;
+    private final Runnable rampStep = this::stepRamp;
+
+    private final BroadcastReceiver becomingNoisyReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (AudioManager.ACTION_AUDIO_BECOMING_NOISY.equals(intent.getAction())) {
+                // pause playback, so it doesn't suddenly come out of the speaker
+                Log.d(LOG_TAG, "becoming noisy, pausing");
+                target.pause();
+                onPaused();
+            }
+        }
+    };
+
+    AudioFocusController(@NonNull Context context, @NonNull PlaybackTarget target) {
+        this.context = context;
+        this.audioManager = context.getSystemService(AudioManager.class);
+        this.target = target;
+        // AudioPlayer claims that it is playing music when requesting audio focus
+        AudioAttributes attributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build();
+        // other settings can dictate how AudioPlayer will behave regarding audio focus (check https://developer.android.com/reference/android/media/AudioFocusRequest.Builder)
+        focusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
+                .setAudioAttributes(attributes)
+                .setWillPauseWhenDucked(true)
+                .setOnAudioFocusChangeListener(this, handler)
+                .build();
+    }
+
+    // starts a play session; false if focus was denied (ex. during a phone call), and playback must not start
+    boolean requestFocus() {
+        // during a transient loss (ex. a phone call) the system decides whether the user may play anyway
+        if ((state == State.IDLE || state == State.PAUSED_TRANSIENT)
+                && audioManager.requestAudioFocus(focusRequest) != AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            return false;
+        }
+        // (while ducked, the user pressing play means they want to hear it at full volume)
+        state = State.FOCUSED;
+        if (volume < 1f) {
+            rampTo(1f);
+        }
+        registerNoisyReceiver();
+        return true;
+    }
+
+    // the user paused; focus is kept (so play/pause toggling doesn't churn it), but the play session is over
+    void onPaused() {
+        if (state == State.PAUSED_TRANSIENT) {
+            // don't resume on the next gain after all
+            state = State.FOCUSED;
+        }
+        unregisterNoisyReceiver();
+    }
+
+    // playback stopped; gives focus back
+    void abandonFocus() {
+        if (state != State.IDLE) {
+            audioManager.abandonAudioFocusRequest(focusRequest);
+            state = State.IDLE;
+        }
+        unregisterNoisyReceiver();
+        handler.removeCallbacks(rampStep);
+    }
+
+    // what the player's volume should be right now (ex. for a newly built player)
+    float getVolume() {
+        return volume;
+    }
+
+    boolean hasFocus() {
+        return state != State.IDLE;
+    }
+
+    @Override
+    public void onAudioFocusChange(int focusChange) {
+        if (state == State.IDLE) {
+            return;
+        }
+        switch (focusChange) {
+            case AudioManager.AUDIOFOCUS_GAIN:
+                if (state == State.PAUSED_TRANSIENT) {
+                    setVolumeNow(1f);
+                    target.play();
+                } else {
+                    rampTo(1f);
+                }
+                state = State.FOCUSED;
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                if (state == State.FOCUSED) {
+                    state = State.DUCKED;
+                    rampTo(DUCK_VOLUME);
+                }
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
+                // only resume later if a play session was going on (that's when the noisy receiver is registered)
+                if (noisyReceiverRegistered) {
+                    state = State.PAUSED_TRANSIENT;
+                    target.pause();
+                }
+                break;
+            case AudioManager.AUDIOFOCUS_LOSS:
+                // another app took over for good; the user has to press play to get it back
+                target.pause();
+                abandonFocus();
+                break;
+            default:
+                break;
+        }
+        Log.d(LOG_TAG, "focus change " + focusChange + " -> " + state);
+    }
+
+    private void registerNoisyReceiver() {
+        if (!noisyReceiverRegistered) {
+            context.registerReceiver(becomingNoisyReceiver, new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY));
+            noisyReceiverRegistered = true;
+        }
+    }
+
+    private void unregisterNoisyReceiver() {
+        if (noisyReceiverRegistered) {
+            context.unregisterReceiver(becomingNoisyReceiver);
+            noisyReceiverRegistered = false;
+        }
+    }
+
+    // linear ramp from the current volume, one step per frame-ish, so ducking doesn't click
+    private void rampTo(float toVolume) {
+        handler.removeCallbacks(rampStep);
+        if (volume == toVolume) {
+            return;
+        }
+        rampFromVolume = volume;
+        rampToVolume = toVolume;
+        rampStartMs = SystemClock.uptimeMillis();
+        stepRamp();
+    }
+
+    private void stepRamp() {
+        float progress = Math.min(1f, (SystemClock.uptimeMillis() - rampStartMs) / (float) RAMP_DURATION_MS);
+        volume = progress < 1f ? rampFromVolume + (rampToVolume - rampFromVolume) * progress : rampToVolume;
+        target.setVolume(volume);
+        if (progress < 1f) {
+            handler.postDelayed(rampStep, RAMP_STEP_MS);
+        }
+    }
+
+    private void setVolumeNow(float newVolume) {
+        handler.removeCallbacks(rampStep);
+        volume = newVolume;
+        target.setVolume(newVolume);
+    }
+}
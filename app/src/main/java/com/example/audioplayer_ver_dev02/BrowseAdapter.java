@@ -0,0 +1,102 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Objects;
+
+// rows of the browse list in MediaBrowsingClientActivity
+// ListAdapter diffs every new list against the current one on a background thread (DiffUtil), then only
+// inserts/removes/re-binds the rows that changed, so a re-delivered page doesn't redraw (or jump) the whole list
+class BrowseAdapter extends ListAdapter<MediaBrowserCompat.MediaItem, BrowseAdapter.ViewHolder> {
+
+    interface Listener {
+        // position is about to be shown; lets the loader prefetch around it
+        void onItemShown(int position);
+
+        void onItemClicked(@NonNull MediaBrowserCompat.MediaItem item);
+    }
+
+    // rows are the same item if they have the same media ID; they look the same if what's shown in them is equal
+    private static final DiffUtil.ItemCallback<MediaBrowserCompat.MediaItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<MediaBrowserCompat.MediaItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MediaBrowserCompat.MediaItem oldItem, @NonNull MediaBrowserCompat.MediaItem newItem) {
+            return Objects.equals(oldItem.getMediaId(), newItem.getMediaId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MediaBrowserCompat.MediaItem oldItem, @NonNull MediaBrowserCompat.MediaItem newItem) {
+            MediaDescriptionCompat oldDescription = oldItem.getDescription();
+            MediaDescriptionCompat newDescription = newItem.getDescription();
+            return oldItem.getFlags() == newItem.getFlags()
+                    && TextUtils.equals(oldDescription.getTitle(), newDescription.getTitle())
+                    && TextUtils.equals(oldDescription.getSubtitle(), newDescription.getSubtitle())
+                    && downloadStatus(oldDescription) == downloadStatus(newDescription);
+        }
+    };
+
+    private final Listener listener;
+
+    BrowseAdapter(@NonNull Listener listener) {
+        super(DIFF_CALLBACK);
+        this.listener = listener;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_media, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        view.setOnClickListener(v -> {
+            int position = holder.getBindingAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onItemClicked(getItem(position));
+            }
+        });
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        MediaDescriptionCompat description = getItem(position).getDescription();
+        holder.title.setText(description.getTitle());
+        CharSequence subtitle = description.getSubtitle();
+        if (downloadStatus(description) == MediaDescriptionCompat.STATUS_DOWNLOADED) {
+            subtitle = TextUtils.isEmpty(subtitle)
+                    ? holder.itemView.getContext().getString(R.string.downloaded)
+                    : holder.itemView.getContext().getString(R.string.downloaded_subtitle, subtitle);
+        }
+        holder.subtitle.setText(subtitle);
+        holder.subtitle.setVisibility(TextUtils.isEmpty(subtitle) ? View.GONE : View.VISIBLE);
+        listener.onItemShown(position);
+    }
+
+    private static long downloadStatus(MediaDescriptionCompat description) {
+        Bundle extras = description.getExtras();
+        return extras == null
+                ? MediaDescriptionCompat.STATUS_NOT_DOWNLOADED
+                : extras.getLong(MediaDescriptionCompat.EXTRA_DOWNLOAD_STATUS, MediaDescriptionCompat.STATUS_NOT_DOWNLOADED);
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView title;
+        final TextView subtitle;
+
+        ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            title = itemView.findViewById(R.id.item_title);
+            subtitle = itemView.findViewById(R.id.item_subtitle);
+        }
+    }
+}
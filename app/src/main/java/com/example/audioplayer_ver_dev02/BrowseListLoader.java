@@ -0,0 +1,247 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.media.MediaBrowserCompat;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// the client side of browsing: keeps the node on screen subscribed, one page at a time, and hands its items to the UI
+//
+// - pages are subscribed as the user scrolls towards the end of what has arrived (see BrowsePages), never all at once
+// - the first page of browsable items that scroll into view is fetched ahead of time (a few at a time), so opening one
+//      shows its children right away, then stays in sync through the real subscription
+// - when the service calls notifyChildrenChanged(), the browser re-delivers every subscribed page; the merged list goes
+//      to the UI, whose adapter diffs it against the old one off the main thread and only re-binds the rows that changed
+// - when the connection is lost, what's on screen stays; once reconnected (with a new browser), every page that was
+//      subscribed is subscribed again, and the re-delivered pages are merged in like after notifyChildrenChanged()
+//
+// must be used on the main thread (which is where MediaBrowserCompat delivers its callbacks)
+class BrowseListLoader {
+
+    private static final String LOG_TAG = "MyBrowseListLoader";
+
+    static final int PAGE_SIZE = 50;
+    // how close to the end of the loaded items the user gets before the next page is requested
+    private static final int PREFETCH_DISTANCE = 15;
+    // how many browsable rows below the one being bound have their first page fetched ahead of time
+    private static final int CHILD_PREFETCH_WINDOW = 4;
+    private static final int MAX_CHILD_PREFETCHES_IN_FLIGHT = 2;
+    // first pages of nodes fetched ahead of time (or left), most recently used last
+    private static final int MAX_CACHED_NODES = 16;
+
+    // replaced on every reconnect
+    private MediaBrowserCompat mediaBrowser;
+    private final Consumer<List<MediaBrowserCompat.MediaItem>> itemsConsumer;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // the node on screen, and what of it has been loaded
+    @Nullable
+    private String parentId;
+    private BrowsePages<MediaBrowserCompat.MediaItem> pages;
+    // one callback per subscribed page, so each page's subscription can be dropped on its own
+    private final List<MediaBrowserCompat.SubscriptionCallback> pageCallbacks = new ArrayList<>();
+    private List<MediaBrowserCompat.MediaItem> shownItems = new ArrayList<>();
+    // bumped on every open(), so callbacks for a node that's no longer shown can be told apart
+    private int generation;
+
+    private final Map<String, List<MediaBrowserCompat.MediaItem>> firstPageCache = new LinkedHashMap<>(MAX_CACHED_NODES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<MediaBrowserCompat.MediaItem>> eldest) {
+            return size() > MAX_CACHED_NODES;
+        }
+    };
+    private final Set<String> prefetching = new HashSet<>();
+
+    BrowseListLoader(@NonNull MediaBrowserCompat mediaBrowser, @NonNull Consumer<List<MediaBrowserCompat.MediaItem>> itemsConsumer) {
+        this.mediaBrowser = mediaBrowser;
+        this.itemsConsumer = itemsConsumer;
+    }
+
+    // shows parentId instead of whatever was shown before
+    void open(@NonNull String parentId) {
+        close();
+        this.parentId = parentId;
+        generation++;
+        pages = new BrowsePages<>(PAGE_SIZE);
+        // subscribing to the first page replaces a prefetch's callback for it (same options), which then never hears back
+        prefetching.remove(parentId);
+        // a node fetched ahead of time is shown at once; its first page subscription replaces it when it arrives
+        List<MediaBrowserCompat.MediaItem> cached = firstPageCache.get(parentId);
+        publish(cached != null ? cached : new ArrayList<>());
+        requestPage(pages.requestPageFor(0, PREFETCH_DISTANCE));
+    }
+
+    @Nullable
+    String getParentId() {
+        return parentId;
+    }
+
+    // the UI is about to show position (ex. from the adapter's onBindViewHolder()); loads what it'll likely need next
+    void onItemShown(int position) {
+        if (parentId == null) {
+            return;
+        }
+        requestPage(pages.requestPageFor(position, PREFETCH_DISTANCE));
+        int end = Math.min(shownItems.size(), position + CHILD_PREFETCH_WINDOW);
+        for (int i = position; i < end && prefetching.size() < MAX_CHILD_PREFETCHES_IN_FLIGHT; i++) {
+            MediaBrowserCompat.MediaItem item = shownItems.get(i);
+            if (item.isBrowsable() && item.getMediaId() != null) {
+                prefetchFirstPage(item.getMediaId());
+            }
+        }
+    }
+
+    // drops every subscription of the node on screen; the cached first pages are kept
+    void close() {
+        if (parentId == null) {
+            return;
+        }
+        List<MediaBrowserCompat.MediaItem> firstPage = firstPage(shownItems);
+        if (!firstPage.isEmpty()) {
+            // going back to it shows it at once
+            firstPageCache.put(parentId, firstPage);
+        }
+        for (MediaBrowserCompat.SubscriptionCallback callback : pageCallbacks) {
+            mediaBrowser.unsubscribe(parentId, callback);
+        }
+        pageCallbacks.clear();
+        parentId = null;
+    }
+
+    // the connection is gone, and its subscriptions with it; the items on screen (and the pages behind them) are kept
+    void onConnectionLost() {
+        // nothing to unsubscribe from; the old browser is dead
+        pageCallbacks.clear();
+        prefetching.clear();
+        handler.removeCallbacksAndMessages(null);
+        // callbacks still on their way from the old browser are ignored
+        generation++;
+    }
+
+    // connected again, through browser; subscribes to the pages of the node on screen again
+    void onReconnected(@NonNull MediaBrowserCompat browser) {
+        mediaBrowser = browser;
+        if (parentId == null) {
+            return;
+        }
+        generation++;
+        for (int page = 0; page < pages.pageCount(); page++) {
+            requestPage(page);
+        }
+    }
+
+    // done browsing; drops every subscription and everything cached
+    void release() {
+        close();
+        handler.removeCallbacksAndMessages(null);
+        prefetching.clear();
+        firstPageCache.clear();
+    }
+
+    private void requestPage(int page) {
+        if (page < 0) {
+            return;
+        }
+        int pageGeneration = generation;
+        String pageParentId = parentId;
+        MediaBrowserCompat.SubscriptionCallback callback = new MediaBrowserCompat.SubscriptionCallback() {
+            @Override
+            public void onChildrenLoaded(@NonNull String loadedParentId, @NonNull List<MediaBrowserCompat.MediaItem> children, @NonNull Bundle options) {
+                if (pageGeneration == generation) {
+                    onPageLoaded(page, children);
+                }
+            }
+
+            @Override
+            public void onError(@NonNull String erroredParentId, @NonNull Bundle options) {
+                Log.w(LOG_TAG, "couldn't load page " + page + " of " + erroredParentId);
+                if (pageGeneration == generation) {
+                    pages.onPageFailed(page);
+                    // it's requested again (with a new subscription) when the user scrolls there
+                    dropSubscriptionsFrom(pages.pageCount());
+                }
+            }
+        };
+        pageCallbacks.add(callback);
+        mediaBrowser.subscribe(pageParentId, pageOptions(page), callback);
+    }
+
+    private void onPageLoaded(int page, List<MediaBrowserCompat.MediaItem> children) {
+        // if the node shrank, pages past its new end aren't wanted any more
+        dropSubscriptionsFrom(pages.onPageLoaded(page, children));
+        publish(pages.snapshot());
+    }
+
+    // unsubscribes the pages from page on; called from subscription callbacks, so it's done after they return
+    // (the browser may still be iterating its subscriptions)
+    private void dropSubscriptionsFrom(int page) {
+        if (pageCallbacks.size() <= page) {
+            return;
+        }
+        String droppedParentId = parentId;
+        List<MediaBrowserCompat.SubscriptionCallback> dropped = new ArrayList<>(pageCallbacks.subList(page, pageCallbacks.size()));
+        pageCallbacks.subList(page, pageCallbacks.size()).clear();
+        handler.post(() -> {
+            for (MediaBrowserCompat.SubscriptionCallback callback : dropped) {
+                mediaBrowser.unsubscribe(droppedParentId, callback);
+            }
+        });
+    }
+
+    private void prefetchFirstPage(String childId) {
+        if (firstPageCache.containsKey(childId) || prefetching.contains(childId)) {
+            return;
+        }
+        prefetching.add(childId);
+        mediaBrowser.subscribe(childId, pageOptions(0), new MediaBrowserCompat.SubscriptionCallback() {
+            @Override
+            public void onChildrenLoaded(@NonNull String loadedParentId, @NonNull List<MediaBrowserCompat.MediaItem> children, @NonNull Bundle options) {
+                firstPageCache.put(childId, new ArrayList<>(children));
+                done();
+            }
+
+            @Override
+            public void onError(@NonNull String erroredParentId, @NonNull Bundle options) {
+                done();
+            }
+
+            // a one-off load; nothing on screen needs to be kept in sync with it
+            private void done() {
+                MediaBrowserCompat.SubscriptionCallback self = this;
+                handler.post(() -> {
+                    if (prefetching.remove(childId) && mediaBrowser.isConnected()) {
+                        mediaBrowser.unsubscribe(childId, self);
+                    }
+                });
+            }
+        });
+    }
+
+    private void publish(List<MediaBrowserCompat.MediaItem> items) {
+        shownItems = items;
+        itemsConsumer.accept(items);
+    }
+
+    private static List<MediaBrowserCompat.MediaItem> firstPage(List<MediaBrowserCompat.MediaItem> items) {
+        return new ArrayList<>(items.subList(0, Math.min(items.size(), PAGE_SIZE)));
+    }
+
+    private static Bundle pageOptions(int page) {
+        Bundle options = new Bundle();
+        options.putInt(MediaBrowserCompat.EXTRA_PAGE, page);
+        options.putInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, PAGE_SIZE);
+        return options;
+    }
+}
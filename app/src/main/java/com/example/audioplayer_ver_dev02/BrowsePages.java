@@ -0,0 +1,109 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// the pages of one browse node that a client has loaded so far, and which page it should ask for next
+// every page is its own subscription; the service re-sends a page whenever the node changes (notifyChildrenChanged()),
+// so a page may arrive again, with different contents or a different length
+//
+// - the list handed to the UI is the loaded pages, in order, up to the first one that hasn't arrived yet
+// - a page shorter than the page size is the last one; pages after it (left over from a longer list) are dropped
+// - at most one page is requested ahead of what has arrived
+//
+// plain Java, so it can be tested on the JVM; not thread safe (the browser delivers everything on the main thread)
+class BrowsePages<T> {
+
+    private final int pageSize;
+    // index = page number; null while requested but not loaded
+    private final List<List<T>> pages = new ArrayList<>();
+    private boolean endReached;
+
+    BrowsePages(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    // the page to request once the UI shows position, or -1 if none should be
+    // a page is requested when position is within prefetchDistance items of the end of what has arrived
+    int requestPageFor(int position, int prefetchDistance) {
+        if (endReached || (!pages.isEmpty() && pages.get(pages.size() - 1) == null)) {
+            // nothing more to load, or the last request hasn't been answered yet
+            return -1;
+        }
+        if (!pages.isEmpty() && position < loadedCount() - prefetchDistance) {
+            return -1;
+        }
+        pages.add(null);
+        return pages.size() - 1;
+    }
+
+    // page arrived, for the first time or again; returns the number of pages still wanted,
+    // so the caller can drop the subscriptions of any pages past that
+    int onPageLoaded(int page, @NonNull List<T> items) {
+        if (page >= pages.size()) {
+            // a late answer for a page that has since been dropped
+            return pages.size();
+        }
+        pages.set(page, Collections.unmodifiableList(new ArrayList<>(items)));
+        if (items.size() < pageSize) {
+            endReached = true;
+            while (pages.size() > page + 1) {
+                pages.remove(pages.size() - 1);
+            }
+        } else if (page == pages.size() - 1) {
+            // a page that used to be the last one filled up; there may be more after it
+            endReached = false;
+        }
+        return pages.size();
+    }
+
+    // the page failed to load; it may be requested again
+    void onPageFailed(int page) {
+        if (page == pages.size() - 1 && pages.get(page) == null) {
+            pages.remove(page);
+        }
+    }
+
+    // what the UI shows: every page that has arrived, up to the first gap
+    @NonNull
+    List<T> snapshot() {
+        List<T> items = new ArrayList<>(loadedCount());
+        for (List<T> page : pages) {
+            if (page == null) {
+                break;
+            }
+            items.addAll(page);
+        }
+        return items;
+    }
+
+    // the number of pages requested (loaded or not)
+    int pageCount() {
+        return pages.size();
+    }
+
+    boolean isEndReached() {
+        return endReached;
+    }
+
+    private int loadedCount() {
+        int count = 0;
+        for (List<T> page : pages) {
+            if (page == null) {
+                break;
+            }
+            count += page.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.LoadControl;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+
+// buffering presets for the service's player, selectable as playback modes through the media session
+// (see MediaBrowsingService.CUSTOM_ACTION_SET_BUFFERING_PROFILE)
+//
+// minBufferMs/maxBufferMs: the player keeps loading until it has maxBufferMs buffered, and starts again when it drops below minBufferMs
+// bufferForPlaybackMs: how much must be buffered before playback (re)starts after a seek or a new item
+// bufferForPlaybackAfterRebufferMs: same, after the buffer ran dry mid-playback
+// targetBufferBytes: hard cap on buffer memory, or C.LENGTH_UNSET to let ExoPlayer pick one from the track types
+//
+// BufferingProfileBenchmark (androidTest) measures time-to-first-audio and peak buffer memory of each
+enum BufferingProfile {
+
+    // ExoPlayer's own defaults
+    DEFAULT(DefaultLoadControl.DEFAULT_MIN_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_MAX_BUFFER_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+            DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS,
+            C.LENGTH_UNSET,
+            DefaultLoadControl.DEFAULT_PRIORITIZE_TIME_OVER_SIZE_THRESHOLDS),
+
+    // start as soon as a quarter second is buffered, then keep a normal buffer behind it
+    LOW_LATENCY_START(15_000, 30_000, 250, 1_000, C.LENGTH_UNSET, true),
+
+    // small buffer, and a byte cap that wins over the time thresholds; for low-end devices playing in the background
+    LOW_MEMORY(5_000, 15_000, 1_000, 2_000, 1024 * 1024, false),
+
+    // several minutes of audio buffered ahead, and a longer wait before resuming after a stall, so flaky networks stall less often
+    HIGH_RESILIENCE(60_000, 180_000, 2_500, 5_000, 32 * 1024 * 1024, true);
+
+    final int minBufferMs;
+    final int maxBufferMs;
+    final int bufferForPlaybackMs;
+    final int bufferForPlaybackAfterRebufferMs;
+    final int targetBufferBytes;
+    final boolean prioritizeTimeOverSizeThresholds;
+
+    BufferingProfile(int minBufferMs, int maxBufferMs, int bufferForPlaybackMs, int bufferForPlaybackAfterRebufferMs,
+                     int targetBufferBytes, boolean prioritizeTimeOverSizeThresholds) {
+        this.minBufferMs = minBufferMs;
+        this.maxBufferMs = maxBufferMs;
+        this.bufferForPlaybackMs = bufferForPlaybackMs;
+        this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+        this.targetBufferBytes = targetBufferBytes;
+        this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
+    }
+
+    // allocator is passed in so callers can read getTotalBytesAllocated() for buffer memory use
+    @OptIn(markerClass = UnstableApi.class)
+    @NonNull
+    LoadControl buildLoadControl(@NonNull DefaultAllocator allocator) {
+        return new DefaultLoadControl.Builder()
+                .setAllocator(allocator)
+                .setBufferDurationsMs(minBufferMs, maxBufferMs, bufferForPlaybackMs, bufferForPlaybackAfterRebufferMs)
+                .setTargetBufferBytes(targetBufferBytes)
+                .setPrioritizeTimeOverSizeThresholds(prioritizeTimeOverSizeThresholds)
+                .build();
+    }
+
+    @OptIn(markerClass = UnstableApi.class)
+    @NonNull
+    static DefaultAllocator newAllocator() {
+        return new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    }
+
+    // unknown or missing names fall back to DEFAULT
+    @NonNull
+    static BufferingProfile fromName(String name) {
+        if (name != null) {
+            for (BufferingProfile profile : values()) {
+                if (profile.name().equals(name)) {
+                    return profile;
+                }
+            }
+        }
+        return DEFAULT;
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+import android.support.v4.media.MediaBrowserCompat;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media.MediaBrowserServiceCompat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// answers onLoadChildren() requests off the service's main thread (MediaBrowserServiceCompat calls onLoadChildren() there)
+// the caller detaches the Result, and this class sends it once the page is loaded
+//
+// - work runs on a small, bounded pool, so a burst of subscriptions can't spawn unlimited threads; when its queue is
+//      full, the request is answered on the caller's thread instead (a page is only a lookup in the built catalog)
+// - identical requests (same parentId + page + page size) that arrive while one is in flight share its result
+//      (the phone UI, Android Auto, and Wear OS often subscribe to the same node at the same time)
+// - every request's latency (detach -> sendResult) is logged and aggregated
+class CatalogLoader {
+
+    private static final String LOG_TAG = "MyCatalogLoader";
+
+    private static final int POOL_SIZE = 2;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final MediaCatalog mediaCatalog;
+    private final ThreadPoolExecutor executor;
+
+    // request key -> results waiting on that request; guarded by "this"
+    private final Map<String, List<PendingResult>> inFlight = new HashMap<>();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong mergedCount = new AtomicLong();
+    // requests that got their result; the latencies are averaged over these, not over requests still in flight
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    // told after every sent result (ex. to time the first one); runs on a loader thread (or the caller's, when saturated)
+    @Nullable
+    private volatile Runnable onResultSentListener;
+
+    CatalogLoader(@NonNull MediaCatalog mediaCatalog) {
+        this.mediaCatalog = mediaCatalog;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                runnable -> new Thread(runnable, "catalog-loader-" + threadNumber.incrementAndGet()));
+        // idle loader threads go away when nobody is browsing
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // result must already be detached
+    void load(@NonNull String parentId, @Nullable Bundle options, @NonNull MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result) {
+        requestCount.incrementAndGet();
+        String key = requestKey(parentId, options);
+        PendingResult pendingResult = new PendingResult(result, System.nanoTime());
+
+        synchronized (this) {
+            List<PendingResult> waiting = inFlight.get(key);
+            if (waiting != null) {
+                // someone already asked for this exact page; piggyback on their request
+                waiting.add(pendingResult);
+                mergedCount.incrementAndGet();
+                return;
+            }
+            waiting = new ArrayList<>(1);
+            waiting.add(pendingResult);
+            inFlight.put(key, waiting);
+        }
+
+        // don't hold a pool thread while the catalog is still being built
+        mediaCatalog.whenReady(() -> submit(key, parentId, options));
+    }
+
+    void setOnResultSentListener(@Nullable Runnable listener) {
+        onResultSentListener = listener;
+    }
+
+    void release() {
+        executor.shutdownNow();
+    }
+
+    private void submit(String key, String parentId, Bundle options) {
+        Runnable load = () -> complete(key, mediaCatalog.getChildren(parentId, options));
+        try {
+            executor.execute(load);
+        } catch (RejectedExecutionException e) {
+            // the queue is full (or we're shutting down); a null result would tell every merged subscriber that parentId
+            // doesn't exist, so answer it here instead (CallerRunsPolicy, except it still answers after shutdown)
+            Log.w(LOG_TAG, "loader is saturated, loading " + parentId + " on the caller's thread");
+            load.run();
+        }
+    }
+
+    private void complete(String key, List<MediaBrowserCompat.MediaItem> children) {
+        List<PendingResult> waiting;
+        synchronized (this) {
+            waiting = inFlight.remove(key);
+        }
+        if (waiting == null) {
+            return;
+        }
+        long nowNs = System.nanoTime();
+        for (PendingResult pendingResult : waiting) {
+            pendingResult.result.sendResult(children);
+            recordLatency(key, TimeUnit.NANOSECONDS.toMillis(nowNs - pendingResult.startNs));
+        }
+        Runnable listener = onResultSentListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    private void recordLatency(String key, long latencyMs) {
+        totalLatencyMs.addAndGet(latencyMs);
+        completedCount.incrementAndGet();
+        long max = maxLatencyMs.get();
+        while (latencyMs > max && !maxLatencyMs.compareAndSet(max, latencyMs)) {
+            max = maxLatencyMs.get();
+        }
+        Log.d(LOG_TAG, "loaded " + key + " in " + latencyMs + " ms");
+    }
+
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    long getMergedCount() {
+        return mergedCount.get();
+    }
+
+    long getAverageLatencyMs() {
+        long count = completedCount.get();
+        return count == 0 ? 0 : totalLatencyMs.get() / count;
+    }
+
+    long getMaxLatencyMs() {
+        return maxLatencyMs.get();
+    }
+
+    private static String requestKey(String parentId, Bundle options) {
+        if (options == null) {
+            return parentId;
+        }
+        int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+        int pageSize = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+        return parentId + "#" + page + "/" + pageSize;
+    }
+
+    private static class PendingResult {
+        final MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result;
+        final long startNs;
+
+        PendingResult(MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result, long startNs) {
+            this.result = result;
+            this.startNs = startNs;
+        }
+    }
+}
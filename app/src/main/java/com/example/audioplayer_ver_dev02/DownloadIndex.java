@@ -0,0 +1,200 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// which tracks are downloaded for offline playback, and where; persisted next to the files themselves
+// the whole index is rewritten (to a temporary file, then renamed over the old one) on every change; it only changes
+// when a download finishes or is removed, and stays small (one short record per downloaded track)
+//
+// the first call reads the index from disk; entries whose file has gone missing (or changed size) are dropped then
+// an entry whose file still has the length and modification time recorded for it is verified right away; the others are
+// unverified until OfflineDownloader.verifyDownloads() has hashed them, since that reads the whole file
+// plain Java, so it can be tested on the JVM
+class DownloadIndex {
+
+    private static final int FORMAT_VERSION = 2;
+    // version 1 had no modification times; its entries are read as unverified
+    private static final int FORMAT_VERSION_WITHOUT_MTIME = 1;
+    private static final String INDEX_FILE = "index";
+
+    static class Entry {
+        @NonNull
+        final String mediaId;
+        // where it was downloaded from
+        @NonNull
+        final String sourceUri;
+        // relative to the download directory
+        @NonNull
+        final String fileName;
+        final long length;
+        // lowercase hex SHA-256 of the file, as hashed when it was downloaded
+        @NonNull
+        final String sha256;
+        // the file's modification time when it was last hashed; 0 if unknown
+        final long lastModified;
+
+        Entry(@NonNull String mediaId, @NonNull String sourceUri, @NonNull String fileName, long length, @NonNull String sha256,
+              long lastModified) {
+            this.mediaId = mediaId;
+            this.sourceUri = sourceUri;
+            this.fileName = fileName;
+            this.length = length;
+            this.sha256 = sha256;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final File directory;
+    private final File indexFile;
+    // mediaId -> entry, in download order; null until loaded; guarded by this
+    private Map<String, Entry> entries;
+    // media IDs whose file is known to still match its checksum: downloaded or hashed by this process, or untouched since;
+    // guarded by this
+    private final Set<String> verified = new HashSet<>();
+
+    DownloadIndex(@NonNull File directory) {
+        this.directory = directory;
+        indexFile = new File(directory, INDEX_FILE);
+    }
+
+    @Nullable
+    synchronized Entry get(@NonNull String mediaId) {
+        return entries().get(mediaId);
+    }
+
+    synchronized boolean contains(@NonNull String mediaId) {
+        return entries().containsKey(mediaId);
+    }
+
+    @NonNull
+    synchronized List<Entry> getAll() {
+        return new ArrayList<>(entries().values());
+    }
+
+    synchronized boolean isVerified(@NonNull String mediaId) {
+        return verified.contains(mediaId) && entries().containsKey(mediaId);
+    }
+
+    // entry's file was hashed just now, and matched; records its current modification time, so the next process doesn't
+    // hash it again
+    // false if entry was removed or replaced in the meantime; if the index can't be rewritten, it's still verified for
+    // this process
+    synchronized boolean markVerified(@NonNull Entry entry) throws IOException {
+        if (entries().get(entry.mediaId) != entry) {
+            return false;
+        }
+        entries.put(entry.mediaId, new Entry(entry.mediaId, entry.sourceUri, entry.fileName, entry.length, entry.sha256,
+                fileOf(entry).lastModified()));
+        verified.add(entry.mediaId);
+        write();
+        return true;
+    }
+
+    // the file was hashed as it was written, so the new entry is verified
+    synchronized void put(@NonNull Entry entry) throws IOException {
+        entries().put(entry.mediaId, entry);
+        verified.add(entry.mediaId);
+        write();
+    }
+
+    // returns the removed entry, if there was one
+    @Nullable
+    synchronized Entry remove(@NonNull String mediaId) throws IOException {
+        Entry removed = entries().remove(mediaId);
+        verified.remove(mediaId);
+        if (removed != null) {
+            write();
+        }
+        return removed;
+    }
+
+    // removes entry, unless it was removed or replaced in the meantime
+    synchronized boolean remove(@NonNull Entry entry) throws IOException {
+        if (entries().get(entry.mediaId) != entry) {
+            return false;
+        }
+        remove(entry.mediaId);
+        return true;
+    }
+
+    @NonNull
+    File fileOf(@NonNull Entry entry) {
+        return new File(directory, entry.fileName);
+    }
+
+    // guarded by this
+    private Map<String, Entry> entries() {
+        if (entries == null) {
+            entries = read();
+        }
+        return entries;
+    }
+
+    // guarded by this
+    private Map<String, Entry> read() {
+        Map<String, Entry> loaded = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_MTIME) {
+                return loaded;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readUTF(),
+                        version == FORMAT_VERSION ? in.readLong() : 0);
+                File file = fileOf(entry);
+                if (file.length() != entry.length) {
+                    continue;
+                }
+                loaded.put(entry.mediaId, entry);
+                if (entry.lastModified != 0 && file.lastModified() == entry.lastModified) {
+                    verified.add(entry.mediaId);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // nothing downloaded yet
+        } catch (IOException e) {
+            // unreadable; whatever was read so far is still good, the rest has to be downloaded again
+        }
+        return loaded;
+    }
+
+    // guarded by this
+    private void write() throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        File tempFile = new File(directory, INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                out.writeUTF(entry.mediaId);
+                out.writeUTF(entry.sourceUri);
+                out.writeUTF(entry.fileName);
+                out.writeLong(entry.length);
+                out.writeUTF(entry.sha256);
+                out.writeLong(entry.lastModified);
+            }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.v4.media.MediaMetadataCompat;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// indexes on-device audio from MediaStore, and keeps the index up to date incrementally
+//
+// MediaStore stamps every row it inserts or updates with the volume's current generation (GENERATION_MODIFIED, api 30+),
+// so after the first full scan, a rescan only asks for rows with a generation newer than the last one seen
+// deleted rows don't show up in that query; they're found by comparing the table's row count with the index,
+// and only if those differ, by diffing the (ID-only) list of rows
+// MediaStore.getVersion() changing means the database was rebuilt and generations restarted, which forces a full scan
+//
+// scan() does I/O and must not be called on the main thread; it isn't thread-safe, callers use one thread (the catalog's build thread)
+class LibraryScanner {
+
+    private static final String LOG_TAG = "MyLibraryScanner";
+
+    // album art is served by MediaStore per album, as a content:// URI that clients can load themselves
+    private static final Uri ALBUM_ART_URI = Uri.parse("content://media/external/audio/albumart");
+
+    private static final String[] PROJECTION = {
+            MediaStore.Audio.Media._ID,
+            MediaStore.Audio.Media.TITLE,
+            MediaStore.Audio.Media.ARTIST,
+            MediaStore.Audio.Media.ALBUM,
+            MediaStore.Audio.Media.ALBUM_ID,
+            MediaStore.Audio.Media.DURATION,
+            MediaStore.Audio.Media.CD_TRACK_NUMBER,
+            MediaStore.Audio.Media.GENERATION_MODIFIED,
+    };
+    private static final String MUSIC_SELECTION = MediaStore.Audio.Media.IS_MUSIC + " != 0";
+
+    // how the scanner reads MediaStore's version and generation; swapped out in tests
+    interface VersionSource {
+        @NonNull
+        String getVersion();
+
+        long getGeneration();
+    }
+
+    // what changed in one scan
+    static class ScanResult {
+        // true when the whole index was rebuilt; the lists are empty then
+        final boolean full;
+        final List<MediaMetadataCompat> addedOrChanged;
+        // what the changed tracks looked like before (ex. to find the album a track moved out of)
+        final List<MediaMetadataCompat> replaced;
+        // the removed tracks' last known metadata
+        final List<MediaMetadataCompat> removed;
+
+        ScanResult(boolean full, List<MediaMetadataCompat> addedOrChanged, List<MediaMetadataCompat> replaced, List<MediaMetadataCompat> removed) {
+            this.full = full;
+            this.addedOrChanged = addedOrChanged;
+            this.replaced = replaced;
+            this.removed = removed;
+        }
+
+        static ScanResult unchanged(boolean full) {
+            return new ScanResult(full, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+        }
+
+        boolean hasChanges() {
+            return full || !addedOrChanged.isEmpty() || !removed.isEmpty();
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final Uri collectionUri;
+    private final VersionSource versionSource;
+
+    // MediaStore _ID -> track, in MediaStore's order
+    private final Map<Long, MediaMetadataCompat> index = new LinkedHashMap<>();
+    private String lastVersion;
+    private long lastGeneration = -1;
+
+    LibraryScanner(@NonNull Context context) {
+        this(context.getContentResolver(), MediaStore.Audio.Media.getContentUri(MediaStore.VOLUME_EXTERNAL),
+                new VersionSource() {
+                    @NonNull
+                    @Override
+                    public String getVersion() {
+                        return MediaStore.getVersion(context, MediaStore.VOLUME_EXTERNAL);
+                    }
+
+                    @Override
+                    public long getGeneration() {
+                        return MediaStore.getGeneration(context, MediaStore.VOLUME_EXTERNAL);
+                    }
+                });
+    }
+
+    LibraryScanner(@NonNull ContentResolver contentResolver, @NonNull Uri collectionUri, @NonNull VersionSource versionSource) {
+        this.contentResolver = contentResolver;
+        this.collectionUri = collectionUri;
+        this.versionSource = versionSource;
+    }
+
+    // brings the index up to date; returns what changed since the last scan
+    @WorkerThread
+    @NonNull
+    ScanResult scan() {
+        long startMs = System.currentTimeMillis();
+        ScanResult result;
+        try {
+            String version = versionSource.getVersion();
+            // read the generation BEFORE querying, so rows changed during the query are picked up again next time rather than missed
+            long generation = versionSource.getGeneration();
+            if (!version.equals(lastVersion) || lastGeneration < 0) {
+                fullScan();
+                result = ScanResult.unchanged(true);
+            } else if (generation == lastGeneration && countRows() == index.size()) {
+                result = ScanResult.unchanged(false);
+            } else {
+                result = deltaScan();
+            }
+            lastVersion = version;
+            lastGeneration = generation;
+        } catch (SecurityException e) {
+            // READ_EXTERNAL_STORAGE hasn't been granted (yet); the library is just empty
+            Log.w(LOG_TAG, "no permission to read MediaStore", e);
+            result = ScanResult.unchanged(false);
+        }
+        Log.d(LOG_TAG, (result.full ? "full" : "incremental") + " scan: " + result.addedOrChanged.size() + " added/changed, "
+                + result.removed.size() + " removed, in " + (System.currentTimeMillis() - startMs) + " ms");
+        return result;
+    }
+
+    // every indexed track, in MediaStore's order
+    @NonNull
+    List<MediaMetadataCompat> getTracks() {
+        return new ArrayList<>(index.values());
+    }
+
+    private void fullScan() {
+        index.clear();
+        try (Cursor cursor = contentResolver.query(collectionUri, PROJECTION, MUSIC_SELECTION, null, null)) {
+            readRows(cursor, null, null);
+        }
+    }
+
+    private ScanResult deltaScan() {
+        List<MediaMetadataCompat> addedOrChanged = new ArrayList<>();
+        List<MediaMetadataCompat> replaced = new ArrayList<>();
+        String selection = MUSIC_SELECTION + " AND " + MediaStore.Audio.Media.GENERATION_MODIFIED + " > ?";
+        try (Cursor cursor = contentResolver.query(collectionUri, PROJECTION, selection, new String[]{Long.toString(lastGeneration)}, null)) {
+            readRows(cursor, addedOrChanged, replaced);
+        }
+
+        List<MediaMetadataCompat> removed = new ArrayList<>();
+        try (Cursor cursor = contentResolver.query(collectionUri, new String[]{MediaStore.Audio.Media._ID}, MUSIC_SELECTION, null, null)) {
+            if (cursor != null && cursor.getCount() != index.size()) {
+                // something was deleted (or stopped being music); find out what with the cheapest possible query
+                Set<Long> present = new HashSet<>(cursor.getCount() * 2);
+                while (cursor.moveToNext()) {
+                    present.add(cursor.getLong(0));
+                }
+                Map<Long, MediaMetadataCompat> gone = new HashMap<>();
+                for (Map.Entry<Long, MediaMetadataCompat> entry : index.entrySet()) {
+                    if (!present.contains(entry.getKey())) {
+                        gone.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                for (Map.Entry<Long, MediaMetadataCompat> entry : gone.entrySet()) {
+                    index.remove(entry.getKey());
+                    removed.add(entry.getValue());
+                }
+            }
+        }
+        return new ScanResult(false, addedOrChanged, replaced, removed);
+    }
+
+    private int countRows() {
+        try (Cursor cursor = contentResolver.query(collectionUri, new String[]{MediaStore.Audio.Media._ID}, MUSIC_SELECTION, null, null)) {
+            return cursor == null ? 0 : cursor.getCount();
+        }
+    }
+
+    // changes/replaced may be null when nobody needs to know (a full scan)
+    private void readRows(Cursor cursor, List<MediaMetadataCompat> changes, List<MediaMetadataCompat> replaced) {
+        if (cursor == null) {
+            return;
+        }
+        // look the columns up once, not per row
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media._ID);
+        int titleColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.TITLE);
+        int artistColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ARTIST);
+        int albumColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM);
+        int albumIdColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.ALBUM_ID);
+        int durationColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.DURATION);
+        int trackColumn = cursor.getColumnIndexOrThrow(MediaStore.Audio.Media.CD_TRACK_NUMBER);
+
+        while (cursor.moveToNext()) {
+            long id = cursor.getLong(idColumn);
+            String mediaUri = ContentUris.withAppendedId(collectionUri, id).toString();
+            MediaMetadataCompat.Builder builder = new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, MediaCatalog.TRACK_PREFIX + mediaUri)
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI, mediaUri)
+                    .putString(MediaMetadataCompat.METADATA_KEY_TITLE, cursor.getString(titleColumn))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ARTIST, cursor.getString(artistColumn))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM, cursor.getString(albumColumn))
+                    .putString(MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI,
+                            ContentUris.withAppendedId(ALBUM_ART_URI, cursor.getLong(albumIdColumn)).toString())
+                    .putLong(MediaMetadataCompat.METADATA_KEY_DURATION, cursor.getLong(durationColumn));
+            String trackNumber = cursor.getString(trackColumn);
+            if (trackNumber != null) {
+                // CD_TRACK_NUMBER can look like "3/12"
+                try {
+                    int slash = trackNumber.indexOf('/');
+                    builder.putLong(MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER,
+                            Long.parseLong(slash < 0 ? trackNumber : trackNumber.substring(0, slash)));
+                } catch (NumberFormatException e) {
+                    // no usable track number
+                }
+            }
+            MediaMetadataCompat track = builder.build();
+            MediaMetadataCompat previous = index.put(id, track);
+            if (changes != null) {
+                changes.add(track);
+            }
+            if (replaced != null && previous != null) {
+                replaced.add(previous);
+            }
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package com.example.audioplayer_ver_dev02;
 
+import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.view.WindowCompat;
 import androidx.core.view.WindowInsetsCompat;
 import androidx.core.view.WindowInsetsControllerCompat;
-import androidx.media3.common.MediaItem;
 import androidx.media3.common.Player;
 import androidx.media3.common.util.Util;
 import androidx.media3.exoplayer.ExoPlayer;
@@ -25,47 +33,109 @@ import androidx.media3.ui.PlayerView;
 
 public class MainActivity extends AppCompatActivity {
 
-    private ExoPlayer exoPlayer;
+    private static final int REQUEST_READ_LIBRARY = 1;
+
+    // the player itself lives in MediaBrowsingService; this activity only attaches its PlayerView to it while visible
+    // so leaving and coming back to the app doesn't re-buffer the stream or re-create the decoders
+    private Player player;
     private PlayerView playerView;
     private boolean playWhenReady;
-    private int currentItem;
-    private long playbackPosition;
-    private final Player.Listener playbackStateListener = new PlaybackStateListener();
+    private boolean bound;
+    @Nullable
+    private MediaBrowsingService.PlayerBinder playerBinder;
+    // the library permission was granted before the service was bound
+    private boolean rescanOnConnect;
+
+    private final ServiceConnection playerConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            playerBinder = (MediaBrowsingService.PlayerBinder) service;
+            player = playerBinder.getPlayer();
+            playerView.setPlayer(player);
+            // the service replaces its player when the buffering profile changes
+            playerBinder.setOnPlayerChangedListener(newPlayer -> {
+                player = newPlayer;
+                playerView.setPlayer(newPlayer);
+            });
+
+            // first time around: load the last session's queue and position (or the stream, if nothing was saved), and start it like the activity always has
+            // every other time: the service's player already has its item, buffer, and position
+            // (the queue and position themselves live in the service, which saves them; see PlaybackStateStore)
+            if (player.getMediaItemCount() == 0) {
+                playerBinder.preparePlayer();
+                if (playWhenReady) {
+                    player.play();
+                }
+            }
+            playWhenReady = false;
+
+            if (rescanOnConnect) {
+                playerBinder.rescanLibrary();
+                rescanOnConnect = false;
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // the service's process died; PlayerView can't keep using its player
+            playerView.setPlayer(null);
+            player = null;
+            playerBinder = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        playWhenReady = true;
-        currentItem = 0;
-        playbackPosition = 0L;
+        playerView = findViewById(R.id.player_view);
+        // only autoplay on a fresh launch, not when re-created after a rotation
+        playWhenReady = savedInstanceState == null;
+
+        // the service can't ask for permissions itself; without this one, it only has the stream
+        if (checkSelfPermission(Manifest.permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
+            requestPermissions(new String[]{Manifest.permission.READ_EXTERNAL_STORAGE}, REQUEST_READ_LIBRARY);
+        }
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_READ_LIBRARY && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            // the service scanned an empty library at startup; have it scan again now that it can read it
+            if (playerBinder != null) {
+                playerBinder.rescanLibrary();
+            } else {
+                rescanOnConnect = true;
+            }
+        }
     }
 
-    // api 24 introduced multiple window support, allowing app to be visible while inactive, so player initialization must happen in onStart
+    // api 24 introduced multiple window support, allowing app to be visible while inactive, so attaching to the player must happen in onStart
     @Override
     protected void onStart() {
         super.onStart();
         if (Util.SDK_INT > 23) {
-            initializePlayer();
+            attachPlayer();
         }
     }
 
-    // api 23 and lower requires program to wait as long as possible before grabbing resources, done by waiting until onResume to call initializePlayer()
+    // api 23 and lower requires program to wait as long as possible before grabbing resources, done by waiting until onResume to call attachPlayer()
     @Override
     protected void onResume() {
         super.onResume();
         hideSystemUi();
-        if ((Util.SDK_INT <= 23 || exoPlayer == null)) {
-            initializePlayer();
+        if (Util.SDK_INT <= 23 || !bound) {
+            attachPlayer();
         }
     }
 
-    // before api 23, onStop not always called, so player release must be done asap w/ onPause
+    // before api 23, onStop not always called, so detaching must be done asap w/ onPause
     @Override
     protected void onPause() {
         super.onPause();
         if (Util.SDK_INT <= 23) {
-            releasePlayer();
+            detachPlayer();
         }
     }
 
@@ -74,31 +144,32 @@ public class MainActivity extends AppCompatActivity {
     protected void onStop() {
         super.onStop();
         if (Util.SDK_INT > 23) {
-            releasePlayer();
+            detachPlayer();
         }
     }
 
-    private void initializePlayer() {
-        exoPlayer = new ExoPlayer.Builder(this).build();
-        playerView = findViewById(R.id.player_view);
-        playerView.setPlayer(exoPlayer);
-        MediaItem mediaItem = MediaItem.fromUri(getString(R.string.media_url_mp3));
-        exoPlayer.setMediaItem(mediaItem);
-
-        // for resuming play after pausing program
-        exoPlayer.setPlayWhenReady(playWhenReady);
-        exoPlayer.seekTo(currentItem, playbackPosition);
-        exoPlayer.addListener(playbackStateListener);
-        exoPlayer.prepare();
+    // binds to MediaBrowsingService for its Player; the service (and the player) is created if it isn't running yet
+    private void attachPlayer() {
+        if (bound) {
+            return;
+        }
+        Intent intent = new Intent(this, MediaBrowsingService.class).setAction(MediaBrowsingService.ACTION_BIND_PLAYER);
+        bound = bindService(intent, playerConnection, Context.BIND_AUTO_CREATE);
     }
 
-    private void releasePlayer() {
-        playbackPosition = exoPlayer.getCurrentPosition();
-        currentItem = exoPlayer.getCurrentMediaItemIndex();
-        playWhenReady = exoPlayer.getPlayWhenReady();
-        exoPlayer.removeListener(playbackStateListener);
-        exoPlayer.release();
-        exoPlayer = null;
+    // only lets go of the player; playback, its buffer, and its position stay in the service
+    private void detachPlayer() {
+        if (!bound) {
+            return;
+        }
+        if (playerBinder != null) {
+            playerBinder.setOnPlayerChangedListener(null);
+            playerBinder = null;
+        }
+        playerView.setPlayer(null);
+        player = null;
+        unbindService(playerConnection);
+        bound = false;
     }
 
     private void hideSystemUi() {
@@ -107,40 +178,33 @@ public class MainActivity extends AppCompatActivity {
         windowInsetsControllerCompat.setSystemBarsBehavior(WindowInsetsControllerCompat.BEHAVIOR_SHOW_TRANSIENT_BARS_BY_SWIPE);
     }
 
-    public ExoPlayer getExoPlayer() {
-        return exoPlayer;
+    @Nullable
+    public Player getPlayer() {
+        return player;
     }
 }
 
+// logs player state transitions; the full metrics (time in each state, rebuffers, etc) are in PlaybackMetrics
 class PlaybackStateListener implements Player.Listener {
 
-    private final String TAG = "AudioPlayer_dev.0.2";
-    String state;
+    private static final String TAG = "AudioPlayer_dev.0.2";
 
-    @Override
-    public void onPlaybackStateChanged(int playbackState) {
-        switch (playbackState) {
+    // whole log lines, built once, indexed by ExoPlayer.STATE_*, so a transition doesn't build any strings
+    private static final String[] STATE_LOG_LINES = {
+            "changed state to UNKNOWN_STATE             -",
             // has been instantiated, but ExoPlayer.prepare() hasn't been called
-            case ExoPlayer.STATE_IDLE:
-                state = "ExoPlayer.STATE_IDLE      -";
-                break;
+            "changed state to ExoPlayer.STATE_IDLE      -",
             // player's data buffer has run out, and must load more data
-            case ExoPlayer.STATE_BUFFERING:
-                state = "ExoPlayer.STATE_BUFFERING -";
-                break;
-            // media being played has finished
-            case ExoPlayer.STATE_ENDED:
-                state = "ExoPlayer.STATE_ENDED     -";
-                break;
+            "changed state to ExoPlayer.STATE_BUFFERING -",
             // ready to play from current position, and will play automatically if playWhenReady = true
-            case ExoPlayer.STATE_READY:
-                state = "ExoPlayer.STATE_READY     -";
-                break;
-            default:
-                state = "UNKNOWN_STATE             -";
-                break;
-        }
-        Log.d(TAG, "changed state to " + state);
+            "changed state to ExoPlayer.STATE_READY     -",
+            // media being played has finished
+            "changed state to ExoPlayer.STATE_ENDED     -",
+    };
+
+    @Override
+    public void onPlaybackStateChanged(int playbackState) {
+        boolean known = playbackState >= ExoPlayer.STATE_IDLE && playbackState <= ExoPlayer.STATE_ENDED;
+        Log.d(TAG, STATE_LOG_LINES[known ? playbackState : 0]);
     }
 }
-
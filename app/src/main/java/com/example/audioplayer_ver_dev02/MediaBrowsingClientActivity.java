@@ -3,16 +3,27 @@ package com.example.audioplayer_ver_dev02;
 import android.content.ComponentName;
 import android.media.AudioManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaControllerCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.format.DateUtils;
 import android.view.View;
 import android.widget.ImageView;
+import android.widget.SeekBar;
+import android.widget.TextView;
 
+import androidx.activity.OnBackPressedCallback;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 
 public class MediaBrowsingClientActivity extends AppCompatActivity {
     // contains UI code, an associated MediaController, and a MediaBrowser
@@ -20,41 +31,84 @@ public class MediaBrowsingClientActivity extends AppCompatActivity {
     // ======
     // FIELDS
     // ======
-    private MediaBrowserCompat mediaBrowser;
+    // last-known session state, kept across recreation so the screen isn't blank until the service answers
+    private static final String STATE_METADATA = "metadata";
+    private static final String STATE_PLAYBACK_STATE = "playback_state";
+    private static final String STATE_OPENED_NODES = "opened_nodes";
+
+    // owns the MediaBrowserCompat (a new one after every lost connection)
+    private ReconnectionManager reconnectionManager;
     private ImageView playPause;
+    private TextView nowPlaying;
+    // set once connected; kept here so the UI doesn't look it up (or ask it for its state) on every click
+    private MediaControllerCompat mediaController;
+    // position display: extrapolated from the last published PlaybackStateCompat, so it costs no binder calls between state changes
+    private SeekBar playbackProgress;
+    private TextView playbackPosition;
+    private PositionTicker positionTicker;
+    private boolean userSeeking;
+    @Nullable
+    private MediaMetadataCompat lastMetadata;
+    // the browse tree: the loader subscribes (page by page) to the node on screen, the adapter shows it
+    private BrowseListLoader browseListLoader;
+    private BrowseAdapter browseAdapter;
+    // the nodes opened on the way to the one on screen (which is on top); the root is at the bottom
+    private final Deque<String> openedNodes = new ArrayDeque<>();
+    private final OnBackPressedCallback backToParentNode = new OnBackPressedCallback(false) {
+        @Override
+        public void handleOnBackPressed() {
+            openedNodes.pop();
+            if (browseListLoader != null) {
+                browseListLoader.open(openedNodes.peek());
+            }
+            setEnabled(openedNodes.size() > 1);
+        }
+    };
 
     // =====================================
     // CALLBACKS (LIFECYCLE CALLBACKS BELOW)
     // =====================================
-    private MediaBrowserCompat.ConnectionCallback connectionCallbacks = new MediaBrowserCompat.ConnectionCallback() {
+    private final ReconnectionManager.Listener connectionListener = new ReconnectionManager.Listener() {
         @Override
-        public void onConnected() {
-            super.onConnected();
-
+        public void onConnected(@NonNull MediaBrowserCompat mediaBrowser, boolean reconnected) {
             // get token from MediaBrowserServiceCompat/MediaBrowsingService.java for the MediaSession
             MediaSessionCompat.Token token = mediaBrowser.getSessionToken();
 
             // create a MediaControllerCompat instance with aforementioned token
-            MediaControllerCompat mediaControllerCompat = new MediaControllerCompat(MediaBrowsingClientActivity.this, token);
+            mediaController = new MediaControllerCompat(MediaBrowsingClientActivity.this, token);
 
             // save controller to media browser client/MediaBrowsingClientActivity.java
-            MediaControllerCompat.setMediaController(MediaBrowsingClientActivity.this, mediaControllerCompat);
+            MediaControllerCompat.setMediaController(MediaBrowsingClientActivity.this, mediaController);
 
             // finish building UI
             buildTransportControls();
+            if (reconnected && browseListLoader != null) {
+                // same screen, new connection: subscribe again to what's shown
+                browseListLoader.onReconnected(mediaBrowser);
+            } else {
+                buildBrowseList(mediaBrowser);
+            }
         }
 
         @Override
-        public void onConnectionFailed() {
-            // service/MediaBrowsingService refused connection
-            super.onConnectionFailed();
-        }
-
-        @Override
-        public void onConnectionSuspended() {
-            // service/MediaBrowsingService crashed
-            // disable transport controls until it automatically reconnects
-            super.onConnectionSuspended();
+        public void onConnectionLost() {
+            // service/MediaBrowsingService crashed, or its session was destroyed; ReconnectionManager is already on it
+            // the controller is dead; everything on screen stays as it was, except the position stops moving
+            if (mediaController != null) {
+                mediaController.unregisterCallback(controllerCallback);
+                mediaController = null;
+            }
+            if (browseListLoader != null) {
+                browseListLoader.onConnectionLost();
+            }
+            PlaybackStateCompat lastState = positionTicker.getPlaybackState();
+            if (lastState != null) {
+                PlaybackStateCompat connecting = new PlaybackStateCompat.Builder(lastState)
+                        .setState(PlaybackStateCompat.STATE_CONNECTING, positionTicker.getPositionMs(), lastState.getPlaybackSpeed(), SystemClock.elapsedRealtime())
+                        .build();
+                showPlaybackState(connecting);
+                positionTicker.setPlaybackState(connecting);
+            }
         }
     };
 
@@ -64,20 +118,23 @@ public class MediaBrowsingClientActivity extends AppCompatActivity {
         @Override
         public void onMetadataChanged(MediaMetadataCompat metadata) {
             super.onMetadataChanged(metadata);
+            showMetadata(metadata);
         }
 
         @Override
         public void onPlaybackStateChanged(PlaybackStateCompat state) {
             super.onPlaybackStateChanged(state);
+            showPlaybackState(state);
+            // the only time the displayed position resyncs with the service
+            positionTicker.setPlaybackState(state);
         }
 
         // if media session becomes invalid, media browser must be disconnected from MediaBrowserService/MediaBrowsingService.java
         // if mediaBrowser is not disconnected, user cannot view or control playback (might be *somewhat* not ideal, yk not being able to control the media playing through one's device)
         @Override
         public void onSessionDestroyed() {
-            mediaBrowser.disconnect();
-            // maybe schedule a reconnection using a *new* MediaBrowserCompat instance
-            // check onCreate() below
+            // disconnects, then reconnects using a *new* MediaBrowserCompat instance (with backoff, until the service is back)
+            reconnectionManager.onSessionDestroyed();
         }
     };
 
@@ -89,34 +146,122 @@ public class MediaBrowsingClientActivity extends AppCompatActivity {
     // TransportControls methods send callbacks to media session in MediaBrowsingService
     // define a corresponding MediaSessionCompat.Callback for each media control (MyMediaSessionCallbacks)
     private void buildTransportControls() {
-        // grab view for play/pause button
-        playPause = findViewById(R.id.play_pause);
-
+        // (play/pause button view is grabbed in onCreate())
         // attach listener to play/pause button
         playPause.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
                 // play/pause is a toggle button, so you need to test state and choose action accordingly
-                int playbackState = MediaControllerCompat.getMediaController(MediaBrowsingClientActivity.this).getPlaybackState().getState();
-                if (playbackState == PlaybackStateCompat.STATE_PLAYING) {
-                    MediaControllerCompat.getMediaController(MediaBrowsingClientActivity.this).getTransportControls().pause();
+                // (the state is the last one the session published, not asked for again)
+                if (mediaController == null) {
+                    // reconnecting
+                    return;
+                }
+                if (positionTicker.isPlaying()) {
+                    mediaController.getTransportControls().pause();
                 } else {
-                    MediaControllerCompat.getMediaController(MediaBrowsingClientActivity.this).getTransportControls().play();
+                    mediaController.getTransportControls().play();
                 }
             }
         });
 
-        // declare and initialize MediaController
-        MediaControllerCompat mediaController = MediaControllerCompat.getMediaController(MediaBrowsingClientActivity.this);
+        // seek when the user lets go of the seek bar; until then, the ticker leaves it alone
+        playbackProgress.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                if (fromUser) {
+                    showPosition(progress, seekBar.getMax());
+                }
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                userSeeking = true;
+            }
 
-        // display initial metadata and playback state
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                userSeeking = false;
+                if (mediaController == null) {
+                    return;
+                }
+                mediaController.getTransportControls().seekTo(seekBar.getProgress());
+                positionTicker.seekLocally(seekBar.getProgress());
+            }
+        });
+
+        // display initial metadata and playback state (the last binder calls for them; the callback keeps them up to date)
         MediaMetadataCompat metadata = mediaController.getMetadata();
         PlaybackStateCompat playbackState = mediaController.getPlaybackState();
+        showMetadata(metadata);
+        showPlaybackState(playbackState);
+        positionTicker.setPlaybackState(playbackState);
 
         // register callback to stay in sync
         mediaController.registerCallback(controllerCallback);
     }
 
+    private void showMetadata(@Nullable MediaMetadataCompat metadata) {
+        lastMetadata = metadata;
+        nowPlaying.setText(metadata == null ? null : metadata.getDescription().getTitle());
+        positionTicker.setDuration(metadata == null ? 0 : metadata.getLong(MediaMetadataCompat.METADATA_KEY_DURATION));
+    }
+
+    private void showPlaybackState(@Nullable PlaybackStateCompat state) {
+        boolean playing = state != null && state.getState() == PlaybackStateCompat.STATE_PLAYING;
+        playPause.setImageResource(playing ? R.drawable.ic_pause : R.drawable.ic_play_pause);
+        playPause.setContentDescription(getString(playing ? R.string.pause : R.string.play));
+    }
+
+    private void showPosition(long positionMs, long durationMs) {
+        playbackPosition.setText(durationMs > 0
+                ? getString(R.string.position_of_duration, DateUtils.formatElapsedTime(positionMs / 1000), DateUtils.formatElapsedTime(durationMs / 1000))
+                : DateUtils.formatElapsedTime(positionMs / 1000));
+    }
+
+    // starts at the root the service gave us (or where the user was, if the activity was recreated);
+    // rows are bound as they scroll into view, which is what drives prefetching
+    private void buildBrowseList(MediaBrowserCompat mediaBrowser) {
+        releaseBrowseList();
+        browseListLoader = new BrowseListLoader(mediaBrowser, items -> browseAdapter.submitList(items));
+        if (openedNodes.isEmpty() || !openedNodes.peekLast().equals(mediaBrowser.getRoot())) {
+            openedNodes.clear();
+            openedNodes.push(mediaBrowser.getRoot());
+        }
+        backToParentNode.setEnabled(openedNodes.size() > 1);
+        browseListLoader.open(openedNodes.peek());
+    }
+
+    private void releaseBrowseList() {
+        if (browseListLoader != null) {
+            browseListLoader.release();
+            browseListLoader = null;
+        }
+    }
+
+    private final BrowseAdapter.Listener browseListener = new BrowseAdapter.Listener() {
+        @Override
+        public void onItemShown(int position) {
+            if (browseListLoader != null) {
+                browseListLoader.onItemShown(position);
+            }
+        }
+
+        @Override
+        public void onItemClicked(@NonNull MediaBrowserCompat.MediaItem item) {
+            if (browseListLoader == null || item.getMediaId() == null) {
+                return;
+            }
+            if (item.isBrowsable()) {
+                openedNodes.push(item.getMediaId());
+                backToParentNode.setEnabled(true);
+                browseListLoader.open(item.getMediaId());
+            } else if (item.isPlayable() && mediaController != null) {
+                mediaController.getTransportControls().playFromMediaId(item.getMediaId(), null);
+            }
+        }
+    };
+
     // ===================
     // LIFECYCLE CALLBACKS
     // ===================
@@ -125,20 +270,61 @@ public class MediaBrowsingClientActivity extends AppCompatActivity {
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        // create MediaBrowserServiceCompat
-        mediaBrowser = new MediaBrowserCompat(this,
-                new ComponentName(this, MediaBrowsingService.class),
-                connectionCallbacks,
-                null); // optional Bundle
+        setContentView(R.layout.activity_browse);
+        // grab views for play/pause button, title, and browse list
+        playPause = findViewById(R.id.play_pause);
+        nowPlaying = findViewById(R.id.now_playing);
+        playbackProgress = findViewById(R.id.playback_progress);
+        playbackPosition = findViewById(R.id.playback_position);
+        // the seek bar is in ms; 250 ms steps are smooth enough for it, and the text only changes once a second anyway
+        positionTicker = new PositionTicker(250, (positionMs, durationMs) -> {
+            playbackProgress.setEnabled(durationMs > 0);
+            if (!userSeeking) {
+                playbackProgress.setMax((int) durationMs);
+                playbackProgress.setProgress((int) positionMs);
+                showPosition(positionMs, durationMs);
+            }
+        });
+        browseAdapter = new BrowseAdapter(browseListener);
+        RecyclerView browseList = findViewById(R.id.browse_list);
+        // rows are all the same height
+        browseList.setHasFixedSize(true);
+        browseList.setAdapter(browseAdapter);
+        getOnBackPressedDispatcher().addCallback(this, backToParentNode);
+
+        // show what was on screen before the activity was recreated, until the service says otherwise
+        if (savedInstanceState != null) {
+            showMetadata(savedInstanceState.getParcelable(STATE_METADATA));
+            PlaybackStateCompat playbackState = savedInstanceState.getParcelable(STATE_PLAYBACK_STATE);
+            showPlaybackState(playbackState);
+            positionTicker.setPlaybackState(playbackState);
+            ArrayList<String> nodes = savedInstanceState.getStringArrayList(STATE_OPENED_NODES);
+            if (nodes != null) {
+                openedNodes.addAll(nodes);
+            }
+        }
+
+        // creates (and re-creates) the MediaBrowserServiceCompat connection
+        reconnectionManager = new ReconnectionManager(this, new ComponentName(this, MediaBrowsingService.class), connectionListener);
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(STATE_METADATA, lastMetadata);
+        outState.putParcelable(STATE_PLAYBACK_STATE, positionTicker.getPlaybackState());
+        // top of the stack first
+        outState.putStringArrayList(STATE_OPENED_NODES, new ArrayList<>(openedNodes));
     }
 
     // connects to MediaBrowserServiceCompat/MediaBrowsingService.java
-    // if connection is successful, MediaBrowserCompat.ConnectionCallback:
+    // if connection is successful, ReconnectionManager.Listener:
     // creates media controller, links it to media session, links UI ctrls to MediaController, and registers controller to receive callbacks from media session
     @Override
     protected void onStart() {
         super.onStart();
-        mediaBrowser.connect();
+        positionTicker.start();
+        reconnectionManager.start();
     }
 
     // sets audio stream so app responds to device's volume ctrl
@@ -151,10 +337,13 @@ public class MediaBrowsingClientActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
+        positionTicker.stop();
         // see "stay in sync with the media session" https://developer.android.com/guide/topics/media-apps/audio-app/building-a-mediabrowser-client#sync-with-mediasession
-        if (MediaControllerCompat.getMediaController(MediaBrowsingClientActivity.this) != null) {
-            MediaControllerCompat.getMediaController(MediaBrowsingClientActivity.this).unregisterCallback(controllerCallback);
+        if (mediaController != null) {
+            mediaController.unregisterCallback(controllerCallback);
+            mediaController = null;
         }
-        mediaBrowser.disconnect();
+        releaseBrowseList();
+        reconnectionManager.stop();
     }
 }
@@ -1,30 +1,57 @@
 package com.example.audioplayer_ver_dev02;
 
 import android.annotation.SuppressLint;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.graphics.Color;
-import android.media.AudioAttributes;
-import android.media.AudioFocusRequest;
-import android.media.AudioManager;
+import android.database.ContentObserver;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Binder;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.ResultReceiver;
+import android.os.SystemClock;
+import android.provider.MediaStore;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaDescriptionCompat;
 import android.support.v4.media.MediaMetadataCompat;
-import android.support.v4.media.session.MediaControllerCompat;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.app.NotificationCompat;
+import androidx.annotation.OptIn;
 import androidx.media.MediaBrowserServiceCompat;
 import androidx.media.session.MediaButtonReceiver;
+import androidx.media.utils.MediaConstants;
+import androidx.media3.common.C;
+import androidx.media3.common.ForwardingPlayer;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class MediaBrowsingService extends MediaBrowserServiceCompat {
     // allows components and applications with a MediaBrowser to connect with their own media controller, and control the player
@@ -46,18 +73,257 @@ public class MediaBrowsingService extends MediaBrowserServiceCompat {
 
     private static final String MEDIA_ROOT_ID = "media_root_id";
     private static final String EMPTY_ROOT_ID = "empty_root_id";
+    // what clients asking for BrowserRoot.EXTRA_RECENT (ex. the system's media resumption) get: the last played item
+    private static final String RECENT_ROOT_ID = "recent_root_id";
+    // what clients asking for BrowserRoot.EXTRA_SUGGESTED get: the last played item and what was queued after it
+    private static final String SUGGESTED_ROOT_ID = "suggested_root_id";
+    private static final int SUGGESTED_CHILDREN_LIMIT = 8;
+    // what clients asking for BrowserRoot.EXTRA_OFFLINE (ex. Android Auto without a connection) get: the downloaded tracks
+    private static final String OFFLINE_ROOT_ID = "offline_root_id";
 
     private static final String LOG_TAG = "MyMediaBrowsingService";
 
+    // bindService() with this action returns a PlayerBinder instead of the MediaBrowserService binder
+    // only used by activities in this process that need the actual Player instance (ex. MainActivity's PlayerView)
+    static final String ACTION_BIND_PLAYER = "com.example.audioplayer_ver_dev02.action.BIND_PLAYER";
+
+    // session custom action that switches the player's buffering profile (playback mode)
+    // extras: EXTRA_BUFFERING_PROFILE, the BufferingProfile's name
+    static final String CUSTOM_ACTION_SET_BUFFERING_PROFILE = "com.example.audioplayer_ver_dev02.action.SET_BUFFERING_PROFILE";
+    static final String EXTRA_BUFFERING_PROFILE = "buffering_profile";
+    // session custom actions that download (or delete the download of) a track, or every track of an album, for offline playback
+    // extras: EXTRA_MEDIA_ID
+    static final String CUSTOM_ACTION_DOWNLOAD = "com.example.audioplayer_ver_dev02.action.DOWNLOAD";
+    static final String CUSTOM_ACTION_REMOVE_DOWNLOAD = "com.example.audioplayer_ver_dev02.action.REMOVE_DOWNLOAD";
+    static final String EXTRA_MEDIA_ID = "media_id";
+    // session command that returns a PlaybackMetrics snapshot (see PlaybackMetricsListener.toBundle() for the keys) to its ResultReceiver
+    static final String COMMAND_DUMP_PLAYBACK_METRICS = "com.example.audioplayer_ver_dev02.command.DUMP_PLAYBACK_METRICS";
+    // session command that returns the startup phase timings (phase name -> ms, see StartupTracer) to its ResultReceiver
+    static final String COMMAND_DUMP_STARTUP_TIMINGS = "com.example.audioplayer_ver_dev02.command.DUMP_STARTUP_TIMINGS";
+    private static final String PREFERENCES_NAME = "playback";
+    private static final String PREFERENCE_BUFFERING_PROFILE = "buffering_profile";
+    // MediaStore sends a burst of change notifications while files are copied or scanned in; one rescan per burst is enough
+    private static final long LIBRARY_RESCAN_DELAY_MS = 1000;
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    // while playing, the position is saved this often; pausing, seeking and skipping save it right away
+    private static final long POSITION_SAVE_INTERVAL_MS = 5000;
+    // downloads of a whole album finish in a burst; one catalog rebuild per burst is enough
+    private static final long DOWNLOADS_CHANGED_DELAY_MS = 1000;
+    // how much analyzed audio each loudness log line covers
+    private static final long LOUDNESS_LOG_INTERVAL_MS = 10_000;
+    // while the stream's tags can't be read (ex. no network), they're retried this often, then less and less often
+    private static final long STREAM_TAGS_RETRY_BASE_MS = 30_000;
+    private static final long STREAM_TAGS_RETRY_MAX_MS = 30 * 60_000;
+
     // MediaSession contains the Player, and provides a link between the app and the Player (kind of like a middle-man)
     private MediaSessionCompat mediaSession;
     // describes transport state (playing, paused, buffering, etc); the player's position; any accessible player actions; and an error code and optional error msg, when applicable
     private PlaybackStateCompat.Builder playerStateBuilder;
+    // in-memory index of the content hierarchy, built in the background (and rebuilt when the library changes) and read by onLoadChildren()
+    private MediaCatalog mediaCatalog;
+    // persistent metadata, so tags aren't re-parsed on every cold start
+    private MetadataCache metadataCache;
+    // reads the stream's tags over the network, off the catalog's build thread (which every whenReady() waits on)
+    private final ScheduledExecutorService streamTagsExecutor = Executors.newSingleThreadScheduledExecutor();
+    // only used on streamTagsExecutor
+    private final ReconnectionPolicy streamTagsBackoff = new ReconnectionPolicy(STREAM_TAGS_RETRY_BASE_MS, STREAM_TAGS_RETRY_MAX_MS, new Random());
+    // a read of the stream's tags is running, or scheduled to retry
+    private final AtomicBoolean streamTagsPending = new AtomicBoolean();
+    // downsampled, cached album art for the notification; created with it
+    private ArtworkLoader artworkLoader;
+    // the media notification; follows the session's metadata and playback state once started
+    // created on the first play (see notificationManager()), since a client that only browses never needs it
+    private MediaNotificationManager mediaNotificationManager;
+    // loads pages off the main thread and merges duplicate requests from multiple clients
+    private CatalogLoader catalogLoader;
+    // the on-device library; only used from the catalog's build thread
+    private LibraryScanner libraryScanner;
+    // what the latest library scan changed; written on the catalog's build thread, read right after the rebuild on the same thread
+    private LibraryScanner.ScanResult lastLibraryScan;
+    // title/artist/album index for onSearch() and onPlayFromSearch(); kept up to date alongside the catalog, from its build thread
+    private final SearchIndex searchIndex = new SearchIndex();
+    // which parent IDs clients are subscribed to, so library changes only notify those
+    private final SubscriptionTracker subscriptionTracker = new SubscriptionTracker();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable rescanLibraryRunnable = this::rescanLibrary;
+    // tracks downloaded for offline playback; the catalog marks them, and the player reads them instead of the network
+    private OfflineDownloader offlineDownloader;
+    // media IDs whose download status changed since the last rebuild; main thread only
+    private final Set<String> changedDownloads = new HashSet<>();
+    private final Runnable downloadsChangedRunnable = this::onDownloadsChanged;
+    // schedules a rescan whenever MediaStore's audio table changes
+    private final ContentObserver libraryObserver = new ContentObserver(mainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mainHandler.removeCallbacks(rescanLibraryRunnable);
+            mainHandler.postDelayed(rescanLibraryRunnable, LIBRARY_RESCAN_DELAY_MS);
+        }
+    };
+
+    // the one and only player; it lives as long as the service, so activities coming and going don't re-buffer or re-init decoders
+    // null until something needs it (see requirePlayer())
+    private ExoPlayer exoPlayer;
+    // what activities get: the same player, but play/pause go through the media session (audio focus, foreground, notification)
+    private Player sessionRoutedPlayer;
+    // keeps the media session's PlaybackStateCompat/metadata in sync with exoPlayer
+    private PlayerSessionBridge playerSessionBridge;
+    // rate-limits what the bridge publishes to the session's controllers; outlives player rebuilds
+    private PlaybackStatePublisher playbackStatePublisher;
+    private final Player.Listener playbackStateListener = new PlaybackStateListener();
+    // outlives player rebuilds, so metrics aggregate over the whole service lifetime
+    private final PlaybackMetrics playbackMetrics = new PlaybackMetrics();
+    private final PlaybackMetricsListener playbackMetricsListener = new PlaybackMetricsListener(playbackMetrics);
+    // levels and spectrum of what's playing, tapped from every player's audio sink (see AnalyzingRenderersFactory);
+    // outlives player rebuilds; its thread is started with the first player
+    private final AudioAnalyzer audioAnalyzer = new AudioAnalyzer();
+    // logs the mean RMS and the peak of every LOUDNESS_LOG_INTERVAL_MS of analyzed audio; runs on the analysis thread
+    private final AudioAnalyzer.Listener loudnessLogger = new AudioAnalyzer.Listener() {
+        private double energySum;
+        private int frameCount;
+        private float peakDb = AudioAnalyzer.MIN_DB;
+        private long droppedSamples;
+        private long startMs;
 
+        @Override
+        public void onAnalysis(@NonNull AudioAnalyzer.Frame frame) {
+            long nowMs = SystemClock.elapsedRealtime();
+            if (frameCount == 0) {
+                startMs = nowMs;
+            }
+            energySum += Math.pow(10, frame.rmsDb / 10);
+            frameCount++;
+            peakDb = Math.max(peakDb, frame.peakDb);
+            droppedSamples += frame.droppedSamples;
+            if (nowMs - startMs >= LOUDNESS_LOG_INTERVAL_MS) {
+                Log.d(LOG_TAG, String.format(Locale.US, "loudness: %.1f dBFS RMS, %.1f dBFS peak over %d ms (%d samples not analyzed)",
+                        10 * Math.log10(energySum / frameCount), peakDb, nowMs - startMs, droppedSamples));
+                energySum = 0;
+                frameCount = 0;
+                peakDb = AudioAnalyzer.MIN_DB;
+                droppedSamples = 0;
+            }
+        }
+    };
+    // on-disk cache under the player's data source; opening it reads the cache index from disk, so it's opened on ioExecutor
+    // during onCreate(), and the player picks it up from mediaCacheManagerFuture when it's built
+    private MediaCacheManager mediaCacheManager;
+    private CompletableFuture<MediaCacheManager> mediaCacheManagerFuture;
+    // one-off disk work that mustn't happen on the main thread: opening the cache, reading the saved state, deleting downloads
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // the queue and position saved by the previous process; read on ioExecutor during onCreate(), and only used when
+    // something wants to play before anything else has been loaded into the player
+    private PlaybackStateStore playbackStateStore;
+    private CompletableFuture<PlaybackStateStore.SavedState> savedStateFuture;
+    private final Runnable savePositionRunnable = this::savePlaybackPosition;
+    // saves the queue when it changes, and the position whenever it jumps or playback starts/stops
+    private final Player.Listener persistListener = new Player.Listener() {
+        @Override
+        public void onEvents(@NonNull Player player, @NonNull Player.Events events) {
+            if (events.contains(Player.EVENT_TIMELINE_CHANGED)) {
+                savePlaybackQueue();
+            }
+            if (events.containsAny(Player.EVENT_TIMELINE_CHANGED, Player.EVENT_MEDIA_ITEM_TRANSITION)) {
+                notifyIfSubscribed(RECENT_ROOT_ID);
+                notifyIfSubscribed(SUGGESTED_ROOT_ID);
+            }
+            if (events.containsAny(
+                    Player.EVENT_TIMELINE_CHANGED,
+                    Player.EVENT_MEDIA_ITEM_TRANSITION,
+                    Player.EVENT_POSITION_DISCONTINUITY,
+                    Player.EVENT_IS_PLAYING_CHANGED)) {
+                savePlaybackPosition();
+            }
+        }
+    };
+    // phase timings of this cold start, also emitted as trace sections
+    private final StartupTracer startupTracer = new StartupTracer();
+    // ends the startup's last phase: the first onPlay() actually producing audio
+    @OptIn(markerClass = UnstableApi.class)
+    private final AnalyticsListener firstAudioListener = new AnalyticsListener() {
+        @Override
+        public void onAudioPositionAdvancing(@NonNull EventTime eventTime, long playoutStartSystemTimeMs) {
+            startupTracer.end(StartupTracer.PHASE_PLAY_TO_AUDIO);
+        }
+    };
+    private boolean destroyed;
+    // audio focus, ducking, and pausing when headphones are unplugged; drives whichever player is current
+    private AudioFocusController audioFocusController;
+    // pre-caches the start of the next queue item whenever the current item changes
+    private final Player.Listener precacheListener = new Player.Listener() {
+        @Override
+        public void onMediaItemTransition(@Nullable MediaItem mediaItem, int reason) {
+            precacheNextItem();
+        }
+
+        @Override
+        public void onTimelineChanged(@NonNull Timeline timeline, int reason) {
+            precacheNextItem();
+        }
+    };
+    private final IBinder playerBinder = new PlayerBinder();
+    // told when the player instance is replaced (ex. a new buffering profile), so a bound PlayerView can switch to it
+    @Nullable
+    private Consumer<Player> playerChangedListener;
+
+    // STARTUP
+    // a cold start is often caused by a client that's waiting on it: a media button press, Android Auto connecting, etc
+    // so onCreate() only does what the first onGetRoot()/onLoadChildren() needs, and everything else is deferred:
+    // - the catalog (MediaStore scan, metadata cache) builds on its own thread
+    // - the disk cache opens on ioExecutor, in parallel with it
+    // - the player is built the first time it's needed, or once the disk cache is open and the main thread is idle,
+    //      whichever comes first
+    // - the notification (channel, artwork loader) is created on the first play
+    // each phase is timed by startupTracer
     @Override
     public void onCreate() {
+        startupTracer.begin(StartupTracer.PHASE_CREATE);
+        startupTracer.begin(StartupTracer.PHASE_FIRST_ROOT);
+        startupTracer.begin(StartupTracer.PHASE_FIRST_CHILDREN);
         super.onCreate();
 
+        metadataCache = new MetadataCache(this);
+        audioAnalyzer.addListener(loudnessLogger);
+
+        // its index is read on first use, which is the catalog build
+        offlineDownloader = new OfflineDownloader(new File(getFilesDir(), "downloads"), this::onDownloadFinished);
+
+        // start building the catalog right away, so it is (usually) ready by the time the first client subscribes
+        libraryScanner = new LibraryScanner(this);
+        mediaCatalog = new MediaCatalog(MEDIA_ROOT_ID, this::loadTracks);
+        startupTracer.begin(StartupTracer.PHASE_CATALOG);
+        mediaCatalog.buildAsync();
+        catalogLoader = new CatalogLoader(mediaCatalog);
+        catalogLoader.setOnResultSentListener(() -> startupTracer.end(StartupTracer.PHASE_FIRST_CHILDREN));
+        // registering is a binder call; do it from the build thread, and only once there's a catalog to rescan
+        mediaCatalog.whenReady(() -> {
+            startupTracer.end(StartupTracer.PHASE_CATALOG);
+            getContentResolver().registerContentObserver(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true, libraryObserver);
+        });
+
+        // a few hundred bytes; read first, since a media button press that started the service needs it for its onPlay()
+        playbackStateStore = new PlaybackStateStore(new File(getFilesDir(), "playback_state"));
+        savedStateFuture = CompletableFuture.supplyAsync(playbackStateStore::restore, ioExecutor);
+
+        mediaCacheManagerFuture = CompletableFuture.supplyAsync(() -> {
+            startupTracer.begin(StartupTracer.PHASE_MEDIA_CACHE);
+            MediaCacheManager manager = new MediaCacheManager(this);
+            startupTracer.end(StartupTracer.PHASE_MEDIA_CACHE);
+            return manager;
+        }, ioExecutor);
+
+        // downloads from earlier processes whose files changed on disk are played from the network until their checksums
+        // are verified; the ones that don't match are removed. either way their albums (and the offline root) are re-published
+        ioExecutor.execute(() -> {
+            OfflineDownloader.Verification verification = offlineDownloader.verifyDownloads();
+            for (String mediaId : verification.verified) {
+                mainHandler.post(() -> downloadChanged(mediaId));
+            }
+            for (String mediaId : verification.removed) {
+                Log.w(LOG_TAG, "the download of " + mediaId + " is corrupted; removed it");
+                mainHandler.post(() -> downloadChanged(mediaId));
+            }
+        });
+
         // create a MediaSession
         mediaSession = new MediaSessionCompat(MediaBrowsingService.this, LOG_TAG);
 
@@ -68,19 +334,704 @@ public class MediaBrowsingService extends MediaBrowserServiceCompat {
 //                        MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS
 //        );
 
-        // set an initial PlaybackState with ACTION_PLAY, so media buttons can start the player
+        // set an initial PlaybackState with ACTION_PLAY, so media buttons can start the player (and ACTION_PLAY_FROM_SEARCH, so voice assistants can)
         playerStateBuilder = new PlaybackStateCompat.Builder()
                 .setActions(
                         PlaybackStateCompat.ACTION_PLAY |
-                                PlaybackStateCompat.ACTION_PLAY_PAUSE
+                                PlaybackStateCompat.ACTION_PLAY_PAUSE |
+                                PlaybackStateCompat.ACTION_PLAY_FROM_SEARCH
                 );
         mediaSession.setPlaybackState(playerStateBuilder.build());
 
+        audioFocusController = new AudioFocusController(this, new AudioFocusController.PlaybackTarget() {
+            @Override
+            public void play() {
+                if (exoPlayer != null) {
+                    exoPlayer.play();
+                }
+            }
+
+            @Override
+            public void pause() {
+                if (exoPlayer != null) {
+                    exoPlayer.pause();
+                }
+            }
+
+            @Override
+            public void setVolume(float volume) {
+                if (exoPlayer != null) {
+                    exoPlayer.setVolume(volume);
+                }
+            }
+        });
+
         // MySessionCallback() has methods that handle callbacks from a media controller
         mediaSession.setCallback(new MyMediaSessionCallbacks());
 
+        // the bridge between the player and the media session is created along with the player
+        playbackStatePublisher = new PlaybackStatePublisher(mediaSession, () -> playerSessionBridge.buildPlaybackState());
+
         // set the session's token so that client activities can communicate with it
         setSessionToken(mediaSession.getSessionToken());
+
+        // publish the (cached) metadata of the current track as soon as the catalog has it, so onPlay() and the notification have something to show
+        mediaCatalog.whenReady(() -> mainHandler.post(this::publishCurrentMetadata));
+
+        // build the player once the main thread has handled whatever caused this start (ex. the first onGetRoot()), so the first play doesn't pay for it
+        // only once the cache is open, though: before that createPlayer() would block the main thread on it, and the first
+        // onGetRoot()/onLoadChildren() (which often arrive right after this idles) would wait behind both
+        mediaCacheManagerFuture.thenRunAsync(() -> Looper.myQueue().addIdleHandler(() -> {
+            if (!destroyed) {
+                requirePlayer();
+            }
+            return false;
+        }), mainHandler::post);
+        startupTracer.end(StartupTracer.PHASE_CREATE);
+    }
+
+    // media button presses (including the notification's buttons) arrive here through MediaButtonReceiver
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        MediaButtonReceiver.handleIntent(mediaSession, intent);
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        if (ACTION_BIND_PLAYER.equals(intent.getAction())) {
+            return playerBinder;
+        }
+        return super.onBind(intent);
+    }
+
+    // handed to same-process clients bound with ACTION_BIND_PLAYER
+    class PlayerBinder extends Binder {
+        Player getPlayer() {
+            requirePlayer();
+            return sessionRoutedPlayer;
+        }
+
+        // loads the current item into the player if it has nothing yet, without starting playback
+        void preparePlayer() {
+            preparePlayerIfNeeded();
+        }
+
+        // ex. after the user granted access to the on-device library
+        void rescanLibrary() {
+            MediaBrowsingService.this.rescanLibrary();
+        }
+
+        MediaSessionCompat.Token getSessionToken() {
+            return mediaSession.getSessionToken();
+        }
+
+        // for visualizers; listeners are called on the analysis thread
+        AudioAnalyzer getAudioAnalyzer() {
+            return audioAnalyzer;
+        }
+
+        // pass null to stop listening (ex. when unbinding)
+        void setOnPlayerChangedListener(@Nullable Consumer<Player> listener) {
+            playerChangedListener = listener;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        destroyed = true;
+        audioFocusController.abandonFocus();
+        getContentResolver().unregisterContentObserver(libraryObserver);
+        mainHandler.removeCallbacks(rescanLibraryRunnable);
+        mainHandler.removeCallbacks(downloadsChangedRunnable);
+        offlineDownloader.release();
+        if (mediaNotificationManager != null) {
+            mediaNotificationManager.stop();
+            artworkLoader.release();
+        }
+        if (exoPlayer != null) {
+            savePlaybackPosition();
+            releasePlayer();
+        }
+        mainHandler.removeCallbacks(savePositionRunnable);
+        playbackStateStore.release();
+        playbackStatePublisher.release();
+        audioAnalyzer.release();
+        // the cache may still be opening; release it whenever it's done
+        mediaCacheManagerFuture.thenAccept(MediaCacheManager::release);
+        ioExecutor.shutdown();
+        streamTagsExecutor.shutdownNow();
+        catalogLoader.release();
+        mediaCatalog.release();
+        metadataCache.close();
+        mediaSession.release();
+        super.onDestroy();
+    }
+
+    // the player, built on first use
+    // anything that touches exoPlayer from outside the player's own listeners goes through here first
+    private ExoPlayer requirePlayer() {
+        if (exoPlayer == null) {
+            String profileName = getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE).getString(PREFERENCE_BUFFERING_PROFILE, null);
+            createPlayer(BufferingProfile.fromName(profileName));
+        }
+        return exoPlayer;
+    }
+
+    private MediaNotificationManager notificationManager() {
+        if (mediaNotificationManager == null) {
+            artworkLoader = new ArtworkLoader(this);
+            mediaNotificationManager = new MediaNotificationManager(this, mediaSession, artworkLoader);
+        }
+        return mediaNotificationManager;
+    }
+
+    // the catalog's source: the hard-coded stream, then the on-device library
+    // runs on the catalog's build thread; after the first call, the library part only costs an incremental scan
+    private List<MediaMetadataCompat> loadTracks() {
+        List<MediaMetadataCompat> streamTracks = loadStreamTracks();
+        List<MediaMetadataCompat> tracks = new ArrayList<>(streamTracks);
+        LibraryScanner.ScanResult scan = libraryScanner.scan();
+        lastLibraryScan = scan;
+        tracks.addAll(libraryScanner.getTracks());
+        markDownloaded(tracks);
+        updateSearchIndex(tracks, scan);
+        // not part of the library scan, and its tags may have arrived since the last build
+        for (MediaMetadataCompat track : streamTracks) {
+            indexTrack(track);
+        }
+        return tracks;
+    }
+
+    // downloaded tracks carry METADATA_KEY_DOWNLOAD_STATUS, which the catalog passes on to browse clients; only ones that
+    // are actually played from the download (so, verified) count
+    private void markDownloaded(List<MediaMetadataCompat> tracks) {
+        for (int i = 0; i < tracks.size(); i++) {
+            MediaMetadataCompat track = tracks.get(i);
+            if (offlineDownloader.getDownloadedFile(track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID)) != null) {
+                tracks.set(i, new MediaMetadataCompat.Builder(track)
+                        .putLong(MediaMetadataCompat.METADATA_KEY_DOWNLOAD_STATUS, MediaDescriptionCompat.STATUS_DOWNLOADED)
+                        .build());
+            }
+        }
+    }
+
+    // mediaId is a track or an album; only tracks that come from the network are downloaded
+    private void download(String mediaId) {
+        mediaCatalog.whenReady(() -> {
+            for (MediaMetadataCompat track : tracksOf(mediaId)) {
+                String uri = track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI);
+                if (uri != null && (uri.startsWith("http://") || uri.startsWith("https://"))) {
+                    // the catalog has no checksums; the downloader checks the server's digest header, if there is one
+                    offlineDownloader.enqueue(track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID), uri, null);
+                }
+            }
+        });
+    }
+
+    private void removeDownload(String mediaId) {
+        mediaCatalog.whenReady(() -> ioExecutor.execute(() -> {
+            for (MediaMetadataCompat track : tracksOf(mediaId)) {
+                String trackId = track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+                try {
+                    offlineDownloader.remove(trackId);
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, "couldn't remove the download of " + trackId, e);
+                }
+                mainHandler.post(() -> downloadChanged(trackId));
+            }
+        }));
+    }
+
+    private List<MediaMetadataCompat> tracksOf(String mediaId) {
+        if (!mediaId.startsWith(MediaCatalog.ALBUM_PREFIX)) {
+            MediaMetadataCompat track = mediaCatalog.getTrack(mediaId);
+            return track == null ? Collections.emptyList() : Collections.singletonList(track);
+        }
+        List<MediaBrowserCompat.MediaItem> children = mediaCatalog.getChildren(mediaId, null);
+        if (children == null) {
+            return Collections.emptyList();
+        }
+        List<MediaMetadataCompat> tracks = new ArrayList<>(children.size());
+        for (MediaBrowserCompat.MediaItem child : children) {
+            MediaMetadataCompat track = mediaCatalog.getTrack(child.getMediaId());
+            if (track != null) {
+                tracks.add(track);
+            }
+        }
+        return tracks;
+    }
+
+    // runs on a download thread
+    private void onDownloadFinished(String mediaId, @Nullable File file, @Nullable IOException error) {
+        if (error != null) {
+            Log.w(LOG_TAG, "downloading " + mediaId + " failed", error);
+            return;
+        }
+        mainHandler.post(() -> downloadChanged(mediaId));
+    }
+
+    private void downloadChanged(String mediaId) {
+        changedDownloads.add(mediaId);
+        mainHandler.removeCallbacks(downloadsChangedRunnable);
+        mainHandler.postDelayed(downloadsChangedRunnable, DOWNLOADS_CHANGED_DELAY_MS);
+    }
+
+    // rebuilds the catalog so the download status is up to date, then tells the albums' (and the offline root's) subscribers
+    private void onDownloadsChanged() {
+        List<String> changed = new ArrayList<>(changedDownloads);
+        changedDownloads.clear();
+        mediaCatalog.rebuildAsync(() -> {
+            Set<String> parents = new HashSet<>();
+            for (String mediaId : changed) {
+                String parentId = mediaCatalog.getParentId(mediaId);
+                if (parentId != null) {
+                    parents.add(parentId);
+                }
+            }
+            parents.add(OFFLINE_ROOT_ID);
+            for (String parentId : parents) {
+                notifyIfSubscribed(parentId);
+            }
+            // the current track's download status may have changed
+            mainHandler.post(this::publishCurrentMetadata);
+        });
+    }
+
+    // the downloaded copy of a track if there is one, so playback doesn't touch the network for it
+    private String playableUri(String mediaId, String uri) {
+        File file = offlineDownloader.getDownloadedFile(mediaId);
+        return file != null ? Uri.fromFile(file).toString() : uri;
+    }
+
+    private List<MediaBrowserCompat.MediaItem> offlineChildren() {
+        List<DownloadIndex.Entry> downloads = offlineDownloader.getIndex().getAll();
+        List<MediaBrowserCompat.MediaItem> items = new ArrayList<>(downloads.size());
+        for (DownloadIndex.Entry download : downloads) {
+            if (offlineDownloader.getDownloadedFile(download.mediaId) == null) {
+                // not verified yet
+                continue;
+            }
+            MediaBrowserCompat.MediaItem item = mediaCatalog.getPlayableItem(download.mediaId);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    // the search index follows the scan's changes instead of being rebuilt from every track each time
+    private void updateSearchIndex(List<MediaMetadataCompat> tracks, LibraryScanner.ScanResult scan) {
+        if (scan.full || searchIndex.size() == 0) {
+            searchIndex.clear();
+            for (MediaMetadataCompat track : tracks) {
+                indexTrack(track);
+            }
+            return;
+        }
+        for (MediaMetadataCompat track : scan.removed) {
+            searchIndex.remove(track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID));
+        }
+        for (MediaMetadataCompat track : scan.addedOrChanged) {
+            indexTrack(track);
+        }
+    }
+
+    private void indexTrack(MediaMetadataCompat track) {
+        searchIndex.put(track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID),
+                track.getString(MediaMetadataCompat.METADATA_KEY_TITLE),
+                track.getString(MediaMetadataCompat.METADATA_KEY_ARTIST),
+                track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM));
+    }
+
+    // the best matches for query, as playable browse items
+    private List<MediaBrowserCompat.MediaItem> search(String query) {
+        List<String> mediaIds = searchIndex.search(query, SEARCH_RESULT_LIMIT);
+        List<MediaBrowserCompat.MediaItem> items = new ArrayList<>(mediaIds.size());
+        for (String mediaId : mediaIds) {
+            MediaBrowserCompat.MediaItem item = mediaCatalog.getPlayableItem(mediaId);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    private void rescanLibrary() {
+        mediaCatalog.rebuildAsync(() -> {
+            onLibraryRescanned();
+            // the current track's tags may have changed
+            mainHandler.post(this::publishCurrentMetadata);
+        });
+    }
+
+    // runs on the catalog's build thread, once the rebuilt tree is in place
+    // only subtrees that actually changed AND that some client is subscribed to are sent out;
+    // every notifyChildrenChanged() makes each subscriber re-load the whole page
+    private void onLibraryRescanned() {
+        LibraryScanner.ScanResult scan = lastLibraryScan;
+        if (scan == null || !scan.hasChanges()) {
+            return;
+        }
+        if (scan.full) {
+            // anything may have changed; but only what's subscribed needs to hear about it
+            for (String parentId : subscriptionTracker.subscribedParents()) {
+                notifyChildrenChanged(parentId);
+            }
+            return;
+        }
+        Set<String> changedParents = new HashSet<>();
+        // albums may have appeared or disappeared
+        changedParents.add(MEDIA_ROOT_ID);
+        addAlbumIds(scan.addedOrChanged, changedParents);
+        addAlbumIds(scan.replaced, changedParents);
+        addAlbumIds(scan.removed, changedParents);
+        for (String parentId : changedParents) {
+            notifyIfSubscribed(parentId);
+        }
+    }
+
+    private void notifyIfSubscribed(String parentId) {
+        if (subscriptionTracker.isSubscribed(parentId)) {
+            notifyChildrenChanged(parentId);
+        }
+    }
+
+    private static void addAlbumIds(List<MediaMetadataCompat> tracks, Set<String> albumIds) {
+        for (MediaMetadataCompat track : tracks) {
+            String album = track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM);
+            albumIds.add(MediaCatalog.ALBUM_PREFIX + (album == null ? "" : album));
+        }
+    }
+
+    private List<MediaMetadataCompat> loadStreamTracks() {
+        String mediaUri = getString(R.string.media_url_mp3);
+        // streams have no modification time, so their cache entries are keyed with mtime 0
+        MediaMetadataCompat track = metadataCache.get(mediaUri, 0L);
+        if (track == null) {
+            // not read yet (or the last read failed); listed by its file name until the tags arrive and the catalog is rebuilt
+            readStreamTagsAsync(mediaUri);
+            track = baseMetadata(mediaUri).build();
+        }
+        return Collections.singletonList(track);
+    }
+
+    private void readStreamTagsAsync(String mediaUri) {
+        if (streamTagsPending.compareAndSet(false, true)) {
+            streamTagsExecutor.execute(() -> readStreamTags(mediaUri));
+        }
+    }
+
+    // runs on streamTagsExecutor; a failed read isn't cached, it's retried with backoff for as long as the service runs
+    private void readStreamTags(String mediaUri) {
+        MediaMetadataCompat track = retrieveMetadata(mediaUri);
+        if (streamTagsExecutor.isShutdown()) {
+            return;
+        }
+        if (track == null) {
+            streamTagsExecutor.schedule(() -> readStreamTags(mediaUri), streamTagsBackoff.nextDelayMs(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        streamTagsBackoff.reset();
+        metadataCache.put(mediaUri, 0L, track);
+        streamTagsPending.set(false);
+        String album = track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM);
+        mediaCatalog.rebuildAsync(() -> {
+            // the stream may have moved from the untitled album into its own
+            notifyIfSubscribed(MEDIA_ROOT_ID);
+            notifyIfSubscribed(MediaCatalog.ALBUM_PREFIX);
+            notifyIfSubscribed(MediaCatalog.ALBUM_PREFIX + (album == null ? "" : album));
+            mainHandler.post(this::publishCurrentMetadata);
+        });
+    }
+
+    // builds exoPlayer with the given buffering profile; every read it makes goes through the disk cache
+    @OptIn(markerClass = UnstableApi.class)
+    private void createPlayer(BufferingProfile bufferingProfile) {
+        startupTracer.begin(StartupTracer.PHASE_PLAYER);
+        if (mediaCacheManager == null) {
+            // usually opened by now; if not, this waits for the rest of it
+            mediaCacheManager = mediaCacheManagerFuture.join();
+        }
+        // (only the first player actually starts its thread)
+        audioAnalyzer.start();
+        exoPlayer = new ExoPlayer.Builder(this, new AnalyzingRenderersFactory(this, audioAnalyzer))
+                .setMediaSourceFactory(new DefaultMediaSourceFactory(mediaCacheManager.getDataSourceFactory()))
+                .setLoadControl(bufferingProfile.buildLoadControl(BufferingProfile.newAllocator()))
+                .build();
+        // ex. rebuilt while ducked
+        exoPlayer.setVolume(audioFocusController.getVolume());
+        exoPlayer.addListener(playbackStateListener);
+        exoPlayer.addListener(precacheListener);
+        exoPlayer.addListener(persistListener);
+        exoPlayer.addAnalyticsListener(playbackMetricsListener);
+        exoPlayer.addAnalyticsListener(firstAudioListener);
+        playerSessionBridge = new PlayerSessionBridge(exoPlayer, mediaSession, playerStateBuilder, mediaCatalog::getTrack, playbackStatePublisher);
+        playerSessionBridge.attach();
+        sessionRoutedPlayer = new ForwardingPlayer(exoPlayer) {
+            @Override
+            public void play() {
+                mediaSession.getController().getTransportControls().play();
+            }
+
+            @Override
+            public void pause() {
+                mediaSession.getController().getTransportControls().pause();
+            }
+
+            @Override
+            public void setPlayWhenReady(boolean playWhenReady) {
+                if (playWhenReady) {
+                    play();
+                } else {
+                    pause();
+                }
+            }
+        };
+        startupTracer.end(StartupTracer.PHASE_PLAYER);
+    }
+
+    private void releasePlayer() {
+        playerSessionBridge.detach();
+        exoPlayer.removeListener(playbackStateListener);
+        exoPlayer.removeListener(precacheListener);
+        exoPlayer.removeListener(persistListener);
+        exoPlayer.removeAnalyticsListener(playbackMetricsListener);
+        exoPlayer.removeAnalyticsListener(firstAudioListener);
+        exoPlayer.release();
+    }
+
+    // a LoadControl can't be swapped on a live player, so switching profiles means a new player that picks up where the old one was
+    // already-fetched bytes come back from the disk cache, so this costs a decoder re-init, not a re-download
+    private void switchBufferingProfile(BufferingProfile bufferingProfile) {
+        getSharedPreferences(PREFERENCES_NAME, MODE_PRIVATE).edit()
+                .putString(PREFERENCE_BUFFERING_PROFILE, bufferingProfile.name())
+                .apply();
+        requirePlayer();
+
+        List<MediaItem> mediaItems = new ArrayList<>(exoPlayer.getMediaItemCount());
+        for (int i = 0; i < exoPlayer.getMediaItemCount(); i++) {
+            mediaItems.add(exoPlayer.getMediaItemAt(i));
+        }
+        int currentIndex = exoPlayer.getCurrentMediaItemIndex();
+        long position = exoPlayer.getCurrentPosition();
+        boolean playWhenReady = exoPlayer.getPlayWhenReady();
+        boolean wasPrepared = exoPlayer.getPlaybackState() != Player.STATE_IDLE;
+
+        releasePlayer();
+        createPlayer(bufferingProfile);
+
+        if (!mediaItems.isEmpty()) {
+            exoPlayer.setMediaItems(mediaItems, currentIndex, position);
+            exoPlayer.setPlayWhenReady(playWhenReady);
+            if (wasPrepared) {
+                exoPlayer.prepare();
+            }
+        }
+        if (playerChangedListener != null) {
+            playerChangedListener.accept(sessionRoutedPlayer);
+        }
+        Log.d(LOG_TAG, "switched to buffering profile " + bufferingProfile);
+    }
+
+    private void precacheNextItem() {
+        int nextIndex = exoPlayer.getNextMediaItemIndex();
+        if (nextIndex == C.INDEX_UNSET) {
+            return;
+        }
+        MediaItem.LocalConfiguration localConfiguration = exoPlayer.getMediaItemAt(nextIndex).localConfiguration;
+        if (localConfiguration != null) {
+            mediaCacheManager.precache(localConfiguration.uri);
+        }
+    }
+
+    // the player is only loaded once; after that, pausing, backgrounding, and re-attaching all reuse the buffered media
+    // the first load resumes the previous process's queue and position, if it saved one
+    private void preparePlayerIfNeeded() {
+        requirePlayer();
+        if (exoPlayer.getMediaItemCount() == 0) {
+            // read during onCreate(), so this (almost) never actually waits
+            PlaybackStateStore.SavedState savedState = savedStateFuture.join();
+            List<MediaMetadataCompat> queue = mediaCatalog.getQueueFor(streamMediaId());
+            if (savedState != null) {
+                restorePlayerQueue(savedState);
+            } else if (queue.isEmpty()) {
+                // catalog isn't built yet; the stream is all there is anyway
+                exoPlayer.setMediaItem(new MediaItem.Builder()
+                        .setMediaId(streamMediaId())
+                        .setUri(playableUri(streamMediaId(), getString(R.string.media_url_mp3)))
+                        .build());
+            } else {
+                setPlayerQueue(queue, 0);
+            }
+        }
+        if (exoPlayer.getPlaybackState() == Player.STATE_IDLE) {
+            exoPlayer.prepare();
+        }
+    }
+
+    // hands the WHOLE queue to the player up front, instead of one item at a time
+    // with a playlist, ExoPlayer starts loading and decoding the next item while the current one is still playing,
+    // and trims encoder delay/padding at the boundary, so consecutive tracks play without a gap
+    private void setPlayerQueue(List<MediaMetadataCompat> queue, int startIndex) {
+        requirePlayer();
+        List<MediaItem> mediaItems = new ArrayList<>(queue.size());
+        for (MediaMetadataCompat track : queue) {
+            String mediaId = track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+            mediaItems.add(new MediaItem.Builder()
+                    .setMediaId(mediaId)
+                    .setUri(playableUri(mediaId, track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI)))
+                    .build());
+        }
+        exoPlayer.setMediaItems(mediaItems, startIndex, 0L);
+    }
+
+    // straight from the saved media IDs and URIs; the catalog doesn't need to be built (or even contain them any more)
+    // each item is tagged with what was saved for it, so saving the queue again doesn't need the catalog either
+    private void restorePlayerQueue(PlaybackStateStore.SavedState savedState) {
+        List<MediaItem> mediaItems = new ArrayList<>(savedState.queue.size());
+        for (PlaybackStateStore.QueueItem item : savedState.queue) {
+            mediaItems.add(new MediaItem.Builder()
+                    .setMediaId(item.mediaId)
+                    .setUri(playableUri(item.mediaId, item.uri))
+                    .setTag(item)
+                    .build());
+        }
+        exoPlayer.setMediaItems(mediaItems, savedState.index, savedState.positionMs);
+        Log.d(LOG_TAG, "resumed a queue of " + mediaItems.size() + " at item " + savedState.index + ", " + savedState.positionMs + " ms");
+    }
+
+    private void savePlaybackQueue() {
+        List<PlaybackStateStore.QueueItem> queue = new ArrayList<>(exoPlayer.getMediaItemCount());
+        for (int i = 0; i < exoPlayer.getMediaItemCount(); i++) {
+            MediaItem mediaItem = exoPlayer.getMediaItemAt(i);
+            if (mediaItem.localConfiguration == null) {
+                continue;
+            }
+            MediaMetadataCompat track = mediaCatalog.getTrack(mediaItem.mediaId);
+            // the original URI, not the downloaded copy the player may be reading; the download may be gone by the next start
+            String uri = track != null ? track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI) : null;
+            if (uri == null && mediaItem.localConfiguration.tag instanceof PlaybackStateStore.QueueItem) {
+                // restored before the catalog was built (or no longer in it); keep what was saved, URI and title
+                queue.add((PlaybackStateStore.QueueItem) mediaItem.localConfiguration.tag);
+                continue;
+            }
+            String title = track != null ? track.getString(MediaMetadataCompat.METADATA_KEY_TITLE) : null;
+            queue.add(new PlaybackStateStore.QueueItem(mediaItem.mediaId, uri != null ? uri : mediaItem.localConfiguration.uri.toString(), title));
+        }
+        if (!queue.isEmpty()) {
+            playbackStateStore.saveQueue(queue);
+        }
+    }
+
+    // also keeps itself scheduled for as long as the player is playing
+    private void savePlaybackPosition() {
+        mainHandler.removeCallbacks(savePositionRunnable);
+        if (exoPlayer == null || exoPlayer.getMediaItemCount() == 0) {
+            return;
+        }
+        playbackStateStore.savePosition(exoPlayer.getCurrentMediaItemIndex(), exoPlayer.getCurrentPosition());
+        if (exoPlayer.isPlaying()) {
+            mainHandler.postDelayed(savePositionRunnable, POSITION_SAVE_INTERVAL_MS);
+        }
+    }
+
+    // the current item and up to maxItems - 1 of the ones queued after it: what's loaded now, or what was saved last time
+    // for the system's resumption card (BrowserRoot.EXTRA_RECENT, one item) and suggestion surfaces (BrowserRoot.EXTRA_SUGGESTED)
+    private void loadResumableChildren(Result<List<MediaBrowserCompat.MediaItem>> result, int maxItems) {
+        if (exoPlayer != null && exoPlayer.getCurrentMediaItem() != null) {
+            List<MediaBrowserCompat.MediaItem> items = new ArrayList<>(maxItems);
+            for (int i = exoPlayer.getCurrentMediaItemIndex(); i < exoPlayer.getMediaItemCount() && items.size() < maxItems; i++) {
+                String mediaId = exoPlayer.getMediaItemAt(i).mediaId;
+                MediaMetadataCompat track = mediaCatalog.getTrack(mediaId);
+                items.add(resumableItem(mediaId, track != null ? track.getString(MediaMetadataCompat.METADATA_KEY_TITLE) : null));
+            }
+            result.sendResult(items);
+            return;
+        }
+        result.detach();
+        savedStateFuture.thenAccept(savedState -> {
+            List<MediaBrowserCompat.MediaItem> items = new ArrayList<>(maxItems);
+            if (savedState != null) {
+                for (int i = savedState.index; i < savedState.queue.size() && items.size() < maxItems; i++) {
+                    PlaybackStateStore.QueueItem item = savedState.queue.get(i);
+                    items.add(resumableItem(item.mediaId, item.title));
+                }
+            }
+            result.sendResult(items);
+        });
+    }
+
+    private MediaBrowserCompat.MediaItem resumableItem(String mediaId, @Nullable String title) {
+        // the catalog's item has the art and artist too, when it's built
+        MediaBrowserCompat.MediaItem item = mediaCatalog.isReady() ? mediaCatalog.getPlayableItem(mediaId) : null;
+        if (item != null) {
+            return item;
+        }
+        return new MediaBrowserCompat.MediaItem(new MediaDescriptionCompat.Builder()
+                .setMediaId(mediaId)
+                .setTitle(title != null ? title : getString(R.string.app_name))
+                .build(), MediaBrowserCompat.MediaItem.FLAG_PLAYABLE);
+    }
+
+    // the catalog's metadata of the item the session shows: the player's current item, or (before anything is loaded)
+    // the item onPlay() would load, which is the saved current item on a resumed cold start, or else the stream
+    // the bridge only publishes on item transitions, so this is called again whenever the catalog is (re)built
+    private void publishCurrentMetadata() {
+        if (destroyed) {
+            return;
+        }
+        if (exoPlayer != null && exoPlayer.getCurrentMediaItem() != null) {
+            playerSessionBridge.publishMetadata();
+            return;
+        }
+        PlaybackStateStore.SavedState savedState = savedStateFuture.getNow(null);
+        String mediaId = savedState != null ? savedState.currentItem().mediaId : streamMediaId();
+        playbackStatePublisher.setMetadata(mediaCatalog.getTrack(mediaId));
+    }
+
+    private String streamMediaId() {
+        return MediaCatalog.TRACK_PREFIX + getString(R.string.media_url_mp3);
+    }
+
+    // reads the track's tags; for a remote stream this goes over the network, which is exactly what MetadataCache saves on later starts
+    // null if they couldn't be read (ex. no network)
+    @Nullable
+    private MediaMetadataCompat retrieveMetadata(String mediaUri) {
+        MediaMetadataCompat.Builder builder = baseMetadata(mediaUri);
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(mediaUri, Collections.emptyMap());
+            String title = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+            if (title != null) {
+                builder.putString(MediaMetadataCompat.METADATA_KEY_TITLE, title);
+            }
+            builder.putString(MediaMetadataCompat.METADATA_KEY_ARTIST, retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST));
+            builder.putString(MediaMetadataCompat.METADATA_KEY_ALBUM, retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM));
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration != null) {
+                builder.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, Long.parseLong(duration));
+            }
+        } catch (RuntimeException e) {
+            // no network or unreadable tags
+            Log.w(LOG_TAG, "couldn't read tags of " + mediaUri, e);
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "couldn't release MediaMetadataRetriever", e);
+            }
+        }
+        return builder.build();
+    }
+
+    // what's known without reading the tags; the file name is a good enough title
+    private static MediaMetadataCompat.Builder baseMetadata(String mediaUri) {
+        return new MediaMetadataCompat.Builder()
+                .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, MediaCatalog.TRACK_PREFIX + mediaUri)
+                .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI, mediaUri)
+                .putString(MediaMetadataCompat.METADATA_KEY_TITLE, Uri.parse(mediaUri).getLastPathSegment());
     }
 
     // controls access to the MediaBrowserService
@@ -89,6 +1040,9 @@ public class MediaBrowsingService extends MediaBrowserServiceCompat {
     @Nullable
     @Override
     public BrowserRoot onGetRoot(@NonNull String clientPackageName, int clientUid, @Nullable Bundle rootHints) {
+        startupTracer.end(StartupTracer.PHASE_FIRST_ROOT);
+        // a new connection; the client's old subscriptions (if it had any) went away with its old one
+        forgetSubscriptionsOfCurrentBrowser();
         // (optional) control access level for certain clients
         // allowBrowsing() would theoretically either operate on blacklist or whitelist. ex found in here: https://developer.android.com/guide/topics/media-apps/audio-app/building-a-mediabrowserservice#controlling_client_connections_with_ongetroot
 //        if (allowBrowsing(clientPackageName, clientUid)) {
@@ -101,135 +1055,264 @@ public class MediaBrowsingService extends MediaBrowserServiceCompat {
 
         // (optional) alternatively, one can use logic to return a different content hierarchy depending on the connecting client's type
         // https://developer.android.com/guide/topics/media-apps/audio-app/building-a-mediabrowserservice#controlling_client_connections_with_ongetroot
-        return new BrowserRoot(MEDIA_ROOT_ID, null);
+        // the system's media resumption (and other "recent" clients) only want the last played item; it's answered from the saved state
+        if (rootHints != null && rootHints.getBoolean(BrowserRoot.EXTRA_RECENT)) {
+            Bundle recentExtras = new Bundle();
+            recentExtras.putBoolean(BrowserRoot.EXTRA_RECENT, true);
+            return new BrowserRoot(RECENT_ROOT_ID, recentExtras);
+        }
+        if (rootHints != null && rootHints.getBoolean(BrowserRoot.EXTRA_OFFLINE)) {
+            Bundle offlineExtras = new Bundle();
+            offlineExtras.putBoolean(BrowserRoot.EXTRA_OFFLINE, true);
+            return new BrowserRoot(OFFLINE_ROOT_ID, offlineExtras);
+        }
+        if (rootHints != null && rootHints.getBoolean(BrowserRoot.EXTRA_SUGGESTED)) {
+            Bundle suggestedExtras = new Bundle();
+            suggestedExtras.putBoolean(BrowserRoot.EXTRA_SUGGESTED, true);
+            return new BrowserRoot(SUGGESTED_ROOT_ID, suggestedExtras);
+        }
+        // anything else the client's hints ask for (ex. Android Auto's BROWSER_ROOT_HINTS_KEY_ROOT_CHILDREN_LIMIT) is read back
+        // with getBrowserRootHints() in onLoadChildren(), per client
+        // tells clients (ex. Android Auto) that they can offer a search box
+        Bundle rootExtras = new Bundle();
+        rootExtras.putBoolean(MediaConstants.BROWSER_SERVICE_EXTRAS_KEY_SEARCH_SUPPORTED, true);
+        return new BrowserRoot(MEDIA_ROOT_ID, rootExtras);
+    }
+
+    // called by MediaBrowserCompat.search(); a query is a few array scans in SearchIndex, so it's answered right on the main thread (where MediaBrowserServiceCompat calls this)
+    // (only a search that arrives before the catalog is built waits for it)
+    @Override
+    public void onSearch(@NonNull String query, @Nullable Bundle extras, @NonNull Result<List<MediaBrowserCompat.MediaItem>> result) {
+        if (mediaCatalog.isReady()) {
+            result.sendResult(search(query));
+            return;
+        }
+        result.detach();
+        mediaCatalog.whenReady(() -> result.sendResult(search(query)));
     }
 
     // the client (program with a MediaBrowser) uses this to display a menu of the MediaBrowserService's content hierarchy/library
     // is called by the MediaBrowserCompat.subscribe() method, which sends back a List<MediaBrowserCompat.MediaItem>
+    // only called for subscriptions without options, so the whole list of children is sent back
     @Override
     public void onLoadChildren(@NonNull String parentId, @NonNull Result<List<MediaBrowserCompat.MediaItem>> result) {
+        onLoadChildren(parentId, result, null);
+    }
+
+    // called by MediaBrowserCompat.subscribe(parentId, options, callback); overriding this overload means paging is handled here
+    // instead of the framework slicing a full list after the fact
+    // options may contain MediaBrowserCompat.EXTRA_PAGE and MediaBrowserCompat.EXTRA_PAGE_SIZE
+    @Override
+    public void onLoadChildren(@NonNull String parentId, @NonNull Result<List<MediaBrowserCompat.MediaItem>> result, @Nullable Bundle options) {
         //implementation example in the Universal Android Music Player app: https://github.com/android/uamp
 
         // browsing not allowed
-//        if (TextUtils.equals(EMPTY_ROOT_ID, parentId)) {
-//            result.sendResult(null);
-//            return;
-//        }
+        if (EMPTY_ROOT_ID.equals(parentId)) {
+            result.sendResult(null);
+            return;
+        }
+        if (RECENT_ROOT_ID.equals(parentId)) {
+            loadResumableChildren(result, 1);
+            return;
+        }
+        if (OFFLINE_ROOT_ID.equals(parentId)) {
+            result.detach();
+            mediaCatalog.whenReady(() -> result.sendResult(offlineChildren()));
+            return;
+        }
+        if (SUGGESTED_ROOT_ID.equals(parentId)) {
+            loadResumableChildren(result, Math.min(SUGGESTED_CHILDREN_LIMIT, rootChildrenLimit(SUGGESTED_CHILDREN_LIMIT)));
+            return;
+        }
 
-        // assume media catalog is loaded/cached
+        // a client that can only show so many root items (ex. Android Auto's tabs) gets the first page of that size, not the whole list
+        if (MEDIA_ROOT_ID.equals(parentId) && !isPaged(options)) {
+            int limit = rootChildrenLimit(0);
+            if (limit > 0) {
+                options = new Bundle();
+                options.putInt(MediaBrowserCompat.EXTRA_PAGE, 0);
+                options.putInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, limit);
+            }
+        }
 
-        List<MediaBrowserCompat.MediaItem> mediaItemList = new ArrayList<>();
+        // detach the result so the main thread (which every connected client's requests go through) isn't blocked by a slow load
+        // CatalogLoader sends it from its worker pool; a null list tells the client that parentId doesn't exist
+        result.detach();
+        catalogLoader.load(parentId, options, result);
+    }
 
-        // check if this is the root ID
-        if (MEDIA_ROOT_ID.equals(parentId)) {
-            // build the MediaItem objects for the top level, and put them in mediaItemList
-        } else {
-            // examine the passed parentId to see which submenu we're at, and put the children of that menu in mediaItemList
-        }
-        result.sendResult(mediaItemList);
+    // the current client's BROWSER_ROOT_HINTS_KEY_ROOT_CHILDREN_LIMIT, from the hints it passed to onGetRoot()
+    private int rootChildrenLimit(int defaultLimit) {
+        Bundle rootHints = getBrowserRootHints();
+        int limit = rootHints != null ? rootHints.getInt(MediaConstants.BROWSER_ROOT_HINTS_KEY_ROOT_CHILDREN_LIMIT, 0) : 0;
+        return limit > 0 ? limit : defaultLimit;
     }
 
-    private AudioFocusRequest audioFocusRequest;
-    private BecomingNoisyReceiver becomingNoisyReceiver = new BecomingNoisyReceiver();
-    private class BecomingNoisyReceiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (AudioManager.ACTION_AUDIO_BECOMING_NOISY.equals(intent.getAction())) {
-                // pause playback
-            }
-        }
+    private static boolean isPaged(@Nullable Bundle options) {
+        return options != null
+                && options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1) >= 0
+                && options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1) > 0;
     }
-    private final String CHANNEL_ID = "39ccd723-8a52-474e-acf1-304f500415fb";
-    int id = 1234567890;
 
+    // MediaBrowserServiceCompat calls these for every (un)subscribe, with the client as the current browser
+    // (restricted, but it's the only hook that sees unsubscribes)
+    @SuppressLint("RestrictedApi")
+    @Override
+    public void onSubscribe(String id, Bundle option) {
+        subscriptionTracker.subscribed(id, getCurrentBrowserInfo());
+    }
+
+    @SuppressLint("RestrictedApi")
+    @Override
+    public void onUnsubscribe(String id) {
+        subscriptionTracker.unsubscribed(id, getCurrentBrowserInfo());
+    }
+
+    @SuppressLint("RestrictedApi")
+    private void forgetSubscriptionsOfCurrentBrowser() {
+        subscriptionTracker.connected(getCurrentBrowserInfo());
+    }
 
     // MEDIA SESSION CALLBACKS
     private class MyMediaSessionCallbacks extends MediaSessionCompat.Callback {
 
-        @SuppressLint("ServiceCast")
         @Override
         public void onPlay() {
             super.onPlay();
-            // assign attributes to the audio focus request
-            // in this case, AudioPlayer claims that it is playing music when requesting audio focus
-            AudioAttributes attributes = new AudioAttributes.Builder()
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .build();
-            // AudioPlayer requests AUDIOFOCUS_GAIN with the above attributes
-            // other settings can dictate how AudioPlayer will behave regarding audio focus (check https://developer.android.com/reference/android/media/AudioFocusRequest.Builder)
-            audioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
-                    .setAudioAttributes(attributes)
-                    .build();
-            //                                                                                        // if MediaBrowsingService.this doesn't work, try getApplicationContext()
-            //                                                                                        // if not, search for "getting context in a service" (?)
-            @SuppressLint("ServiceCast") AudioManager audioManager = (AudioManager) MediaBrowsingService.this.getSystemService(Context.AUDIO_SERVICE);
-            int result = audioManager.requestAudioFocus(audioFocusRequest);
-
-            if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            startupTracer.begin(StartupTracer.PHASE_PLAY_TO_AUDIO);
+            // also registers the becoming-noisy receiver (headphones unplugged -> pause) for this play session
+            if (audioFocusController.requestFocus()) {
                 // start the media browser service
                 startService(new Intent(MediaBrowsingService.this, MediaBrowsingService.class));
                 // activate the media session
                 mediaSession.setActive(true);
-                // start the player here
-                // TODO: IMPLEMENT A PLAYER
-
-                // register the BECOME_NOISY BroadcastReceiver, becomingNoisyReceiver, which pauses playback when user disconnects headphones, when applicable
-                registerReceiver(becomingNoisyReceiver, new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY));
-                MediaControllerCompat mediaControllerCompat = mediaSession.getController();
-                MediaMetadataCompat mediaMetadataCompat = mediaControllerCompat.getMetadata();
-                MediaDescriptionCompat mediaDescriptionCompat = mediaMetadataCompat.getDescription();
+                // start the player
+                preparePlayerIfNeeded();
+                exoPlayer.play();
 
-                NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(MediaBrowsingService.this, CHANNEL_ID);
+                // display notification and place service in foreground; MediaNotificationManager keeps it up to date from here on
+                notificationManager().start();
+            }
+        }
 
-                notificationBuilder
-                        // add currently playing track's metadata
-                        .setContentTitle(mediaDescriptionCompat.getTitle())
-                        .setContentText(mediaDescriptionCompat.getSubtitle())
-                        .setSubText(mediaDescriptionCompat.getDescription())
-                        .setLargeIcon(mediaDescriptionCompat.getIconBitmap())
+        @Override
+        public void onPause() {
+            super.onPause();
+            if (exoPlayer != null) {
+                exoPlayer.pause();
+            }
+            // keeps focus, so pressing play again doesn't have to ask for it
+            audioFocusController.onPaused();
+            // stay in the foreground (and keep the notification) while paused, so playback can resume from it
+        }
 
-                        // enable launching player by clicking notification
-                        .setContentIntent(mediaControllerCompat.getSessionActivity())
+        @Override
+        public void onStop() {
+            super.onStop();
+            if (exoPlayer != null) {
+                exoPlayer.stop();
+            }
+            audioFocusController.abandonFocus();
+            mediaSession.setActive(false);
+            // leave the foreground and stop the started service; it's destroyed once no client is bound either
+            if (mediaNotificationManager != null) {
+                mediaNotificationManager.stop();
+            }
+            stopSelf();
+        }
 
-                        // stop service when notification is swiped away
-                        .setDeleteIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(MediaBrowsingService.this, PlaybackStateCompat.ACTION_STOP))
+        @Override
+        public void onSeekTo(long pos) {
+            super.onSeekTo(pos);
+            requirePlayer().seekTo(pos);
+        }
 
-                        // make transport controls visible on lock screen
-                        .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+        // plays mediaId with the rest of its album queued up behind it
+        @Override
+        public void onPlayFromMediaId(String mediaId, Bundle extras) {
+            super.onPlayFromMediaId(mediaId, extras);
+            if (!mediaCatalog.isReady()) {
+                // a cold start by a client that knows what it wants (Android Auto, the Assistant, a resumed client);
+                // mediaId can't be looked up until the catalog is built
+                mediaCatalog.whenReady(() -> mainHandler.post(() -> playFromMediaId(mediaId)));
+                return;
+            }
+            playFromMediaId(mediaId);
+        }
 
-                        // add app icon and set accent color
-                        .setSmallIcon(R.drawable.ic_notification_icon_temp)
-                        .setColor(Color.argb(255, 0, 50, 100))
+        private void playFromMediaId(String mediaId) {
+            List<MediaMetadataCompat> queue = mediaCatalog.getQueueFor(mediaId);
+            for (int i = 0; i < queue.size(); i++) {
+                if (mediaId.equals(queue.get(i).getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID))) {
+                    setPlayerQueue(queue, i);
+                    exoPlayer.prepare();
+                    onPlay();
+                    return;
+                }
+            }
+            Log.w(LOG_TAG, "can't play unknown media ID " + mediaId);
+        }
 
-                        // add pause button
-                        .addAction(new NotificationCompat.Action(
-                                R.drawable.ic_pause, getString(R.string.pause),
-                                MediaButtonReceiver.buildMediaButtonPendingIntent(MediaBrowsingService.this, PlaybackStateCompat.ACTION_PLAY_PAUSE)
-                        ))
+        // voice searches ("play <song> by <artist>") arrive here; the best match is played with its album queued up
+        // an empty query means "play something", so whatever was playing resumes
+        @Override
+        public void onPlayFromSearch(String query, Bundle extras) {
+            super.onPlayFromSearch(query, extras);
+            if (query == null || query.trim().isEmpty()) {
+                onPlay();
+                return;
+            }
+            mediaCatalog.whenReady(() -> mainHandler.post(() -> {
+                List<String> mediaIds = searchIndex.search(query, 1);
+                if (mediaIds.isEmpty()) {
+                    Log.w(LOG_TAG, "nothing found for " + query);
+                    return;
+                }
+                onPlayFromMediaId(mediaIds.get(0), extras);
+            }));
+        }
 
-                        // use MediaStyle features
-                        .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
-                                .setMediaSession(mediaSession.getSessionToken())
-                                .setShowActionsInCompactView(0)
+        @Override
+        public void onCommand(String command, Bundle extras, ResultReceiver cb) {
+            super.onCommand(command, extras, cb);
+            if (COMMAND_DUMP_PLAYBACK_METRICS.equals(command) && cb != null) {
+                cb.send(0, PlaybackMetricsListener.toBundle(playbackMetrics.snapshot(SystemClock.elapsedRealtime())));
+            } else if (COMMAND_DUMP_STARTUP_TIMINGS.equals(command) && cb != null) {
+                cb.send(0, startupTracer.toBundle());
+            }
+        }
 
-                                //add cancel button
-                                .setShowCancelButton(true)
-                                .setCancelButtonIntent(MediaButtonReceiver.buildMediaButtonPendingIntent(MediaBrowsingService.this, PlaybackStateCompat.ACTION_STOP))
-                        );
+        @Override
+        public void onCustomAction(String action, Bundle extras) {
+            super.onCustomAction(action, extras);
+            if (CUSTOM_ACTION_SET_BUFFERING_PROFILE.equals(action) && extras != null) {
+                switchBufferingProfile(BufferingProfile.fromName(extras.getString(EXTRA_BUFFERING_PROFILE)));
+            } else if (CUSTOM_ACTION_DOWNLOAD.equals(action) && extras != null && extras.getString(EXTRA_MEDIA_ID) != null) {
+                download(extras.getString(EXTRA_MEDIA_ID));
+            } else if (CUSTOM_ACTION_REMOVE_DOWNLOAD.equals(action) && extras != null && extras.getString(EXTRA_MEDIA_ID) != null) {
+                removeDownload(extras.getString(EXTRA_MEDIA_ID));
+            }
+        }
 
-                // display notification and place service in foreground
-                MediaBrowsingService.this.startForeground(id, notificationBuilder.build());
+        // queue item IDs are indices into the player's playlist (see PlayerSessionBridge)
+        @Override
+        public void onSkipToQueueItem(long id) {
+            super.onSkipToQueueItem(id);
+            if (id >= 0 && id < requirePlayer().getMediaItemCount()) {
+                exoPlayer.seekToDefaultPosition((int) id);
             }
         }
 
         @Override
-        public void onPause() {
-            super.onPause();
+        public void onSkipToNext() {
+            super.onSkipToNext();
+            requirePlayer().seekToNextMediaItem();
         }
 
         @Override
-        public void onStop() {
-            super.onStop();
+        public void onSkipToPrevious() {
+            super.onSkipToPrevious();
+            requirePlayer().seekToPrevious();
         }
     }
 }
@@ -0,0 +1,126 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.OptIn;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.database.StandaloneDatabaseProvider;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.CacheWriter;
+import androidx.media3.datasource.cache.LeastRecentlyUsedCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// on-disk cache that sits under the player's data source
+// - every byte range the player fetches is written to disk, so seeking back, rotating, or re-attaching never re-downloads it
+// - upcoming queue items can be pre-cached explicitly, so their first seconds are on disk before the player gets to them
+// - the whole cache is bounded by size, evicting least-recently-used spans first
+//
+// only one SimpleCache may use a directory at a time, so there must be only one instance of this per process
+@OptIn(markerClass = UnstableApi.class)
+class MediaCacheManager {
+
+    private static final String LOG_TAG = "MyMediaCacheManager";
+
+    static final long DEFAULT_MAX_CACHE_BYTES = 256L * 1024 * 1024;
+    // enough of a track's start for playback to begin without touching the network
+    static final long PRECACHE_BYTES = 2L * 1024 * 1024;
+
+    private final SimpleCache cache;
+    private final StandaloneDatabaseProvider databaseProvider;
+    private final CacheDataSource.Factory cacheDataSourceFactory;
+    private final DataSource.Factory playerDataSourceFactory;
+    private final ExecutorService precacheExecutor = Executors.newSingleThreadExecutor();
+
+    // uri -> pre-cache in progress, so it can be cancelled; guarded by itself
+    private final Map<String, CacheWriter> precaching = new HashMap<>();
+
+    MediaCacheManager(@NonNull Context context) {
+        this(context, new File(context.getCacheDir(), "media"), DEFAULT_MAX_CACHE_BYTES,
+                new DefaultHttpDataSource.Factory().setAllowCrossProtocolRedirects(true));
+    }
+
+    MediaCacheManager(@NonNull Context context, @NonNull File cacheDir, long maxCacheBytes, @NonNull DataSource.Factory httpDataSourceFactory) {
+        databaseProvider = new StandaloneDatabaseProvider(context.getApplicationContext());
+        cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(maxCacheBytes), databaseProvider);
+        cacheDataSourceFactory = new CacheDataSource.Factory()
+                .setCache(cache)
+                .setUpstreamDataSourceFactory(httpDataSourceFactory)
+                // a corrupt cache shouldn't stop playback; fall back to the network
+                .setFlags(CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+        // file:// and content:// (downloaded and on-device tracks) are read directly; only network reads go through
+        // (and land in) the cache, so local files aren't copied into it
+        playerDataSourceFactory = new DefaultDataSource.Factory(context.getApplicationContext(), cacheDataSourceFactory);
+    }
+
+    // use this as the player's data source (through DefaultMediaSourceFactory)
+    @NonNull
+    DataSource.Factory getDataSourceFactory() {
+        return playerDataSourceFactory;
+    }
+
+    // downloads the first PRECACHE_BYTES of uri into the cache in the background, unless they're already there
+    void precache(@NonNull Uri uri) {
+        String key = uri.toString();
+        if ("file".equals(uri.getScheme()) || "content".equals(uri.getScheme())) {
+            return;
+        }
+        DataSpec dataSpec = new DataSpec.Builder().setUri(uri).setLength(PRECACHE_BYTES).build();
+        CacheWriter cacheWriter = new CacheWriter(cacheDataSourceFactory.createDataSourceForDownloading(), dataSpec, null, null);
+        synchronized (precaching) {
+            if (precaching.containsKey(key)) {
+                return;
+            }
+            precaching.put(key, cacheWriter);
+        }
+        precacheExecutor.execute(() -> {
+            try {
+                // CacheWriter skips ranges that are already cached, so this is cheap when there's nothing to do
+                cacheWriter.cache();
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "pre-caching " + uri + " failed", e);
+            } finally {
+                synchronized (precaching) {
+                    precaching.remove(key);
+                }
+            }
+        });
+    }
+
+    void cancelPrecaching() {
+        synchronized (precaching) {
+            for (CacheWriter cacheWriter : precaching.values()) {
+                cacheWriter.cancel();
+            }
+            precaching.clear();
+        }
+    }
+
+    long getCachedBytes(@NonNull Uri uri, long position, long length) {
+        return cache.getCachedBytes(uri.toString(), position, length);
+    }
+
+    long getCacheSpace() {
+        return cache.getCacheSpace();
+    }
+
+    void release() {
+        cancelPrecaching();
+        precacheExecutor.shutdownNow();
+        cache.release();
+        databaseProvider.close();
+    }
+}
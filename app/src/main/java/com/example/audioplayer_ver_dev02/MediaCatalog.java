@@ -0,0 +1,265 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// in-memory index of the content hierarchy that MediaBrowsingService hands out through onLoadChildren()
+// the tree is built on a background thread, then every request is a map lookup + a subList() view of an immutable list
+// this keeps onLoadChildren() cheap even for libraries with tens of thousands of tracks
+// when the source changes (ex. the on-device library), rebuildAsync() builds a new tree beside the old one and swaps it in
+//
+// current hierarchy:
+//      root
+//       └── album nodes (browsable)
+//            └── tracks (playable)
+class MediaCatalog {
+
+    private static final String LOG_TAG = "MyMediaCatalog";
+
+    // prefixes keep node IDs unique across levels of the tree, so an album and a track can share a name
+    static final String ALBUM_PREFIX = "album:";
+    static final String TRACK_PREFIX = "track:";
+
+    // where the catalog gets its tracks from (a hard-coded stream, MediaStore, a server, etc)
+    // called off the main thread, always on the same (build) thread: once per build
+    interface Source {
+        @NonNull
+        List<MediaMetadataCompat> loadTracks();
+    }
+
+    private final String rootId;
+    private final Source source;
+    private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor();
+
+    // one complete build of the tree; never modified once published
+    private static final class Snapshot {
+        // parentId -> immutable list of children
+        final Map<String, List<MediaBrowserCompat.MediaItem>> children;
+        // mediaId -> full metadata of a playable track
+        final Map<String, MediaMetadataCompat> tracks;
+        // track mediaId -> its parent's ID
+        final Map<String, String> parents;
+
+        Snapshot(Map<String, List<MediaBrowserCompat.MediaItem>> children, Map<String, MediaMetadataCompat> tracks,
+                 Map<String, String> parents) {
+            this.children = children;
+            this.tracks = tracks;
+            this.parents = parents;
+        }
+    }
+
+    // published in one volatile write once a build finishes; readers read it once, so they never mix two builds
+    private volatile Snapshot snapshot;
+
+    // work that arrived before the index was ready; guarded by "this"
+    private final List<Runnable> pendingUntilReady = new ArrayList<>();
+
+    MediaCatalog(@NonNull String rootId, @NonNull Source source) {
+        this.rootId = rootId;
+        this.source = source;
+    }
+
+    // starts the one-time build; safe to call more than once
+    void buildAsync() {
+        buildExecutor.execute(() -> {
+            if (snapshot == null) {
+                build();
+            }
+        });
+    }
+
+    // reloads the source and replaces the tree; readers keep getting the old tree until the new one is complete
+    // onRebuilt runs on the build thread afterwards
+    void rebuildAsync(@Nullable Runnable onRebuilt) {
+        buildExecutor.execute(() -> {
+            build();
+            if (onRebuilt != null) {
+                onRebuilt.run();
+            }
+        });
+    }
+
+    boolean isReady() {
+        return snapshot != null;
+    }
+
+    // runs immediately if the index is built, otherwise on the build thread as soon as it is
+    void whenReady(@NonNull Runnable runnable) {
+        synchronized (this) {
+            if (snapshot == null) {
+                pendingUntilReady.add(runnable);
+                return;
+            }
+        }
+        runnable.run();
+    }
+
+    // returns one page of parentId's children, or null when parentId is not part of the tree
+    // options may carry MediaBrowserCompat.EXTRA_PAGE and EXTRA_PAGE_SIZE; without them the whole list is returned
+    @Nullable
+    List<MediaBrowserCompat.MediaItem> getChildren(@NonNull String parentId, @Nullable Bundle options) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        List<MediaBrowserCompat.MediaItem> children = current.children.get(parentId);
+        if (children == null) {
+            return null;
+        }
+        if (options == null) {
+            return children;
+        }
+
+        int page = options.getInt(MediaBrowserCompat.EXTRA_PAGE, -1);
+        int pageSize = options.getInt(MediaBrowserCompat.EXTRA_PAGE_SIZE, -1);
+        if (page < 0 || pageSize < 1) {
+            return children;
+        }
+        // long math so that a huge page * pageSize can't overflow into a valid-looking index
+        long fromIndex = (long) page * pageSize;
+        if (fromIndex >= children.size()) {
+            return Collections.emptyList();
+        }
+        int toIndex = (int) Math.min(fromIndex + pageSize, children.size());
+        // subList() is a view, nothing is copied here
+        return children.subList((int) fromIndex, toIndex);
+    }
+
+    @Nullable
+    MediaMetadataCompat getTrack(@NonNull String mediaId) {
+        Snapshot current = snapshot;
+        return current == null ? null : current.tracks.get(mediaId);
+    }
+
+    // the browse item of a playable track, as onLoadChildren() would return it; null if mediaId isn't a known track
+    @Nullable
+    MediaBrowserCompat.MediaItem getPlayableItem(@NonNull String mediaId) {
+        MediaMetadataCompat track = getTrack(mediaId);
+        return track == null ? null : new MediaBrowserCompat.MediaItem(browseDescription(track), MediaBrowserCompat.MediaItem.FLAG_PLAYABLE);
+    }
+
+    // the album (or other browsable node) a playable track is listed under; null if mediaId isn't a known track
+    @Nullable
+    String getParentId(@NonNull String mediaId) {
+        Snapshot current = snapshot;
+        return current == null ? null : current.parents.get(mediaId);
+    }
+
+    // the playable siblings of mediaId (including itself), in browse order; this becomes the play queue
+    // empty if mediaId isn't a known track
+    @NonNull
+    List<MediaMetadataCompat> getQueueFor(@NonNull String mediaId) {
+        // one snapshot for the whole lookup; a rebuild swapping in a new one halfway through can't mix the two
+        Snapshot current = snapshot;
+        String parentId = current == null ? null : current.parents.get(mediaId);
+        List<MediaBrowserCompat.MediaItem> siblings = parentId == null ? null : current.children.get(parentId);
+        if (siblings == null) {
+            return Collections.emptyList();
+        }
+        List<MediaMetadataCompat> queue = new ArrayList<>(siblings.size());
+        for (MediaBrowserCompat.MediaItem sibling : siblings) {
+            MediaMetadataCompat track = current.tracks.get(sibling.getMediaId());
+            if (track != null) {
+                queue.add(track);
+            }
+        }
+        return queue;
+    }
+
+    void release() {
+        buildExecutor.shutdownNow();
+    }
+
+    private void build() {
+        long startMs = System.currentTimeMillis();
+        buildIndex(source.loadTracks());
+        Log.d(LOG_TAG, "catalog built in " + (System.currentTimeMillis() - startMs) + " ms");
+
+        List<Runnable> waiting;
+        synchronized (this) {
+            waiting = new ArrayList<>(pendingUntilReady);
+            pendingUntilReady.clear();
+        }
+        for (Runnable runnable : waiting) {
+            runnable.run();
+        }
+    }
+
+    private void buildIndex(List<MediaMetadataCompat> tracks) {
+        // albums keep the order they were first seen in
+        Map<String, List<MediaBrowserCompat.MediaItem>> albums = new LinkedHashMap<>();
+        Map<String, MediaMetadataCompat> tracksById = new HashMap<>(tracks.size() * 2);
+        Map<String, String> parentsById = new HashMap<>(tracks.size() * 2);
+
+        for (MediaMetadataCompat track : tracks) {
+            String mediaId = track.getString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID);
+            if (TextUtils.isEmpty(mediaId)) {
+                continue;
+            }
+            String album = track.getString(MediaMetadataCompat.METADATA_KEY_ALBUM);
+            String albumId = ALBUM_PREFIX + (album == null ? "" : album);
+
+            List<MediaBrowserCompat.MediaItem> albumTracks = albums.get(albumId);
+            if (albumTracks == null) {
+                albumTracks = new ArrayList<>();
+                albums.put(albumId, albumTracks);
+            }
+            albumTracks.add(new MediaBrowserCompat.MediaItem(browseDescription(track), MediaBrowserCompat.MediaItem.FLAG_PLAYABLE));
+            tracksById.put(mediaId, track);
+            parentsById.put(mediaId, albumId);
+        }
+
+        Map<String, List<MediaBrowserCompat.MediaItem>> index = new HashMap<>(albums.size() * 2 + 2);
+        List<MediaBrowserCompat.MediaItem> rootChildren = new ArrayList<>(albums.size());
+        for (Map.Entry<String, List<MediaBrowserCompat.MediaItem>> album : albums.entrySet()) {
+            MediaDescriptionCompat albumDescription = new MediaDescriptionCompat.Builder()
+                    .setMediaId(album.getKey())
+                    .setTitle(album.getKey().substring(ALBUM_PREFIX.length()))
+                    .build();
+            rootChildren.add(new MediaBrowserCompat.MediaItem(albumDescription, MediaBrowserCompat.MediaItem.FLAG_BROWSABLE));
+            index.put(album.getKey(), Collections.unmodifiableList(album.getValue()));
+        }
+        index.put(rootId, Collections.unmodifiableList(rootChildren));
+
+        synchronized (this) {
+            snapshot = new Snapshot(index, tracksById, parentsById);
+        }
+    }
+
+    // browse items reference their art by URI only; an embedded bitmap would be copied to every client over binder
+    // (and risk a TransactionTooLargeException on big pages)
+    // the only extra carried over is the download status, so clients (ex. Android Auto) can badge downloaded tracks
+    private static MediaDescriptionCompat browseDescription(MediaMetadataCompat track) {
+        MediaDescriptionCompat description = track.getDescription();
+        MediaDescriptionCompat.Builder builder = new MediaDescriptionCompat.Builder()
+                .setMediaId(description.getMediaId())
+                .setTitle(description.getTitle())
+                .setSubtitle(description.getSubtitle())
+                .setDescription(description.getDescription())
+                .setIconUri(description.getIconUri())
+                .setMediaUri(description.getMediaUri());
+        long downloadStatus = track.getLong(MediaMetadataCompat.METADATA_KEY_DOWNLOAD_STATUS);
+        if (downloadStatus != MediaDescriptionCompat.STATUS_NOT_DOWNLOADED) {
+            Bundle extras = new Bundle(1);
+            extras.putLong(MediaDescriptionCompat.EXTRA_DOWNLOAD_STATUS, downloadStatus);
+            builder.setExtras(extras);
+        }
+        return builder.build();
+    }
+}
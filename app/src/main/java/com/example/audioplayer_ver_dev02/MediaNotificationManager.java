@@ -0,0 +1,220 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.media.session.MediaButtonReceiver;
+
+import java.util.Objects;
+
+// owns the service's media notification, and keeps it in sync with the media session
+// instead of building a new NotificationCompat.Builder (with new PendingIntents, a new MediaStyle, etc) on every transport event:
+// - one builder, its PendingIntents, and both play/pause actions are created once
+// - an update only touches the fields that changed (title/text, the play/pause action, the art)
+// - nothing is posted when nothing visible changed
+// - album art is decoded in the background by ArtworkLoader, and posted once it's ready
+//
+// must be used on the main thread
+class MediaNotificationManager {
+
+    private static final String CHANNEL_ID = "39ccd723-8a52-474e-acf1-304f500415fb";
+    static final int NOTIFICATION_ID = 1234567890;
+
+    private final Service service;
+    private final MediaSessionCompat mediaSession;
+    private final ArtworkLoader artworkLoader;
+    private final NotificationManagerCompat notificationManager;
+    private final int largeIconSizePx;
+
+    private final NotificationCompat.Builder notificationBuilder;
+    private final NotificationCompat.Action playAction;
+    private final NotificationCompat.Action pauseAction;
+
+    // what's currently shown; compared against on every update
+    @Nullable
+    private CharSequence shownTitle;
+    @Nullable
+    private CharSequence shownSubtitle;
+    @Nullable
+    private CharSequence shownDescription;
+    @Nullable
+    private Uri shownArtUri;
+    private boolean shownPlaying;
+    private boolean hasPosted;
+
+    private boolean started;
+    private boolean foreground;
+
+    private final MediaControllerCompat.Callback controllerCallback = new MediaControllerCompat.Callback() {
+        @Override
+        public void onMetadataChanged(MediaMetadataCompat metadata) {
+            update();
+        }
+
+        @Override
+        public void onPlaybackStateChanged(PlaybackStateCompat state) {
+            update();
+        }
+    };
+
+    MediaNotificationManager(@NonNull Service service, @NonNull MediaSessionCompat mediaSession, @NonNull ArtworkLoader artworkLoader) {
+        this.service = service;
+        this.mediaSession = mediaSession;
+        this.artworkLoader = artworkLoader;
+        notificationManager = NotificationManagerCompat.from(service);
+        largeIconSizePx = service.getResources().getDimensionPixelSize(android.R.dimen.notification_large_icon_width);
+
+        createChannel();
+
+        PendingIntent stopIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_STOP);
+        PendingIntent playPauseIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(service, PlaybackStateCompat.ACTION_PLAY_PAUSE);
+        playAction = new NotificationCompat.Action(R.drawable.ic_play_pause, service.getString(R.string.play), playPauseIntent);
+        pauseAction = new NotificationCompat.Action(R.drawable.ic_pause, service.getString(R.string.pause), playPauseIntent);
+
+        notificationBuilder = new NotificationCompat.Builder(service, CHANNEL_ID)
+                // enable launching player by clicking notification
+                .setContentIntent(mediaSession.getController().getSessionActivity())
+
+                // stop service when notification is swiped away
+                .setDeleteIntent(stopIntent)
+
+                // make transport controls visible on lock screen
+                .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
+
+                // add app icon and set accent color
+                .setSmallIcon(R.drawable.ic_notification_icon_temp)
+                .setColor(Color.argb(255, 0, 50, 100))
+
+                // updates to an already-posted notification shouldn't make a sound or peek again
+                .setOnlyAlertOnce(true)
+
+                // play/pause button; swapped in place in update()
+                .addAction(pauseAction)
+
+                // use MediaStyle features
+                .setStyle(new androidx.media.app.NotificationCompat.MediaStyle()
+                        .setMediaSession(mediaSession.getSessionToken())
+                        .setShowActionsInCompactView(0)
+
+                        //add cancel button
+                        .setShowCancelButton(true)
+                        .setCancelButtonIntent(stopIntent)
+                );
+    }
+
+    // posts the notification and places the service in the foreground; from then on it follows the session by itself
+    void start() {
+        if (!started) {
+            started = true;
+            mediaSession.getController().registerCallback(controllerCallback);
+        }
+        update();
+    }
+
+    // takes the service out of the foreground and removes the notification
+    void stop() {
+        if (started) {
+            mediaSession.getController().unregisterCallback(controllerCallback);
+            started = false;
+        }
+        service.stopForeground(true);
+        foreground = false;
+        hasPosted = false;
+    }
+
+    private void update() {
+        if (!started) {
+            return;
+        }
+        MediaControllerCompat controller = mediaSession.getController();
+        MediaMetadataCompat metadata = controller.getMetadata();
+        MediaDescriptionCompat description = metadata != null
+                ? metadata.getDescription()
+                : new MediaDescriptionCompat.Builder().setTitle(service.getString(R.string.app_name)).build();
+        PlaybackStateCompat state = controller.getPlaybackState();
+        boolean playing = state != null
+                && (state.getState() == PlaybackStateCompat.STATE_PLAYING || state.getState() == PlaybackStateCompat.STATE_BUFFERING);
+
+        boolean changed = !hasPosted;
+        if (!Objects.equals(toString(description.getTitle()), toString(shownTitle))
+                || !Objects.equals(toString(description.getSubtitle()), toString(shownSubtitle))
+                || !Objects.equals(toString(description.getDescription()), toString(shownDescription))) {
+            shownTitle = description.getTitle();
+            shownSubtitle = description.getSubtitle();
+            shownDescription = description.getDescription();
+            notificationBuilder
+                    // add currently playing track's metadata
+                    .setContentTitle(shownTitle)
+                    .setContentText(shownSubtitle)
+                    .setSubText(shownDescription);
+            changed = true;
+        }
+        if (playing != shownPlaying || !hasPosted) {
+            shownPlaying = playing;
+            notificationBuilder.clearActions().addAction(playing ? pauseAction : playAction);
+            changed = true;
+        }
+        Uri artUri = description.getIconUri();
+        if (!Objects.equals(artUri, shownArtUri)) {
+            shownArtUri = artUri;
+            // use art that's already decoded at notification size; otherwise drop the old art and post the new one when it's ready
+            Bitmap cachedArt = artUri != null ? artworkLoader.getCached(artUri, largeIconSizePx) : null;
+            notificationBuilder.setLargeIcon(cachedArt);
+            if (artUri != null && cachedArt == null) {
+                artworkLoader.load(artUri, largeIconSizePx, bitmap -> onArtworkLoaded(artUri, bitmap));
+            }
+            changed = true;
+        }
+
+        if (changed) {
+            post();
+        }
+    }
+
+    private void onArtworkLoaded(Uri artUri, @Nullable Bitmap bitmap) {
+        // the track may have changed while the art was decoding
+        if (bitmap == null || !started || !artUri.equals(shownArtUri)) {
+            return;
+        }
+        notificationBuilder.setLargeIcon(bitmap);
+        post();
+    }
+
+    private void post() {
+        Notification notification = notificationBuilder.build();
+        if (!foreground) {
+            // display notification and place service in foreground
+            service.startForeground(NOTIFICATION_ID, notification);
+            foreground = true;
+        } else {
+            notificationManager.notify(NOTIFICATION_ID, notification);
+        }
+        hasPosted = true;
+    }
+
+    // notifications on api 26+ need a channel; creating an existing one again is a no-op
+    private void createChannel() {
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, service.getString(R.string.playback_channel_name), NotificationManager.IMPORTANCE_LOW);
+        channel.setShowBadge(false);
+        service.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    private static String toString(@Nullable CharSequence charSequence) {
+        return charSequence == null ? null : charSequence.toString();
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.support.v4.media.MediaMetadataCompat;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// persistent cache of track metadata, so a cold service start doesn't re-parse tags for every track
+// entries are keyed by media URI and only valid for the file modification time they were read at
+//      (streams have no mtime, and use 0)
+//
+// two levels:
+// - a size-bounded in-memory LRU in front, for the tracks that are actually being browsed/played
+// - a SQLite table behind it, which is also trimmed least-recently-used first once it gets too big
+//      disk hits are written back as last-used in batches (or with the next put), and the size is only checked every TRIM_INTERVAL_PUTS puts,
+//      so neither a read nor a write costs an extra statement each time
+//
+// methods that touch the database must not be called from the main thread
+class MetadataCache {
+
+    private static final int MEMORY_ENTRIES = 512;
+    private static final int MAX_DISK_ENTRIES = 100_000;
+    // disk hits whose last-used time is written back together
+    private static final int LAST_USED_BATCH = 64;
+    // the table may go over MAX_DISK_ENTRIES by at most this many rows between trims
+    private static final int TRIM_INTERVAL_PUTS = 256;
+
+    // the MediaMetadataCompat keys worth persisting; anything else (bitmaps, ratings) is left out on purpose
+    private static final String[] TEXT_KEYS = {
+            MediaMetadataCompat.METADATA_KEY_MEDIA_ID,
+            MediaMetadataCompat.METADATA_KEY_TITLE,
+            MediaMetadataCompat.METADATA_KEY_ARTIST,
+            MediaMetadataCompat.METADATA_KEY_ALBUM,
+            MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI,
+    };
+    private static final String[] LONG_KEYS = {
+            MediaMetadataCompat.METADATA_KEY_DURATION,
+            MediaMetadataCompat.METADATA_KEY_TRACK_NUMBER,
+    };
+
+    private static final String TABLE = "metadata";
+    private static final String COLUMN_URI = "uri";
+    private static final String COLUMN_MTIME = "mtime";
+    private static final String COLUMN_LAST_USED = "last_used";
+    private static final String[] COLUMNS = {
+            "media_id", "title", "artist", "album", "album_art_uri",
+            "duration", "track_number",
+            COLUMN_MTIME,
+    };
+
+    private final LruCache<String, Entry> memoryCache = new LruCache<>(MEMORY_ENTRIES);
+    private final DatabaseHelper databaseHelper;
+    // URIs read from disk since their last-used time was last written; guarded by this
+    private final List<String> pendingLastUsed = new ArrayList<>();
+    // starts full, so the first put checks the size; guarded by this
+    private int putsSinceTrim = TRIM_INTERVAL_PUTS;
+
+    MetadataCache(@NonNull Context context) {
+        databaseHelper = new DatabaseHelper(context.getApplicationContext());
+    }
+
+    // returns the cached metadata for uri, or null when there is none or the file changed since it was cached
+    @Nullable
+    MediaMetadataCompat get(@NonNull String uri, long mtime) {
+        Entry entry = memoryCache.get(uri);
+        if (entry == null) {
+            entry = readFromDisk(uri);
+            if (entry == null) {
+                return null;
+            }
+            memoryCache.put(uri, entry);
+            touch(uri);
+        }
+        return entry.mtime == mtime ? entry.metadata : null;
+    }
+
+    void put(@NonNull String uri, long mtime, @NonNull MediaMetadataCompat metadata) {
+        memoryCache.put(uri, new Entry(mtime, metadata));
+
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
+        database.insertWithOnConflict(TABLE, null, toContentValues(uri, mtime, metadata), SQLiteDatabase.CONFLICT_REPLACE);
+        // already writing; bring the last-used times along, so a cache that's rarely read doesn't wait on a full batch
+        flushLastUsed();
+        synchronized (this) {
+            if (++putsSinceTrim < TRIM_INTERVAL_PUTS) {
+                return;
+            }
+            putsSinceTrim = 0;
+        }
+        trimToSize(database);
+    }
+
+    // hits that haven't been written back yet are dropped; that only makes the trim order slightly less exact
+    void close() {
+        databaseHelper.close();
+    }
+
+    private Entry readFromDisk(String uri) {
+        SQLiteDatabase database = databaseHelper.getReadableDatabase();
+        try (Cursor cursor = database.query(TABLE, COLUMNS, COLUMN_URI + " = ?", new String[]{uri}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            MediaMetadataCompat.Builder builder = new MediaMetadataCompat.Builder()
+                    .putString(MediaMetadataCompat.METADATA_KEY_MEDIA_URI, uri);
+            int column = 0;
+            for (String key : TEXT_KEYS) {
+                if (!cursor.isNull(column)) {
+                    builder.putString(key, cursor.getString(column));
+                }
+                column++;
+            }
+            for (String key : LONG_KEYS) {
+                if (!cursor.isNull(column)) {
+                    builder.putLong(key, cursor.getLong(column));
+                }
+                column++;
+            }
+            long mtime = cursor.getLong(column);
+            return new Entry(mtime, builder.build());
+        }
+    }
+
+    // only disk hits update the LRU timestamp; memory hits are free
+    private void touch(String uri) {
+        synchronized (this) {
+            pendingLastUsed.add(uri);
+            if (pendingLastUsed.size() < LAST_USED_BATCH) {
+                return;
+            }
+        }
+        flushLastUsed();
+    }
+
+    // one transaction for the whole batch
+    private void flushLastUsed() {
+        List<String> uris;
+        synchronized (this) {
+            if (pendingLastUsed.isEmpty()) {
+                return;
+            }
+            uris = new ArrayList<>(pendingLastUsed);
+            pendingLastUsed.clear();
+        }
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        database.beginTransaction();
+        try (SQLiteStatement update = database.compileStatement(
+                "UPDATE " + TABLE + " SET " + COLUMN_LAST_USED + " = ? WHERE " + COLUMN_URI + " = ?")) {
+            for (String uri : uris) {
+                update.bindLong(1, now);
+                update.bindString(2, uri);
+                update.executeUpdateDelete();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private void trimToSize(SQLiteDatabase database) {
+        long rows = DatabaseUtils.queryNumEntries(database, TABLE);
+        if (rows <= MAX_DISK_ENTRIES) {
+            return;
+        }
+        // drop the least recently used tenth in one statement, so the table isn't trimmed again right away
+        long toDelete = rows - MAX_DISK_ENTRIES + MAX_DISK_ENTRIES / 10;
+        database.execSQL("DELETE FROM " + TABLE + " WHERE " + COLUMN_URI + " IN (SELECT " + COLUMN_URI
+                + " FROM " + TABLE + " ORDER BY " + COLUMN_LAST_USED + " ASC LIMIT " + toDelete + ")");
+    }
+
+    private static ContentValues toContentValues(String uri, long mtime, MediaMetadataCompat metadata) {
+        ContentValues values = new ContentValues(COLUMNS.length + 2);
+        values.put(COLUMN_URI, uri);
+        int column = 0;
+        for (String key : TEXT_KEYS) {
+            values.put(COLUMNS[column++], metadata.getString(key));
+        }
+        for (String key : LONG_KEYS) {
+            if (metadata.containsKey(key)) {
+                values.put(COLUMNS[column], metadata.getLong(key));
+            } else {
+                values.putNull(COLUMNS[column]);
+            }
+            column++;
+        }
+        values.put(COLUMN_MTIME, mtime);
+        values.put(COLUMN_LAST_USED, System.currentTimeMillis());
+        return values;
+    }
+
+    private static class Entry {
+        final long mtime;
+        final MediaMetadataCompat metadata;
+
+        Entry(long mtime, MediaMetadataCompat metadata) {
+            this.mtime = mtime;
+            this.metadata = metadata;
+        }
+    }
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        private static final String DATABASE_NAME = "metadata_cache.db";
+        private static final int DATABASE_VERSION = 1;
+
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase database) {
+            database.execSQL("CREATE TABLE " + TABLE + " ("
+                    + COLUMN_URI + " TEXT PRIMARY KEY, "
+                    + "media_id TEXT, title TEXT, artist TEXT, album TEXT, album_art_uri TEXT, "
+                    + "duration INTEGER, track_number INTEGER, "
+                    + COLUMN_MTIME + " INTEGER NOT NULL, "
+                    + COLUMN_LAST_USED + " INTEGER NOT NULL)");
+            database.execSQL("CREATE INDEX " + TABLE + "_" + COLUMN_LAST_USED + " ON " + TABLE + " (" + COLUMN_LAST_USED + ")");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+            // it's only a cache; start over
+            database.execSQL("DROP TABLE IF EXISTS " + TABLE);
+            onCreate(database);
+        }
+    }
+}
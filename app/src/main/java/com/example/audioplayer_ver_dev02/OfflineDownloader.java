@@ -0,0 +1,511 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// downloads tracks into a directory for offline playback, and keeps a DownloadIndex of what's there
+//
+// - at most MAX_CONCURRENT_DOWNLOADS transfers run at once; the rest wait in line
+// - bytes go to <name>.part first; a dropped connection (or a new process) picks up where the .part file ends, with an
+//      HTTP Range request (guarded by If-Range, so a file that changed on the server is downloaded again from the start)
+// - every byte is fed to a SHA-256 digest as it's written; the result is checked against the expected checksum and
+//      recorded in the index, and only then is the .part file renamed into place
+// - the expected checksum is the caller's if it has one, else the server's (a sha-256 Repr-Digest, or the older Digest
+//      header); with neither, a download is trusted as received, and only its integrity on disk is checked from then on
+// - downloads from an earlier process are served right away if their file still has the length and modification time
+//      the index recorded; the others only once verifyDownloads() has hashed them, and removed if they don't match
+//
+// plain Java (HttpURLConnection), so it can be tested against LocalHttpServer on the JVM
+// the listener is called on a download thread
+class OfflineDownloader {
+
+    static final int MAX_CONCURRENT_DOWNLOADS = 2;
+    // attempts in a row that don't get a single new byte before a download gives up
+    private static final int MAX_ATTEMPTS_WITHOUT_PROGRESS = 3;
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final int CONNECT_TIMEOUT_MS = 15_000;
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final String PART_SUFFIX = ".part";
+    // the server's validator (ETag or Last-Modified) of the bytes in a .part file, for If-Range
+    private static final String VALIDATOR_SUFFIX = ".validator";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+    private static final Pattern UNSATISFIED_RANGE = Pattern.compile("bytes \\*/(\\d+)");
+    // sha-256=:<base64>: in a Repr-Digest (RFC 9530), sha-256=<base64> in a Digest (RFC 3230); either may list other algorithms
+    private static final Pattern REPR_DIGEST_SHA256 = Pattern.compile("(?i)(?:^|,)\\s*sha-256=:([A-Za-z0-9+/=]+):");
+    private static final Pattern DIGEST_SHA256 = Pattern.compile("(?i)(?:^|,)\\s*sha-256=([A-Za-z0-9+/=]+)");
+
+    interface Listener {
+        // exactly one of file and error is set; not called for cancelled downloads
+        void onDownloadFinished(@NonNull String mediaId, @Nullable File file, @Nullable IOException error);
+    }
+
+    // the downloaded file didn't hash to what it was supposed to
+    static class ChecksumMismatchException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ChecksumMismatchException(String expected, String actual) {
+            super("expected SHA-256 " + expected + ", got " + actual);
+        }
+    }
+
+    // a response that retrying won't fix (404, 403, ...)
+    static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int responseCode;
+
+        HttpStatusException(int responseCode) {
+            super("HTTP " + responseCode);
+            this.responseCode = responseCode;
+        }
+    }
+
+    // what verifyDownloads() changed
+    static class Verification {
+        // hashed, and matched: now served
+        final List<String> verified = new ArrayList<>();
+        // didn't match (or couldn't be read): removed, so they get downloaded again
+        final List<String> removed = new ArrayList<>();
+    }
+
+    private final File directory;
+    private final DownloadIndex index;
+    private final Listener listener;
+    private final ThreadPoolExecutor executor;
+    // mediaId -> its queued or running download; guarded by this
+    private final Map<String, DownloadTask> inFlight = new HashMap<>();
+
+    OfflineDownloader(@NonNull File directory, @NonNull Listener listener) {
+        this.directory = directory;
+        this.index = new DownloadIndex(directory);
+        this.listener = listener;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(MAX_CONCURRENT_DOWNLOADS, MAX_CONCURRENT_DOWNLOADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "download-" + threadNumber.incrementAndGet()));
+        // no idle threads when nothing is downloading
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @NonNull
+    DownloadIndex getIndex() {
+        return index;
+    }
+
+    // the downloaded file of mediaId, or null if it isn't (completely) downloaded, or not verified yet
+    @Nullable
+    File getDownloadedFile(@NonNull String mediaId) {
+        DownloadIndex.Entry entry = index.get(mediaId);
+        if (entry == null || !index.isVerified(mediaId)) {
+            return null;
+        }
+        File file = index.fileOf(entry);
+        return file.exists() ? file : null;
+    }
+
+    // hashes every downloaded file that isn't verified yet (see DownloadIndex), and compares it with the checksum recorded
+    // when it was downloaded; the ones that don't match (or can't be read) are removed, so they get downloaded again
+    // reads those files, so it can be slow: call it off the main thread
+    @NonNull
+    Verification verifyDownloads() {
+        Verification verification = new Verification();
+        for (DownloadIndex.Entry entry : index.getAll()) {
+            if (index.isVerified(entry.mediaId)) {
+                continue;
+            }
+            File file = index.fileOf(entry);
+            String sha256;
+            try {
+                sha256 = file.length() == entry.length ? hash(file) : null;
+            } catch (IOException e) {
+                sha256 = null;
+            }
+            try {
+                if (entry.sha256.equals(sha256)) {
+                    if (index.markVerified(entry)) {
+                        verification.verified.add(entry.mediaId);
+                    }
+                } else if (index.remove(entry)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                    verification.removed.add(entry.mediaId);
+                }
+            } catch (IOException e) {
+                // the index couldn't be rewritten; a verified entry is still served by this process (and hashed again by
+                // the next one), a removed one stays unverified, so it still isn't served
+                if (index.isVerified(entry.mediaId)) {
+                    verification.verified.add(entry.mediaId);
+                }
+            }
+        }
+        return verification;
+    }
+
+    // false if mediaId is already downloaded or on its way
+    // expectedSha256 (lowercase hex) is optional; without it the server's digest is checked, if it sends one
+    synchronized boolean enqueue(@NonNull String mediaId, @NonNull String url, @Nullable String expectedSha256) {
+        if (inFlight.containsKey(mediaId) || index.contains(mediaId)) {
+            return false;
+        }
+        DownloadTask task = new DownloadTask(mediaId, url, expectedSha256);
+        inFlight.put(mediaId, task);
+        executor.execute(task);
+        return true;
+    }
+
+    synchronized boolean isDownloading(@NonNull String mediaId) {
+        return inFlight.containsKey(mediaId);
+    }
+
+    // stops a queued or running download; what it already has stays in its .part file, so enqueueing it again resumes it
+    synchronized void cancel(@NonNull String mediaId) {
+        DownloadTask task = inFlight.remove(mediaId);
+        if (task != null) {
+            task.cancelled = true;
+        }
+    }
+
+    // cancels it (if it's still downloading) and deletes everything it left on disk
+    void remove(@NonNull String mediaId) throws IOException {
+        cancel(mediaId);
+        DownloadIndex.Entry entry = index.remove(mediaId);
+        if (entry != null) {
+            //noinspection ResultOfMethodCallIgnored
+            index.fileOf(entry).delete();
+        }
+        deletePartial(fileNameFor(mediaId));
+    }
+
+    // cancels everything; partial downloads are kept for next time
+    void release() {
+        synchronized (this) {
+            for (DownloadTask task : inFlight.values()) {
+                task.cancelled = true;
+            }
+            inFlight.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    // stable per mediaId, so a new process finds the .part file of an interrupted download
+    @NonNull
+    static String fileNameFor(@NonNull String mediaId) {
+        return toHex(sha256().digest(mediaId.getBytes(StandardCharsets.UTF_8))).substring(0, 40);
+    }
+
+    private void deletePartial(String fileName) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, fileName + PART_SUFFIX).delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, fileName + VALIDATOR_SUFFIX).delete();
+    }
+
+    // moves a verified download into place and indexes it, unless it was cancelled (or removed) in the meantime
+    // under the same lock as cancel(), so a remove() either waits for this and then deletes the result, or wins and this
+    // does nothing; a removed download can't come back
+    @Nullable
+    private synchronized File complete(DownloadTask task, String sha256) throws IOException {
+        if (inFlight.get(task.mediaId) != task) {
+            return null;
+        }
+        File file = new File(directory, task.fileName);
+        Files.move(task.partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        //noinspection ResultOfMethodCallIgnored
+        task.validatorFile.delete();
+        index.put(new DownloadIndex.Entry(task.mediaId, task.url, task.fileName, file.length(), sha256, file.lastModified()));
+        return file;
+    }
+
+    private synchronized boolean finish(DownloadTask task) {
+        // false if it was cancelled (and maybe enqueued again) in the meantime
+        if (inFlight.get(task.mediaId) != task) {
+            return false;
+        }
+        inFlight.remove(task.mediaId);
+        return true;
+    }
+
+    private class DownloadTask implements Runnable {
+        final String mediaId;
+        final String url;
+        @Nullable
+        final String expectedSha256;
+        // the one the server sent with the current response, if any
+        @Nullable
+        private String serverSha256;
+        final String fileName;
+        final File partFile;
+        final File validatorFile;
+        volatile boolean cancelled;
+
+        // bytes in partFile, all of them already fed to digest
+        private long offset;
+        private final MessageDigest digest = sha256();
+
+        DownloadTask(String mediaId, String url, @Nullable String expectedSha256) {
+            this.mediaId = mediaId;
+            this.url = url;
+            this.expectedSha256 = expectedSha256;
+            fileName = fileNameFor(mediaId);
+            partFile = new File(directory, fileName + PART_SUFFIX);
+            validatorFile = new File(directory, fileName + VALIDATOR_SUFFIX);
+        }
+
+        @Override
+        public void run() {
+            File file = null;
+            IOException error = null;
+            try {
+                file = download();
+            } catch (IOException e) {
+                error = e;
+            }
+            if (finish(this)) {
+                listener.onDownloadFinished(mediaId, file, error);
+            }
+        }
+
+        // null if cancelled
+        @Nullable
+        private File download() throws IOException {
+            //noinspection ResultOfMethodCallIgnored
+            directory.mkdirs();
+            offset = hashExisting();
+            int attemptsWithoutProgress = 0;
+            while (true) {
+                if (cancelled) {
+                    return null;
+                }
+                long offsetBefore = offset;
+                try {
+                    transfer();
+                    break;
+                } catch (HttpStatusException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // dropped connection, timeout, ...
+                    if (cancelled) {
+                        return null;
+                    }
+                    attemptsWithoutProgress = offset > offsetBefore ? 0 : attemptsWithoutProgress + 1;
+                    if (attemptsWithoutProgress >= MAX_ATTEMPTS_WITHOUT_PROGRESS) {
+                        throw e;
+                    }
+                }
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS * Math.max(1, attemptsWithoutProgress));
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+
+            String sha256 = toHex(digest.digest());
+            String expected = expectedSha256 != null ? expectedSha256 : serverSha256;
+            if (expected != null && !expected.equalsIgnoreCase(sha256)) {
+                // can't tell which bytes are bad; start over next time
+                deletePartial(fileName);
+                throw new ChecksumMismatchException(expected, sha256);
+            }
+            return complete(this, sha256);
+        }
+
+        // one HTTP request, from offset to the end; returns once partFile is complete
+        private void transfer() throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            try {
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+                connection.setReadTimeout(READ_TIMEOUT_MS);
+                String validator = readValidator();
+                if (offset > 0) {
+                    connection.setRequestProperty("Range", "bytes=" + offset + "-");
+                    if (validator != null) {
+                        connection.setRequestProperty("If-Range", validator);
+                    }
+                }
+
+                int responseCode = connection.getResponseCode();
+                long total;
+                if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    Matcher matcher = CONTENT_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+                    if (!matcher.matches() || Long.parseLong(matcher.group(1)) != offset) {
+                        restart();
+                        throw new IOException("unexpected Content-Range " + connection.getHeaderField("Content-Range"));
+                    }
+                    total = "*".equals(matcher.group(3)) ? -1 : Long.parseLong(matcher.group(3));
+                    // a Repr-Digest covers the whole file, not just this range
+                    String digestHeader = readServerDigest(connection);
+                    if (digestHeader != null) {
+                        serverSha256 = digestHeader;
+                    }
+                } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                    // a fresh download, or the server ignored the range (or the file changed, per If-Range): start over
+                    if (offset > 0) {
+                        restart();
+                    }
+                    writeValidator(connection);
+                    serverSha256 = readServerDigest(connection);
+                    total = connection.getContentLengthLong();
+                } else if (responseCode == 416 && offset > 0) {
+                    // asked for bytes past the end: either the .part file is already complete, or it's bogus
+                    Matcher matcher = UNSATISFIED_RANGE.matcher(String.valueOf(connection.getHeaderField("Content-Range")));
+                    if (matcher.matches() && Long.parseLong(matcher.group(1)) == offset) {
+                        return;
+                    }
+                    restart();
+                    throw new IOException("range not satisfiable at " + offset);
+                } else {
+                    throw new HttpStatusException(responseCode);
+                }
+
+                try (InputStream in = connection.getInputStream();
+                     OutputStream out = new FileOutputStream(partFile, true)) {
+                    byte[] buffer = new byte[BUFFER_BYTES];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        if (cancelled) {
+                            throw new InterruptedIOException("cancelled");
+                        }
+                        out.write(buffer, 0, read);
+                        digest.update(buffer, 0, read);
+                        offset += read;
+                    }
+                }
+                if (total >= 0 && offset < total) {
+                    // the connection closed early
+                    throw new EOFException("got " + offset + " of " + total + " bytes");
+                }
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        // feeds an interrupted download's bytes to the digest, so the checksum still covers the whole file
+        private long hashExisting() throws IOException {
+            if (!partFile.exists()) {
+                return 0;
+            }
+            long length = 0;
+            try (InputStream in = new FileInputStream(partFile)) {
+                byte[] buffer = new byte[BUFFER_BYTES];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    length += read;
+                }
+            }
+            return length;
+        }
+
+        private void restart() throws IOException {
+            new FileOutputStream(partFile).close();
+            digest.reset();
+            offset = 0;
+        }
+
+        @Nullable
+        private String readValidator() {
+            try {
+                return validatorFile.exists() ? new String(Files.readAllBytes(validatorFile.toPath()), StandardCharsets.UTF_8) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private void writeValidator(HttpURLConnection connection) throws IOException {
+            String validator = connection.getHeaderField("ETag");
+            if (validator == null) {
+                validator = connection.getHeaderField("Last-Modified");
+            }
+            if (validator == null) {
+                //noinspection ResultOfMethodCallIgnored
+                validatorFile.delete();
+                return;
+            }
+            Files.write(validatorFile.toPath(), validator.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // lowercase hex, or null if the response has no (usable) SHA-256 digest
+    @Nullable
+    private static String readServerDigest(@NonNull HttpURLConnection connection) {
+        String sha256 = parseDigest(REPR_DIGEST_SHA256, connection.getHeaderField("Repr-Digest"));
+        return sha256 != null ? sha256 : parseDigest(DIGEST_SHA256, connection.getHeaderField("Digest"));
+    }
+
+    @Nullable
+    private static String parseDigest(Pattern pattern, @Nullable String header) {
+        if (header == null) {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(header);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            byte[] sha256 = Base64.getDecoder().decode(matcher.group(1));
+            return sha256.length == 32 ? toHex(sha256) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String hash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to have it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.audioplayer_ver_dev02;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// aggregates playback metrics: time-to-first-audio per item, time-to-audio per resume, rebuffers and stall time, time spent in each player state,
+// bytes loaded, the latest bandwidth estimate, and dropped decoder work
+//
+// written from the player's application thread (through PlaybackMetricsListener), read from anywhere through snapshot()
+// every counter is an atomic, so there are no locks, and recording allocates nothing
+// plain Java on purpose (timestamps are passed in), so it can be benchmarked and tested on the JVM
+class PlaybackMetrics {
+
+    // indices match Player.STATE_IDLE (1) ... Player.STATE_ENDED (4); 0 is "no state yet"
+    static final int STATE_COUNT = 5;
+
+    private static final long NOT_SET = -1;
+
+    // time-to-first-audio
+    private final AtomicLong itemStartMs = new AtomicLong(NOT_SET);
+    private final AtomicLong firstAudioCount = new AtomicLong();
+    private final AtomicLong firstAudioTotalMs = new AtomicLong();
+    private final AtomicLong firstAudioMaxMs = new AtomicLong();
+    private final AtomicLong lastFirstAudioMs = new AtomicLong(NOT_SET);
+
+    // time-to-audio after resuming a paused item; kept apart, since the decoder and buffer are usually warm
+    private final AtomicLong resumeStartMs = new AtomicLong(NOT_SET);
+    private final AtomicLong resumeCount = new AtomicLong();
+    private final AtomicLong resumeTotalMs = new AtomicLong();
+    private final AtomicLong resumeMaxMs = new AtomicLong();
+
+    // rebuffering
+    private final AtomicLong rebufferStartMs = new AtomicLong(NOT_SET);
+    private final AtomicLong rebufferCount = new AtomicLong();
+    private final AtomicLong stallTotalMs = new AtomicLong();
+    // a seek (or a skip) happened and audio hasn't advanced since; the buffering it causes is not a stall
+    private final AtomicBoolean seekPending = new AtomicBoolean();
+
+    // player states
+    private final AtomicLongArray stateTimeMs = new AtomicLongArray(STATE_COUNT);
+    private final AtomicLong currentState = new AtomicLong(0);
+    private final AtomicLong stateEnteredMs = new AtomicLong(NOT_SET);
+
+    // loading
+    private final AtomicLong bytesLoaded = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong bandwidthEstimateBps = new AtomicLong();
+
+    // dropped decoder work (dropped frames, audio underruns)
+    private final AtomicLong droppedWork = new AtomicLong();
+
+    // playback of a new item was requested; starts the time-to-first-audio clock
+    void onItemStart(long nowMs) {
+        resumeStartMs.set(NOT_SET);
+        itemStartMs.set(nowMs);
+    }
+
+    // playback of the item that was paused was requested again; starts the resume clock (not the first-audio one)
+    void onResumeStart(long nowMs) {
+        if (itemStartMs.get() == NOT_SET) {
+            resumeStartMs.set(nowMs);
+        }
+    }
+
+    // the audio position started advancing; only the first time after onItemStart() (or onResumeStart()) counts
+    // also ends a seek: buffering from here on is a stall again
+    void onFirstAudio(long nowMs) {
+        seekPending.set(false);
+        long startMs = itemStartMs.getAndSet(NOT_SET);
+        if (startMs != NOT_SET) {
+            long elapsedMs = nowMs - startMs;
+            firstAudioCount.incrementAndGet();
+            firstAudioTotalMs.addAndGet(elapsedMs);
+            lastFirstAudioMs.set(elapsedMs);
+            updateMax(firstAudioMaxMs, elapsedMs);
+            return;
+        }
+        long resumedMs = resumeStartMs.getAndSet(NOT_SET);
+        if (resumedMs != NOT_SET) {
+            long elapsedMs = nowMs - resumedMs;
+            resumeCount.incrementAndGet();
+            resumeTotalMs.addAndGet(elapsedMs);
+            updateMax(resumeMaxMs, elapsedMs);
+        }
+    }
+
+    // the user seeked or skipped; the next rebuffer start (until audio advances again) is that seek loading, not a stall
+    void onSeek() {
+        seekPending.set(true);
+    }
+
+    void onRebufferStart(long nowMs) {
+        if (seekPending.getAndSet(false)) {
+            return;
+        }
+        if (rebufferStartMs.compareAndSet(NOT_SET, nowMs)) {
+            rebufferCount.incrementAndGet();
+        }
+    }
+
+    void onRebufferEnd(long nowMs) {
+        long startMs = rebufferStartMs.getAndSet(NOT_SET);
+        if (startMs != NOT_SET) {
+            stallTotalMs.addAndGet(nowMs - startMs);
+        }
+    }
+
+    // state is one of Player.STATE_*
+    void onStateChanged(int state, long nowMs) {
+        int previous = (int) currentState.getAndSet(state);
+        long enteredMs = stateEnteredMs.getAndSet(nowMs);
+        if (enteredMs != NOT_SET && previous >= 0 && previous < STATE_COUNT) {
+            stateTimeMs.addAndGet(previous, nowMs - enteredMs);
+        }
+    }
+
+    void onLoadCompleted(long bytes) {
+        bytesLoaded.addAndGet(bytes);
+        loadCount.incrementAndGet();
+    }
+
+    void onBandwidthEstimate(long bitsPerSecond) {
+        bandwidthEstimateBps.set(bitsPerSecond);
+    }
+
+    void onDroppedWork(long count) {
+        droppedWork.addAndGet(count);
+    }
+
+    // a consistent-enough copy for reporting; nowMs closes out the time spent in the current state and any ongoing stall
+    Snapshot snapshot(long nowMs) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.firstAudioCount = firstAudioCount.get();
+        snapshot.firstAudioAverageMs = snapshot.firstAudioCount == 0 ? 0 : firstAudioTotalMs.get() / snapshot.firstAudioCount;
+        snapshot.firstAudioMaxMs = firstAudioMaxMs.get();
+        snapshot.lastFirstAudioMs = lastFirstAudioMs.get();
+        snapshot.resumeCount = resumeCount.get();
+        snapshot.resumeAverageMs = snapshot.resumeCount == 0 ? 0 : resumeTotalMs.get() / snapshot.resumeCount;
+        snapshot.resumeMaxMs = resumeMaxMs.get();
+
+        snapshot.rebufferCount = rebufferCount.get();
+        long ongoingStallStartMs = rebufferStartMs.get();
+        snapshot.stallTotalMs = stallTotalMs.get() + (ongoingStallStartMs == NOT_SET ? 0 : nowMs - ongoingStallStartMs);
+
+        snapshot.stateTimeMs = new long[STATE_COUNT];
+        for (int state = 0; state < STATE_COUNT; state++) {
+            snapshot.stateTimeMs[state] = stateTimeMs.get(state);
+        }
+        int state = (int) currentState.get();
+        long enteredMs = stateEnteredMs.get();
+        if (enteredMs != NOT_SET && state >= 0 && state < STATE_COUNT) {
+            snapshot.stateTimeMs[state] += nowMs - enteredMs;
+        }
+
+        snapshot.bytesLoaded = bytesLoaded.get();
+        snapshot.loadCount = loadCount.get();
+        snapshot.bandwidthEstimateBps = bandwidthEstimateBps.get();
+        snapshot.droppedWork = droppedWork.get();
+        return snapshot;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    static class Snapshot {
+        long firstAudioCount;
+        long firstAudioAverageMs;
+        long firstAudioMaxMs;
+        // -1 when no item has started playing yet
+        long lastFirstAudioMs;
+        long resumeCount;
+        long resumeAverageMs;
+        long resumeMaxMs;
+        long rebufferCount;
+        long stallTotalMs;
+        // indexed by Player.STATE_*
+        long[] stateTimeMs;
+        long bytesLoaded;
+        long loadCount;
+        long bandwidthEstimateBps;
+        long droppedWork;
+    }
+}
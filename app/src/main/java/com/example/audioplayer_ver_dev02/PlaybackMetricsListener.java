@@ -0,0 +1,146 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
+
+// feeds ExoPlayer's analytics events into a PlaybackMetrics recorder
+// timestamps come from the events themselves (EventTime.realtimeMs), so nothing here reads a clock
+@OptIn(markerClass = UnstableApi.class)
+class PlaybackMetricsListener implements AnalyticsListener {
+
+    // keys of the Bundle returned by toBundle()
+    static final String KEY_FIRST_AUDIO_COUNT = "first_audio_count";
+    static final String KEY_FIRST_AUDIO_AVERAGE_MS = "first_audio_average_ms";
+    static final String KEY_FIRST_AUDIO_MAX_MS = "first_audio_max_ms";
+    static final String KEY_LAST_FIRST_AUDIO_MS = "last_first_audio_ms";
+    static final String KEY_RESUME_COUNT = "resume_count";
+    static final String KEY_RESUME_AVERAGE_MS = "resume_average_ms";
+    static final String KEY_RESUME_MAX_MS = "resume_max_ms";
+    static final String KEY_REBUFFER_COUNT = "rebuffer_count";
+    static final String KEY_STALL_TOTAL_MS = "stall_total_ms";
+    static final String KEY_STATE_TIME_MS = "state_time_ms";
+    static final String KEY_BYTES_LOADED = "bytes_loaded";
+    static final String KEY_LOAD_COUNT = "load_count";
+    static final String KEY_BANDWIDTH_ESTIMATE_BPS = "bandwidth_estimate_bps";
+    static final String KEY_DROPPED_WORK = "dropped_work";
+
+    private final PlaybackMetrics playbackMetrics;
+    private int lastState = Player.STATE_IDLE;
+    private boolean playWhenReady;
+    // the current item hasn't been played since it was loaded (or since the player was prepared again); the next play
+    // starts its time-to-first-audio clock, and any play after that is a resume
+    private boolean itemUnplayed = true;
+
+    PlaybackMetricsListener(@NonNull PlaybackMetrics playbackMetrics) {
+        this.playbackMetrics = playbackMetrics;
+    }
+
+    @Override
+    public void onPlaybackStateChanged(@NonNull EventTime eventTime, int state) {
+        playbackMetrics.onStateChanged(state, eventTime.realtimeMs);
+        // READY -> BUFFERING while trying to play is a stall, unless a seek or skip caused it (see onSeek())
+        if (state == Player.STATE_BUFFERING && lastState == Player.STATE_READY && playWhenReady) {
+            playbackMetrics.onRebufferStart(eventTime.realtimeMs);
+        } else if (state != Player.STATE_BUFFERING) {
+            playbackMetrics.onRebufferEnd(eventTime.realtimeMs);
+        }
+        if (state == Player.STATE_IDLE) {
+            // stopped (or failed); the next prepare() and play loads it all over again
+            itemUnplayed = true;
+        }
+        lastState = state;
+    }
+
+    @Override
+    public void onPlayWhenReadyChanged(@NonNull EventTime eventTime, boolean playWhenReady, int reason) {
+        this.playWhenReady = playWhenReady;
+        if (!playWhenReady) {
+            return;
+        }
+        if (itemUnplayed) {
+            itemUnplayed = false;
+            playbackMetrics.onItemStart(eventTime.realtimeMs);
+        } else {
+            playbackMetrics.onResumeStart(eventTime.realtimeMs);
+        }
+    }
+
+    @Override
+    public void onMediaItemTransition(@NonNull EventTime eventTime, @Nullable MediaItem mediaItem, int reason) {
+        // automatic (gapless) transitions don't restart the audio track, so only user-driven ones are timed
+        if (reason == Player.MEDIA_ITEM_TRANSITION_REASON_AUTO || reason == Player.MEDIA_ITEM_TRANSITION_REASON_REPEAT) {
+            return;
+        }
+        // a skip; the player buffers the new item, which isn't a stall
+        playbackMetrics.onSeek();
+        if (playWhenReady) {
+            itemUnplayed = false;
+            playbackMetrics.onItemStart(eventTime.realtimeMs);
+        } else {
+            // timed from when it's played
+            itemUnplayed = true;
+        }
+    }
+
+    @Override
+    public void onPositionDiscontinuity(@NonNull EventTime eventTime, @NonNull Player.PositionInfo oldPosition,
+                                        @NonNull Player.PositionInfo newPosition, int reason) {
+        if (reason == Player.DISCONTINUITY_REASON_SEEK || reason == Player.DISCONTINUITY_REASON_SEEK_ADJUSTMENT) {
+            playbackMetrics.onSeek();
+        }
+    }
+
+    @Override
+    public void onAudioPositionAdvancing(@NonNull EventTime eventTime, long playoutStartSystemTimeMs) {
+        playbackMetrics.onFirstAudio(eventTime.realtimeMs);
+    }
+
+    @Override
+    public void onLoadCompleted(@NonNull EventTime eventTime, @NonNull LoadEventInfo loadEventInfo, @NonNull MediaLoadData mediaLoadData) {
+        playbackMetrics.onLoadCompleted(loadEventInfo.bytesLoaded);
+    }
+
+    @Override
+    public void onBandwidthEstimate(@NonNull EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrateEstimate) {
+        playbackMetrics.onBandwidthEstimate(bitrateEstimate);
+    }
+
+    @Override
+    public void onDroppedVideoFrames(@NonNull EventTime eventTime, int droppedFrames, long elapsedMs) {
+        playbackMetrics.onDroppedWork(droppedFrames);
+    }
+
+    @Override
+    public void onAudioUnderrun(@NonNull EventTime eventTime, int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {
+        playbackMetrics.onDroppedWork(1);
+    }
+
+    @NonNull
+    static Bundle toBundle(@NonNull PlaybackMetrics.Snapshot snapshot) {
+        Bundle bundle = new Bundle();
+        bundle.putLong(KEY_FIRST_AUDIO_COUNT, snapshot.firstAudioCount);
+        bundle.putLong(KEY_FIRST_AUDIO_AVERAGE_MS, snapshot.firstAudioAverageMs);
+        bundle.putLong(KEY_FIRST_AUDIO_MAX_MS, snapshot.firstAudioMaxMs);
+        bundle.putLong(KEY_LAST_FIRST_AUDIO_MS, snapshot.lastFirstAudioMs);
+        bundle.putLong(KEY_RESUME_COUNT, snapshot.resumeCount);
+        bundle.putLong(KEY_RESUME_AVERAGE_MS, snapshot.resumeAverageMs);
+        bundle.putLong(KEY_RESUME_MAX_MS, snapshot.resumeMaxMs);
+        bundle.putLong(KEY_REBUFFER_COUNT, snapshot.rebufferCount);
+        bundle.putLong(KEY_STALL_TOTAL_MS, snapshot.stallTotalMs);
+        bundle.putLongArray(KEY_STATE_TIME_MS, snapshot.stateTimeMs);
+        bundle.putLong(KEY_BYTES_LOADED, snapshot.bytesLoaded);
+        bundle.putLong(KEY_LOAD_COUNT, snapshot.loadCount);
+        bundle.putLong(KEY_BANDWIDTH_ESTIMATE_BPS, snapshot.bandwidthEstimateBps);
+        bundle.putLong(KEY_DROPPED_WORK, snapshot.droppedWork);
+        return bundle;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Objects;
+
+// throttles and coalesces what MediaSessionCompat sends to its controllers
+// every setPlaybackState()/setMetadata() is a binder transaction to EVERY connected controller (the notification, the lock screen,
+// Android Auto, MediaBrowsingClientActivity), so the player's event stream can't be forwarded one-to-one
+//
+// - state: any number of invalidations within one looper turn (or within MIN_STATE_INTERVAL_MS) become one publish
+//      position is only published as position + speed + timestamp, so controllers extrapolate it themselves,
+//      and a new state whose position is just where the last one extrapolates to is not published at all
+// - metadata: only published when something controllers show changed (a different item, or the same item's new tags,
+//      duration, art, or download status), at most every MIN_METADATA_INTERVAL_MS (the latest one wins)
+//
+// must be used on the main thread
+class PlaybackStatePublisher {
+
+    private static final long MIN_STATE_INTERVAL_MS = 50;
+    private static final long MIN_METADATA_INTERVAL_MS = 500;
+    // a published position that's off from the extrapolated one by less than this isn't worth a transaction
+    private static final long POSITION_TOLERANCE_MS = 250;
+    // what controllers show of the metadata; if none of these changed, publishing it again is a wasted transaction
+    private static final String[] SHOWN_STRING_KEYS = {
+            MediaMetadataCompat.METADATA_KEY_MEDIA_ID,
+            MediaMetadataCompat.METADATA_KEY_TITLE,
+            MediaMetadataCompat.METADATA_KEY_ARTIST,
+            MediaMetadataCompat.METADATA_KEY_ALBUM,
+            MediaMetadataCompat.METADATA_KEY_DISPLAY_TITLE,
+            MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE,
+            MediaMetadataCompat.METADATA_KEY_DISPLAY_DESCRIPTION,
+            MediaMetadataCompat.METADATA_KEY_ALBUM_ART_URI,
+            MediaMetadataCompat.METADATA_KEY_ART_URI,
+            MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON_URI,
+            MediaMetadataCompat.METADATA_KEY_MEDIA_URI,
+    };
+    private static final String[] SHOWN_LONG_KEYS = {
+            MediaMetadataCompat.METADATA_KEY_DURATION,
+            MediaMetadataCompat.METADATA_KEY_DOWNLOAD_STATUS,
+    };
+
+    // builds the current PlaybackStateCompat when it's actually time to publish
+    interface StateSource {
+        @NonNull
+        PlaybackStateCompat buildPlaybackState();
+    }
+
+    private final MediaSessionCompat mediaSession;
+    private final StateSource stateSource;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Nullable
+    private PlaybackStateCompat lastState;
+    private long lastStatePublishMs;
+    private boolean statePending;
+    private final Runnable publishStateRunnable = this::publishState;
+
+    @Nullable
+    private MediaMetadataCompat lastMetadata;
+    @Nullable
+    private MediaMetadataCompat pendingMetadata;
+    private long lastMetadataPublishMs;
+    private final Runnable publishMetadataRunnable = this::publishMetadata;
+
+    PlaybackStatePublisher(@NonNull MediaSessionCompat mediaSession, @NonNull StateSource stateSource) {
+        this.mediaSession = mediaSession;
+        this.stateSource = stateSource;
+    }
+
+    // the player's state changed; a new PlaybackStateCompat will be built and published soon
+    void invalidateState() {
+        if (statePending) {
+            return;
+        }
+        statePending = true;
+        long delayMs = Math.max(0, lastStatePublishMs + MIN_STATE_INTERVAL_MS - SystemClock.elapsedRealtime());
+        handler.postDelayed(publishStateRunnable, delayMs);
+    }
+
+    void setMetadata(@Nullable MediaMetadataCompat metadata) {
+        if (metadata == null || isSameMetadata(metadata, pendingMetadata != null ? pendingMetadata : lastMetadata)) {
+            return;
+        }
+        boolean alreadyScheduled = pendingMetadata != null;
+        pendingMetadata = metadata;
+        if (!alreadyScheduled) {
+            long delayMs = Math.max(0, lastMetadataPublishMs + MIN_METADATA_INTERVAL_MS - SystemClock.elapsedRealtime());
+            handler.postDelayed(publishMetadataRunnable, delayMs);
+        }
+    }
+
+    void release() {
+        handler.removeCallbacks(publishStateRunnable);
+        handler.removeCallbacks(publishMetadataRunnable);
+    }
+
+    private void publishState() {
+        statePending = false;
+        PlaybackStateCompat state = stateSource.buildPlaybackState();
+        if (lastState != null && isExtrapolationOf(lastState, state)) {
+            return;
+        }
+        lastState = state;
+        lastStatePublishMs = SystemClock.elapsedRealtime();
+        mediaSession.setPlaybackState(state);
+    }
+
+    private void publishMetadata() {
+        MediaMetadataCompat metadata = pendingMetadata;
+        pendingMetadata = null;
+        if (metadata == null) {
+            return;
+        }
+        lastMetadata = metadata;
+        lastMetadataPublishMs = SystemClock.elapsedRealtime();
+        mediaSession.setMetadata(metadata);
+    }
+
+    // true when controllers holding "previous" would already show everything "current" says
+    static boolean isExtrapolationOf(@NonNull PlaybackStateCompat previous, @NonNull PlaybackStateCompat current) {
+        if (previous.getState() != current.getState()
+                || previous.getActions() != current.getActions()
+                || previous.getActiveQueueItemId() != current.getActiveQueueItemId()
+                || previous.getPlaybackSpeed() != current.getPlaybackSpeed()
+                || previous.getErrorCode() != current.getErrorCode()
+                || !Objects.equals(previous.getErrorMessage(), current.getErrorMessage())) {
+            return false;
+        }
+        long elapsedMs = current.getLastPositionUpdateTime() - previous.getLastPositionUpdateTime();
+        float speed = previous.getState() == PlaybackStateCompat.STATE_PLAYING ? previous.getPlaybackSpeed() : 0f;
+        long extrapolatedMs = previous.getPosition() + (long) (elapsedMs * speed);
+        return Math.abs(extrapolatedMs - current.getPosition()) < POSITION_TOLERANCE_MS;
+    }
+
+    // not just the media ID: the current item's metadata changes too (tags read later, a finished download, a rescan)
+    private static boolean isSameMetadata(MediaMetadataCompat a, MediaMetadataCompat b) {
+        if (b == null) {
+            return false;
+        }
+        if (a == b) {
+            return true;
+        }
+        for (String key : SHOWN_STRING_KEYS) {
+            if (!Objects.equals(a.getString(key), b.getString(key))) {
+                return false;
+            }
+        }
+        for (String key : SHOWN_LONG_KEYS) {
+            if (a.getLong(key) != b.getLong(key)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.core.util.AtomicFile;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// remembers what was playing (the queue, the current item, the position in it) across process death,
+// so a media button press or the system's "resume" card can pick up where playback left off, without waiting for a catalog build
+//
+// two files, because they change at very different rates:
+// - queue: media ID, URI and title of every queue item; replaced atomically (AtomicFile), and only when the queue itself changes
+// - position: one fixed-size record (queue generation, index, position, CRC) overwritten in place, so saving a position
+//      is a single small write, not a new file + rename + fsync; a torn record fails its CRC and is ignored
+// a position only applies to the queue with the same generation; otherwise the queue resumes from its first item
+//
+// save*() can be called from any thread (usually the main thread); writes are debounced and done on the store's own thread
+class PlaybackStateStore {
+
+    private static final String LOG_TAG = "MyPlaybackStateStore";
+
+    private static final int QUEUE_FORMAT_VERSION = 1;
+    private static final String QUEUE_FILE = "queue";
+    private static final String POSITION_FILE = "position";
+    // generation (8) + index (4) + position (8), then the CRC32 of those 20 bytes (4)
+    private static final int POSITION_RECORD_BYTES = 24;
+    private static final int POSITION_CHECKED_BYTES = 20;
+    // a burst of saves (seeking, skipping through a queue) becomes one write
+    private static final long WRITE_DELAY_MS = 500;
+
+    static class QueueItem {
+        @NonNull
+        final String mediaId;
+        @NonNull
+        final String uri;
+        @Nullable
+        final String title;
+
+        QueueItem(@NonNull String mediaId, @NonNull String uri, @Nullable String title) {
+            this.mediaId = mediaId;
+            this.uri = uri;
+            this.title = title;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof QueueItem)) {
+                return false;
+            }
+            QueueItem other = (QueueItem) o;
+            return mediaId.equals(other.mediaId) && uri.equals(other.uri);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mediaId.hashCode() + uri.hashCode();
+        }
+    }
+
+    // what restore() found
+    static class SavedState {
+        @NonNull
+        final List<QueueItem> queue;
+        final int index;
+        final long positionMs;
+
+        SavedState(@NonNull List<QueueItem> queue, int index, long positionMs) {
+            this.queue = queue;
+            this.index = index;
+            this.positionMs = positionMs;
+        }
+
+        @NonNull
+        QueueItem currentItem() {
+            return queue.get(index);
+        }
+    }
+
+    private final AtomicFile queueFile;
+    private final File positionFile;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final Runnable writeRunnable = this::writePending;
+
+    // guarded by this
+    private List<QueueItem> queue = Collections.emptyList();
+    private long queueGeneration;
+    private boolean queueDirty;
+    private int index;
+    private long positionMs;
+    private boolean positionDirty;
+    private boolean writeScheduled;
+
+    PlaybackStateStore(@NonNull File directory) {
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        queueFile = new AtomicFile(new File(directory, QUEUE_FILE));
+        positionFile = new File(directory, POSITION_FILE);
+    }
+
+    // a queue equal to the last one saved isn't written again (ex. the same queue handed to a rebuilt player)
+    synchronized void saveQueue(@NonNull List<QueueItem> newQueue) {
+        if (newQueue.equals(queue)) {
+            return;
+        }
+        queue = new ArrayList<>(newQueue);
+        // unique across process restarts, so a position written for an older queue never matches a newer one
+        queueGeneration = Math.max(queueGeneration + 1, System.currentTimeMillis());
+        queueDirty = true;
+        // a new queue invalidates the old position
+        index = 0;
+        positionMs = 0;
+        positionDirty = true;
+        scheduleWrite();
+    }
+
+    synchronized void savePosition(int newIndex, long newPositionMs) {
+        if (newIndex == index && newPositionMs == positionMs) {
+            return;
+        }
+        index = newIndex;
+        positionMs = newPositionMs;
+        positionDirty = true;
+        scheduleWrite();
+    }
+
+    // reads back what was saved, or null when there's nothing (usable)
+    @WorkerThread
+    @Nullable
+    SavedState restore() {
+        List<QueueItem> savedQueue = new ArrayList<>();
+        long savedGeneration;
+        try (DataInputStream in = new DataInputStream(queueFile.openRead())) {
+            if (in.readInt() != QUEUE_FORMAT_VERSION) {
+                return null;
+            }
+            savedGeneration = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String mediaId = in.readUTF();
+                String uri = in.readUTF();
+                String title = in.readUTF();
+                savedQueue.add(new QueueItem(mediaId, uri, title.isEmpty() ? null : title));
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "couldn't read the saved queue", e);
+            return null;
+        }
+        if (savedQueue.isEmpty()) {
+            return null;
+        }
+
+        int savedIndex = 0;
+        long savedPositionMs = 0;
+        ByteBuffer record = readPositionRecord();
+        if (record != null && record.getLong(0) == savedGeneration) {
+            int recordIndex = record.getInt(8);
+            if (recordIndex >= 0 && recordIndex < savedQueue.size()) {
+                savedIndex = recordIndex;
+                savedPositionMs = Math.max(0, record.getLong(12));
+            }
+        }
+
+        synchronized (this) {
+            // so saving the same queue again (ex. restoring it into the player) doesn't rewrite it
+            if (queue.isEmpty()) {
+                queue = savedQueue;
+                queueGeneration = savedGeneration;
+                index = savedIndex;
+                positionMs = savedPositionMs;
+            }
+        }
+        return new SavedState(Collections.unmodifiableList(savedQueue), savedIndex, savedPositionMs);
+    }
+
+    // writes whatever is pending right away, and waits for it; for tests
+    @WorkerThread
+    void flush() {
+        try {
+            writer.submit(writeRunnable).get();
+        } catch (ExecutionException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // writes whatever is pending (without waiting for it), then stops the store's thread
+    void release() {
+        writer.execute(writeRunnable);
+        writer.shutdown();
+    }
+
+    // guarded by this
+    private void scheduleWrite() {
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        writer.schedule(writeRunnable, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void writePending() {
+        List<QueueItem> queueToWrite;
+        long generation;
+        int indexToWrite;
+        long positionToWrite;
+        boolean writeQueue;
+        boolean writePosition;
+        synchronized (this) {
+            writeScheduled = false;
+            writeQueue = queueDirty;
+            writePosition = positionDirty;
+            queueDirty = false;
+            positionDirty = false;
+            queueToWrite = queue;
+            generation = queueGeneration;
+            indexToWrite = index;
+            positionToWrite = positionMs;
+        }
+        // the queue goes first, so a position never points at a queue that isn't on disk yet
+        if (writeQueue) {
+            writeQueue(queueToWrite, generation);
+        }
+        if (writePosition) {
+            writePosition(generation, indexToWrite, positionToWrite);
+        }
+    }
+
+    private void writeQueue(List<QueueItem> items, long generation) {
+        FileOutputStream stream = null;
+        try {
+            stream = queueFile.startWrite();
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(QUEUE_FORMAT_VERSION);
+            out.writeLong(generation);
+            out.writeInt(items.size());
+            for (QueueItem item : items) {
+                out.writeUTF(item.mediaId);
+                out.writeUTF(item.uri);
+                out.writeUTF(item.title == null ? "" : item.title);
+            }
+            out.flush();
+            queueFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "couldn't save the queue", e);
+            if (stream != null) {
+                queueFile.failWrite(stream);
+            }
+        }
+    }
+
+    private void writePosition(long generation, int index, long positionMs) {
+        ByteBuffer record = ByteBuffer.allocate(POSITION_RECORD_BYTES);
+        record.putLong(generation).putInt(index).putLong(positionMs);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, POSITION_CHECKED_BYTES);
+        record.putInt((int) crc.getValue());
+        try (RandomAccessFile file = new RandomAccessFile(positionFile, "rw")) {
+            file.write(record.array());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "couldn't save the position", e);
+        }
+    }
+
+    @Nullable
+    private ByteBuffer readPositionRecord() {
+        byte[] bytes = new byte[POSITION_RECORD_BYTES];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(positionFile))) {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            // missing or short; either way there's no position to resume from
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, POSITION_CHECKED_BYTES);
+        return record.getInt(POSITION_CHECKED_BYTES) == (int) crc.getValue() ? record : null;
+    }
+}
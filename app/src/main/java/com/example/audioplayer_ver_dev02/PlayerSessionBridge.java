@@ -0,0 +1,150 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.SystemClock;
+import android.support.v4.media.MediaDescriptionCompat;
+import android.support.v4.media.MediaMetadataCompat;
+import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// mirrors the service's ExoPlayer into its MediaSessionCompat
+// every controller (MediaBrowsingClientActivity, the notification, the lock screen, Android Auto) only ever sees the session,
+// so whatever the player does has to be translated into PlaybackStateCompat and MediaMetadataCompat here
+// state and metadata go out through a PlaybackStatePublisher, which decides when they're worth a binder transaction
+class PlayerSessionBridge implements Player.Listener {
+
+    // actions that are always available once there is a player
+    private static final long BASE_ACTIONS = PlaybackStateCompat.ACTION_PLAY
+            | PlaybackStateCompat.ACTION_PAUSE
+            | PlaybackStateCompat.ACTION_PLAY_PAUSE
+            | PlaybackStateCompat.ACTION_STOP
+            | PlaybackStateCompat.ACTION_SEEK_TO
+            | PlaybackStateCompat.ACTION_SKIP_TO_QUEUE_ITEM
+            | PlaybackStateCompat.ACTION_PLAY_FROM_MEDIA_ID
+            | PlaybackStateCompat.ACTION_PLAY_FROM_SEARCH;
+
+    // looks up the metadata of the item the player moved to
+    interface MetadataProvider {
+        @Nullable
+        MediaMetadataCompat getMetadata(@NonNull String mediaId);
+    }
+
+    private final Player player;
+    private final MediaSessionCompat mediaSession;
+    private final PlaybackStateCompat.Builder playerStateBuilder;
+    private final MetadataProvider metadataProvider;
+    private final PlaybackStatePublisher playbackStatePublisher;
+
+    PlayerSessionBridge(@NonNull Player player, @NonNull MediaSessionCompat mediaSession,
+                        @NonNull PlaybackStateCompat.Builder playerStateBuilder, @NonNull MetadataProvider metadataProvider,
+                        @NonNull PlaybackStatePublisher playbackStatePublisher) {
+        this.player = player;
+        this.mediaSession = mediaSession;
+        this.playerStateBuilder = playerStateBuilder;
+        this.metadataProvider = metadataProvider;
+        this.playbackStatePublisher = playbackStatePublisher;
+    }
+
+    void attach() {
+        player.addListener(this);
+        playbackStatePublisher.invalidateState();
+    }
+
+    void detach() {
+        player.removeListener(this);
+    }
+
+    @Override
+    public void onEvents(@NonNull Player player, @NonNull Player.Events events) {
+        if (events.contains(Player.EVENT_TIMELINE_CHANGED)) {
+            publishQueue();
+        }
+        if (events.contains(Player.EVENT_MEDIA_ITEM_TRANSITION)) {
+            publishMetadata();
+        }
+        if (events.containsAny(
+                Player.EVENT_TIMELINE_CHANGED,
+                Player.EVENT_MEDIA_ITEM_TRANSITION,
+                Player.EVENT_PLAYBACK_STATE_CHANGED,
+                Player.EVENT_PLAY_WHEN_READY_CHANGED,
+                Player.EVENT_IS_PLAYING_CHANGED,
+                Player.EVENT_POSITION_DISCONTINUITY,
+                Player.EVENT_PLAYBACK_PARAMETERS_CHANGED,
+                Player.EVENT_PLAYER_ERROR)) {
+            playbackStatePublisher.invalidateState();
+        }
+    }
+
+    // called by the PlaybackStatePublisher when it's about to publish, so the snapshot is as fresh as possible
+    @NonNull
+    PlaybackStateCompat buildPlaybackState() {
+        long actions = BASE_ACTIONS;
+        if (player.hasNextMediaItem()) {
+            actions |= PlaybackStateCompat.ACTION_SKIP_TO_NEXT;
+        }
+        if (player.hasPreviousMediaItem()) {
+            actions |= PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS;
+        }
+        playerStateBuilder
+                .setActions(actions)
+                // queue item IDs are playlist indices, see publishQueue()
+                .setActiveQueueItemId(player.getMediaItemCount() == 0 ? MediaSessionCompat.QueueItem.UNKNOWN_ID : player.getCurrentMediaItemIndex())
+                // position + speed + timestamp lets controllers extrapolate the position themselves
+                .setState(sessionState(), player.getCurrentPosition(), player.getPlaybackParameters().speed, SystemClock.elapsedRealtime())
+                .setBufferedPosition(player.getBufferedPosition());
+        if (player.getPlayerError() != null) {
+            playerStateBuilder.setErrorMessage(PlaybackStateCompat.ERROR_CODE_UNKNOWN_ERROR, player.getPlayerError().getMessage());
+        } else {
+            playerStateBuilder.setErrorMessage(PlaybackStateCompat.ERROR_CODE_UNKNOWN_ERROR, null);
+        }
+        return playerStateBuilder.build();
+    }
+
+    // the session's queue is the player's playlist; each QueueItem's ID is its index in the playlist
+    private void publishQueue() {
+        int count = player.getMediaItemCount();
+        List<MediaSessionCompat.QueueItem> queue = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MediaItem mediaItem = player.getMediaItemAt(i);
+            MediaMetadataCompat metadata = metadataProvider.getMetadata(mediaItem.mediaId);
+            MediaDescriptionCompat description = metadata != null
+                    ? metadata.getDescription()
+                    : new MediaDescriptionCompat.Builder().setMediaId(mediaItem.mediaId).setTitle(mediaItem.mediaMetadata.title).build();
+            queue.add(new MediaSessionCompat.QueueItem(description, i));
+        }
+        mediaSession.setQueue(queue);
+    }
+
+    void publishMetadata() {
+        MediaItem mediaItem = player.getCurrentMediaItem();
+        if (mediaItem == null) {
+            return;
+        }
+        playbackStatePublisher.setMetadata(metadataProvider.getMetadata(mediaItem.mediaId));
+    }
+
+    // ExoPlayer's STATE_* + playWhenReady -> PlaybackStateCompat's STATE_*
+    private int sessionState() {
+        if (player.getPlayerError() != null) {
+            return PlaybackStateCompat.STATE_ERROR;
+        }
+        switch (player.getPlaybackState()) {
+            case Player.STATE_BUFFERING:
+                return player.getPlayWhenReady() ? PlaybackStateCompat.STATE_BUFFERING : PlaybackStateCompat.STATE_PAUSED;
+            case Player.STATE_READY:
+                return player.getPlayWhenReady() ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED;
+            case Player.STATE_ENDED:
+                return PlaybackStateCompat.STATE_STOPPED;
+            case Player.STATE_IDLE:
+            default:
+                return PlaybackStateCompat.STATE_NONE;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.SystemClock;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+// the playback position a client shows, worked out locally instead of asked for
+// every PlaybackStateCompat the session publishes carries a position, the (elapsedRealtime) time it was taken, and the speed;
+// between two of them, the position is that position plus the time since, times the speed, so no binder call is needed
+//
+// - only resyncs when it's handed a new state (from MediaControllerCompat.Callback.onPlaybackStateChanged())
+// - ticks on Choreographer frames, and only while playing AND started (the UI is visible); paused, it shows one position and sleeps
+// - the listener only hears about whole steps of resolutionMs, so a seek bar isn't re-laid out on every frame
+//
+// must be used on the main thread
+class PositionTicker implements Choreographer.FrameCallback {
+
+    interface Listener {
+        void onPositionChanged(long positionMs, long durationMs);
+    }
+
+    private final Listener listener;
+    private final long resolutionMs;
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    @Nullable
+    private PlaybackStateCompat playbackState;
+    private long durationMs;
+    private boolean started;
+    private boolean frameScheduled;
+    // what the listener was last told, in steps of resolutionMs
+    private long shownStep = -1;
+    private long shownDurationMs = -1;
+
+    PositionTicker(long resolutionMs, @NonNull Listener listener) {
+        this.resolutionMs = resolutionMs;
+        this.listener = listener;
+    }
+
+    void setPlaybackState(@Nullable PlaybackStateCompat playbackState) {
+        this.playbackState = playbackState;
+        update();
+    }
+
+    // from the current item's MediaMetadataCompat.METADATA_KEY_DURATION; 0 if unknown (ex. a live stream)
+    void setDuration(long durationMs) {
+        this.durationMs = Math.max(0, durationMs);
+        update();
+    }
+
+    // the user moved to positionMs; shown until the session publishes the state that follows the seek
+    void seekLocally(long positionMs) {
+        if (playbackState == null) {
+            return;
+        }
+        playbackState = new PlaybackStateCompat.Builder(playbackState)
+                .setState(playbackState.getState(), positionMs, playbackState.getPlaybackSpeed(), SystemClock.elapsedRealtime())
+                .build();
+        update();
+    }
+
+    @Nullable
+    PlaybackStateCompat getPlaybackState() {
+        return playbackState;
+    }
+
+    boolean isPlaying() {
+        return playbackState != null && playbackState.getState() == PlaybackStateCompat.STATE_PLAYING;
+    }
+
+    // the UI is visible
+    void start() {
+        started = true;
+        update();
+    }
+
+    void stop() {
+        started = false;
+        if (frameScheduled) {
+            choreographer.removeFrameCallback(this);
+            frameScheduled = false;
+        }
+    }
+
+    long getPositionMs() {
+        if (playbackState == null) {
+            return 0;
+        }
+        return extrapolate(playbackState.getPosition(), playbackState.getLastPositionUpdateTime(), advancingSpeed(playbackState),
+                SystemClock.elapsedRealtime(), durationMs);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        update();
+    }
+
+    // tells the listener if the shown step changed, and asks for another frame if the position is still moving
+    private void update() {
+        if (!started) {
+            return;
+        }
+        long positionMs = getPositionMs();
+        long step = positionMs / resolutionMs;
+        if (step != shownStep || durationMs != shownDurationMs) {
+            shownStep = step;
+            shownDurationMs = durationMs;
+            listener.onPositionChanged(positionMs, durationMs);
+        }
+        boolean moving = playbackState != null && advancingSpeed(playbackState) != 0f
+                && (durationMs == 0 || positionMs < durationMs);
+        if (moving && !frameScheduled) {
+            choreographer.postFrameCallback(this);
+            frameScheduled = true;
+        }
+    }
+
+    // the session keeps publishing the player's speed while paused or buffering; the position only moves while playing
+    private static float advancingSpeed(PlaybackStateCompat state) {
+        switch (state.getState()) {
+            case PlaybackStateCompat.STATE_PLAYING:
+            case PlaybackStateCompat.STATE_FAST_FORWARDING:
+            case PlaybackStateCompat.STATE_REWINDING:
+                return state.getPlaybackSpeed();
+            default:
+                return 0f;
+        }
+    }
+
+    // positionMs was current at updateTimeMs (elapsedRealtime; 0 or less if unknown); where is it at nowMs?
+    // clamped to [0, durationMs], or just to 0 if durationMs is 0 (unknown)
+    static long extrapolate(long positionMs, long updateTimeMs, float speed, long nowMs, long durationMs) {
+        long extrapolated = positionMs;
+        if (updateTimeMs > 0 && speed != 0f && nowMs > updateTimeMs) {
+            extrapolated += (long) ((nowMs - updateTimeMs) * (double) speed);
+        }
+        if (durationMs > 0) {
+            extrapolated = Math.min(extrapolated, durationMs);
+        }
+        return Math.max(0, extrapolated);
+    }
+}
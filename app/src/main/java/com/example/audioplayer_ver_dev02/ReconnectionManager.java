@@ -0,0 +1,200 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.v4.media.MediaBrowserCompat;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Random;
+
+// keeps a client connected to MediaBrowsingService while it's started, across service crashes and restarts
+// a MediaBrowserCompat that lost its connection doesn't come back by itself, so every attempt uses a new one
+//
+// - connection failed, connection suspended (the service died), or the session destroyed (the activity tells us):
+//      the current browser is dropped, and a new one connects after a jittered, exponentially growing delay (ReconnectionPolicy)
+// - the time from losing the connection to being connected again is logged, aggregated, and traced as an async section
+//      (StartupTracer.SECTION_PREFIX + "reconnect"), so it can be measured the same way as the startup phases
+//
+// must be used on the main thread
+class ReconnectionManager {
+
+    private static final String LOG_TAG = "MyReconnectionManager";
+
+    private static final String TRACE_SECTION = StartupTracer.SECTION_PREFIX + "reconnect";
+    private static final int TRACE_COOKIE = TRACE_SECTION.hashCode();
+
+    static final long BASE_DELAY_MS = 500;
+    static final long MAX_DELAY_MS = 30_000;
+
+    interface Listener {
+        // browser is connected; reconnected is true if it replaces a connection that was lost
+        void onConnected(@NonNull MediaBrowserCompat browser, boolean reconnected);
+
+        // the connection is gone; the UI keeps what it has until onConnected()
+        void onConnectionLost();
+    }
+
+    private final Context context;
+    private final ComponentName serviceComponent;
+    private final Listener listener;
+    private final ReconnectionPolicy policy = new ReconnectionPolicy(BASE_DELAY_MS, MAX_DELAY_MS, new Random());
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable connectRunnable = this::connectNow;
+
+    // the browser connecting or connected right now; null while waiting to retry, or stopped
+    @Nullable
+    private MediaBrowserCompat browser;
+    private boolean started;
+    // elapsedRealtime() when the connection was lost; 0 unless reconnecting
+    private long lostAtMs;
+
+    // reconnect latency
+    private int reconnectCount;
+    private long reconnectTotalMs;
+    private long reconnectMaxMs;
+    private long lastReconnectMs = -1;
+
+    ReconnectionManager(@NonNull Context context, @NonNull ComponentName serviceComponent, @NonNull Listener listener) {
+        this.context = context;
+        this.serviceComponent = serviceComponent;
+        this.listener = listener;
+    }
+
+    // ex. from onStart()
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        connectNow();
+    }
+
+    // ex. from onStop(); a reconnect that's still pending is abandoned (and not counted)
+    void stop() {
+        started = false;
+        handler.removeCallbacks(connectRunnable);
+        if (browser != null) {
+            browser.disconnect();
+            browser = null;
+        }
+        if (lostAtMs != 0) {
+            Trace.endAsyncSection(TRACE_SECTION, TRACE_COOKIE);
+            lostAtMs = 0;
+        }
+        policy.reset();
+    }
+
+    // the session went away while still connected (MediaControllerCompat.Callback.onSessionDestroyed())
+    void onSessionDestroyed() {
+        connectionLost();
+    }
+
+    // null unless connected (or connecting)
+    @Nullable
+    MediaBrowserCompat getBrowser() {
+        return browser;
+    }
+
+    int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    // -1 if there hasn't been a reconnect yet
+    long getLastReconnectLatencyMs() {
+        return lastReconnectMs;
+    }
+
+    long getMaxReconnectLatencyMs() {
+        return reconnectMaxMs;
+    }
+
+    long getAverageReconnectLatencyMs() {
+        return reconnectCount == 0 ? 0 : reconnectTotalMs / reconnectCount;
+    }
+
+    private void connectNow() {
+        if (!started) {
+            return;
+        }
+        AttemptCallback callback = new AttemptCallback();
+        browser = new MediaBrowserCompat(context, serviceComponent, callback, null);
+        callback.attemptBrowser = browser;
+        browser.connect();
+    }
+
+    private void connectionLost() {
+        if (browser != null) {
+            browser.disconnect();
+            browser = null;
+        }
+        if (lostAtMs == 0) {
+            lostAtMs = SystemClock.elapsedRealtime();
+            Trace.beginAsyncSection(TRACE_SECTION, TRACE_COOKIE);
+            listener.onConnectionLost();
+        }
+        scheduleRetry();
+    }
+
+    private void scheduleRetry() {
+        browser = null;
+        if (!started) {
+            return;
+        }
+        long delayMs = policy.nextDelayMs();
+        Log.d(LOG_TAG, "reconnecting in " + delayMs + " ms (attempt " + policy.getAttempts() + ")");
+        handler.removeCallbacks(connectRunnable);
+        handler.postDelayed(connectRunnable, delayMs);
+    }
+
+    private void connected(MediaBrowserCompat connectedBrowser) {
+        policy.reset();
+        boolean reconnected = lostAtMs != 0;
+        if (reconnected) {
+            long latencyMs = SystemClock.elapsedRealtime() - lostAtMs;
+            lostAtMs = 0;
+            Trace.endAsyncSection(TRACE_SECTION, TRACE_COOKIE);
+            reconnectCount++;
+            reconnectTotalMs += latencyMs;
+            reconnectMaxMs = Math.max(reconnectMaxMs, latencyMs);
+            lastReconnectMs = latencyMs;
+            Log.d(LOG_TAG, "reconnected in " + latencyMs + " ms (" + reconnectCount + " reconnects, avg "
+                    + getAverageReconnectLatencyMs() + " ms, max " + reconnectMaxMs + " ms)");
+        }
+        listener.onConnected(connectedBrowser, reconnected);
+    }
+
+    // one per browser; callbacks from a browser that has since been replaced are ignored
+    private class AttemptCallback extends MediaBrowserCompat.ConnectionCallback {
+        MediaBrowserCompat attemptBrowser;
+
+        @Override
+        public void onConnected() {
+            if (attemptBrowser == browser) {
+                connected(attemptBrowser);
+            }
+        }
+
+        @Override
+        public void onConnectionFailed() {
+            // ex. the service is still starting up again after a crash
+            if (attemptBrowser == browser) {
+                scheduleRetry();
+            }
+        }
+
+        @Override
+        public void onConnectionSuspended() {
+            // the service crashed (or was killed)
+            if (attemptBrowser == browser) {
+                connectionLost();
+            }
+        }
+    }
+}
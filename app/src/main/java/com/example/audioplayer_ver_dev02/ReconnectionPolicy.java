@@ -0,0 +1,46 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+
+import java.util.Random;
+
+// how long a client waits before each attempt to reconnect: exponential backoff with "equal jitter"
+// the n-th delay is half of min(maxDelayMs, baseDelayMs * 2^n), plus a random amount up to the other half,
+// so a crashed service isn't hit by every client at the same moment, but no client retries immediately either
+//
+// plain Java (the randomness is passed in), so it can be tested on the JVM; not thread safe
+class ReconnectionPolicy {
+
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Random random;
+    private int attempts;
+
+    ReconnectionPolicy(long baseDelayMs, long maxDelayMs, @NonNull Random random) {
+        if (baseDelayMs <= 0 || maxDelayMs < baseDelayMs) {
+            throw new IllegalArgumentException("need 0 < baseDelayMs <= maxDelayMs");
+        }
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.random = random;
+    }
+
+    // the delay before the next attempt; every call counts as an attempt
+    long nextDelayMs() {
+        // (capping the shift keeps it from overflowing; the cap on the delay is reached long before that)
+        long ceilingMs = Math.min(maxDelayMs, baseDelayMs << Math.min(attempts, 30));
+        attempts++;
+        long halfMs = ceilingMs / 2;
+        return halfMs + (long) (random.nextDouble() * (ceilingMs - halfMs));
+    }
+
+    // attempts made since the last reset()
+    int getAttempts() {
+        return attempts;
+    }
+
+    // connected; the next loss starts from the base delay again
+    void reset() {
+        attempts = 0;
+    }
+}
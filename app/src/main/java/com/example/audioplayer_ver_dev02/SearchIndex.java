@@ -0,0 +1,374 @@
+package com.example.audioplayer_ver_dev02;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// in-memory inverted index over the title, artist and album of every track, for onSearch() and onPlayFromSearch()
+//
+// - text is normalized (accents stripped, lowercased) and split into tokens
+// - tokens live in a sorted map, so a query token matches every indexed token it's a prefix of with one range lookup
+//      ("beat" finds "beatles"), without looking at any track that doesn't match
+//      single characters only match whole tokens; as prefixes they'd match most of the library and tell nothing apart
+// - every query token must match (AND); a track's score adds up, per query token, the best field it matched in
+//      (title > artist > album), doubled for a whole-token match; ties are broken by title
+// - put()/remove() update one track at a time, so library rescans don't rebuild the whole index
+//
+// tracks are numbered (slots), and a token's postings are packed ints (slot << FIELD_BITS | fields) in one array,
+// so a query touches primitive arrays only: no boxing, no per-posting objects, even when a short prefix matches most of the library
+//
+// plain Java (no Android types), so it can be tested and benchmarked on the JVM
+// thread-safe: updates come from the catalog's build thread, searches from the main thread
+class SearchIndex {
+
+    // field bits of a posting
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_ARTIST = 1 << 1;
+    private static final int FIELD_ALBUM = 1 << 2;
+    private static final int FIELD_BITS = 3;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+    private static final int MIN_PREFIX_LENGTH = 2;
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // token -> packed postings of the tracks it appears in
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    // mediaId -> slot
+    private final Map<String, Integer> slots = new HashMap<>();
+    // per slot; null when the slot is free
+    private Document[] documents = new Document[64];
+    // per slot, the first two chars of the sort key packed in an int; ties are mostly settled here, without touching the Document
+    private int[] sortPrefixes = new int[64];
+    private int slotCount;
+    // freed slots, reused before slotCount grows
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static class Document {
+        final String mediaId;
+        final String sortKey;
+        final String[] tokens;
+
+        Document(String mediaId, String sortKey, String[] tokens) {
+            this.mediaId = mediaId;
+            this.sortKey = sortKey;
+            this.tokens = tokens;
+        }
+    }
+
+    // a growable int array; order doesn't matter, so removal swaps in the last entry
+    private static class Postings {
+        int[] entries = new int[4];
+        int size;
+
+        void add(int entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+
+        void removeSlot(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (entries[i] >>> FIELD_BITS == slot) {
+                    entries[i] = entries[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    // adds the track, or replaces what was indexed for it before; null fields are fine
+    void put(String mediaId, String title, String artist, String album) {
+        Map<String, Integer> tokens = new HashMap<>();
+        addTokens(tokens, title, FIELD_TITLE);
+        addTokens(tokens, artist, FIELD_ARTIST);
+        addTokens(tokens, album, FIELD_ALBUM);
+        Document document = new Document(mediaId, title == null ? "" : normalize(title), tokens.keySet().toArray(new String[0]));
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(mediaId);
+            int slot = allocateSlot();
+            documents[slot] = document;
+            sortPrefixes[slot] = sortPrefix(document.sortKey);
+            slots.put(mediaId, slot);
+            for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+                Postings tokenPostings = postings.get(token.getKey());
+                if (tokenPostings == null) {
+                    tokenPostings = new Postings();
+                    postings.put(token.getKey(), tokenPostings);
+                }
+                tokenPostings.add(slot << FIELD_BITS | token.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String mediaId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(mediaId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            slots.clear();
+            Arrays.fill(documents, null);
+            slotCount = 0;
+            freeSlotCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return slots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // mediaIds of the best matches, best first; empty for a query without any words
+    List<String> search(String query, int limit) {
+        Set<String> queryTokens = new LinkedHashSet<>(tokenize(query));
+        if (queryTokens.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        lock.readLock().lock();
+        try {
+            // scores[slot] > 0 means the track matched every query token so far
+            int[] scores = new int[slotCount];
+            // the current query token's best score per slot, and which slots it touched (so it can be reset cheaply)
+            int[] tokenScores = new int[slotCount];
+            int[] touched = new int[16];
+            int[] candidates = null;
+            int candidateCount = 0;
+
+            for (String queryToken : queryTokens) {
+                int touchedCount = 0;
+                // every indexed token that starts with queryToken sorts between queryToken and queryToken + Character.MAX_VALUE
+                Map<String, Postings> matches = queryToken.length() < MIN_PREFIX_LENGTH
+                        ? postings.subMap(queryToken, true, queryToken, true)
+                        : postings.subMap(queryToken, true, queryToken + Character.MAX_VALUE, false);
+                for (Map.Entry<String, Postings> entry : matches.entrySet()) {
+                    int exactBonus = entry.getKey().length() == queryToken.length() ? 2 : 1;
+                    Postings tokenPostings = entry.getValue();
+                    int[] entries = tokenPostings.entries;
+                    for (int i = 0; i < tokenPostings.size; i++) {
+                        int slot = entries[i] >>> FIELD_BITS;
+                        // AND: only tracks that matched every earlier query token can still make it
+                        if (candidates != null && scores[slot] == 0) {
+                            continue;
+                        }
+                        int score = fieldWeight(entries[i] & FIELD_MASK) * exactBonus;
+                        if (tokenScores[slot] == 0) {
+                            if (touchedCount == touched.length) {
+                                touched = Arrays.copyOf(touched, touchedCount * 2);
+                            }
+                            touched[touchedCount++] = slot;
+                        }
+                        if (score > tokenScores[slot]) {
+                            tokenScores[slot] = score;
+                        }
+                    }
+                }
+
+                if (candidates != null) {
+                    // tracks that didn't match this token drop out
+                    for (int i = 0; i < candidateCount; i++) {
+                        if (tokenScores[candidates[i]] == 0) {
+                            scores[candidates[i]] = 0;
+                        }
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int slot = touched[i];
+                    scores[slot] += tokenScores[slot];
+                    tokenScores[slot] = 0;
+                }
+                candidates = Arrays.copyOf(touched, touchedCount);
+                candidateCount = touchedCount;
+                if (candidateCount == 0) {
+                    return Collections.emptyList();
+                }
+            }
+
+            return topMatches(scores, candidates, candidateCount, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // keeps only the best "limit" matches while going through them (a bounded min-heap), instead of sorting all of them
+    private List<String> topMatches(int[] scores, int[] candidates, int candidateCount, int limit) {
+        int[] heap = new int[Math.min(limit, candidateCount)];
+        int heapSize = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int slot = candidates[i];
+            if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                siftUp(heap, heapSize++, scores);
+            } else if (isWorse(heap[0], slot, scores)) {
+                // better than the worst of the best so far
+                heap[0] = slot;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        String[] mediaIds = new String[heapSize];
+        while (heapSize > 0) {
+            mediaIds[heapSize - 1] = documents[heap[0]].mediaId;
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, scores);
+        }
+        return Arrays.asList(mediaIds);
+    }
+
+    private boolean isWorse(int slot, int otherSlot, int[] scores) {
+        if (scores[slot] != scores[otherSlot]) {
+            return scores[slot] < scores[otherSlot];
+        }
+        if (sortPrefixes[slot] != sortPrefixes[otherSlot]) {
+            // unsigned, since a char in the high bits can make the packed int negative
+            return Integer.compareUnsigned(sortPrefixes[slot], sortPrefixes[otherSlot]) > 0;
+        }
+        return documents[slot].sortKey.compareTo(documents[otherSlot].sortKey) > 0;
+    }
+
+    private void siftUp(int[] heap, int index, int[] scores) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (!isWorse(heap[index], heap[parent], scores)) {
+                return;
+            }
+            swap(heap, index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int size, int[] scores) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && isWorse(heap[left], heap[worst], scores)) {
+                worst = left;
+            }
+            if (right < size && isWorse(heap[right], heap[worst], scores)) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heap, index, worst);
+            index = worst;
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == documents.length) {
+            documents = Arrays.copyOf(documents, slotCount * 2);
+            sortPrefixes = Arrays.copyOf(sortPrefixes, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void removeLocked(String mediaId) {
+        Integer slot = slots.remove(mediaId);
+        if (slot == null) {
+            return;
+        }
+        for (String token : documents[slot].tokens) {
+            Postings tokenPostings = postings.get(token);
+            if (tokenPostings != null) {
+                tokenPostings.removeSlot(slot);
+                if (tokenPostings.size == 0) {
+                    postings.remove(token);
+                }
+            }
+        }
+        documents[slot] = null;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    // orders like String.compareTo() as far as the first two chars go
+    private static int sortPrefix(String sortKey) {
+        int first = sortKey.length() > 0 ? sortKey.charAt(0) : 0;
+        int second = sortKey.length() > 1 ? sortKey.charAt(1) : 0;
+        return first << 16 | second;
+    }
+
+    // a track matching in its title is a better result than one matching in its album
+    private static int fieldWeight(int fields) {
+        if ((fields & FIELD_TITLE) != 0) {
+            return 3;
+        }
+        if ((fields & FIELD_ARTIST) != 0) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static void addTokens(Map<String, Integer> tokens, String text, int field) {
+        for (String token : tokenize(text)) {
+            Integer fields = tokens.get(token);
+            tokens.put(token, fields == null ? field : fields | field);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // "Beyoncé" and "beyonce" are the same word to someone typing (or speaking) a query
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return COMBINING_MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.audioplayer_ver_dev02;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// times the phases of the service's cold start (and the first play), once each
+// every phase is also an async trace section named SECTION_PREFIX + phase, so it shows up in Perfetto/systrace
+// and can be measured by the macrobenchmark module (TraceSectionMetric), without the app having to report anything itself
+//
+// phases may begin on one thread and end on another; only the first begin()/end() pair of a phase counts
+class StartupTracer {
+
+    private static final String LOG_TAG = "MyStartupTracer";
+
+    static final String SECTION_PREFIX = "AudioPlayer:";
+
+    // MediaBrowsingService.onCreate() itself
+    static final String PHASE_CREATE = "create";
+    // onCreate() -> the first onGetRoot() returned
+    static final String PHASE_FIRST_ROOT = "first_root";
+    // onCreate() -> the first onLoadChildren() result was sent
+    static final String PHASE_FIRST_CHILDREN = "first_children";
+    // the catalog's first build (on its build thread)
+    static final String PHASE_CATALOG = "catalog";
+    // opening the on-disk media cache (on the startup thread)
+    static final String PHASE_MEDIA_CACHE = "media_cache";
+    // building the player (on the main thread, when it's first needed or the main thread is idle)
+    static final String PHASE_PLAYER = "player";
+    // the first onPlay() -> audio actually advancing
+    static final String PHASE_PLAY_TO_AUDIO = "play_to_audio";
+
+    private final Map<String, Long> startNs = new ConcurrentHashMap<>();
+    private final Map<String, Long> durationMs = new ConcurrentHashMap<>();
+
+    void begin(@NonNull String phase) {
+        if (durationMs.containsKey(phase) || startNs.putIfAbsent(phase, SystemClock.elapsedRealtimeNanos()) != null) {
+            return;
+        }
+        Trace.beginAsyncSection(SECTION_PREFIX + phase, phase.hashCode());
+    }
+
+    void end(@NonNull String phase) {
+        Long phaseStartNs = startNs.remove(phase);
+        if (phaseStartNs == null) {
+            return;
+        }
+        long elapsedMs = (SystemClock.elapsedRealtimeNanos() - phaseStartNs) / 1_000_000;
+        durationMs.put(phase, elapsedMs);
+        Trace.endAsyncSection(SECTION_PREFIX + phase, phase.hashCode());
+        Log.d(LOG_TAG, phase + " took " + elapsedMs + " ms");
+    }
+
+    // phase -> duration in ms, for every phase that finished
+    @NonNull
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        for (Map.Entry<String, Long> entry : durationMs.entrySet()) {
+            bundle.putLong(entry.getKey(), entry.getValue());
+        }
+        return bundle;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.audioplayer_ver_dev02;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+// which parent IDs some client is subscribed to right now, so a catalog change only notifies subtrees someone is looking at
+// clients are whatever identifies one (MediaSessionManager.RemoteUserInfo in the service); each of their subscriptions is counted
+//
+// MediaBrowserServiceCompat doesn't say when a client disconnects or dies (its subscriptions go with it, without an
+// onUnsubscribe()), so the service calls connected() from onGetRoot(): a client that connects again starts over, and a
+// client's stale entries are dropped instead of piling up. a client that never comes back leaves its entries behind, which
+// only costs notifications nobody receives
+class SubscriptionTracker {
+
+    // parent ID -> client -> number of its subscriptions to that parent; guarded by this
+    private final Map<String, Map<Object, Integer>> subscriptions = new HashMap<>();
+
+    synchronized void subscribed(@NonNull String parentId, @NonNull Object client) {
+        Map<Object, Integer> clients = subscriptions.get(parentId);
+        if (clients == null) {
+            clients = new HashMap<>();
+            subscriptions.put(parentId, clients);
+        }
+        Integer count = clients.get(client);
+        clients.put(client, count == null ? 1 : count + 1);
+    }
+
+    synchronized void unsubscribed(@NonNull String parentId, @NonNull Object client) {
+        Map<Object, Integer> clients = subscriptions.get(parentId);
+        if (clients == null) {
+            return;
+        }
+        Integer count = clients.get(client);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            clients.put(client, count - 1);
+            return;
+        }
+        clients.remove(client);
+        if (clients.isEmpty()) {
+            subscriptions.remove(parentId);
+        }
+    }
+
+    // client (re)connected: whatever it was subscribed to belonged to its previous connection, which is gone
+    synchronized void connected(@NonNull Object client) {
+        Iterator<Map<Object, Integer>> iterator = subscriptions.values().iterator();
+        while (iterator.hasNext()) {
+            Map<Object, Integer> clients = iterator.next();
+            clients.remove(client);
+            if (clients.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized boolean isSubscribed(@NonNull String parentId) {
+        return subscriptions.containsKey(parentId);
+    }
+
+    @NonNull
+    synchronized List<String> subscribedParents() {
+        return new ArrayList<>(subscriptions.keySet());
+    }
+
+    synchronized int clientCount(@NonNull String parentId) {
+        Map<Object, Integer> clients = subscriptions.get(parentId);
+        return clients == null ? 0 : clients.size();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.audioplayer_ver_dev02;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal HTTP/1.1 stand-in server on the loopback interface, serving one in-memory file.
+ * Understands single "Range: bytes=a-b" / "bytes=a-" requests, and counts requests and body bytes served,
+ * so tests can tell what was read from a cache and what went over the "network".
+ * Shared by local unit tests and instrumented tests.
+ */
+public class LocalHttpServer implements Closeable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final byte[] body;
+    private final String contentType;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicLong bytesServed = new AtomicLong();
+    // bytes/second the body is written at, or 0 for as fast as possible
+    private volatile long throttleBytesPerSecond;
+    // a connection is closed after this many body bytes, to simulate a dropped transfer; -1 to never drop
+    private volatile long dropAfterBytes = -1;
+    // sent with every 200 and 206 response; each one ends with a line break
+    private volatile String extraHeaders = "";
+
+    public LocalHttpServer(byte[] body, String contentType) throws IOException {
+        this.body = body;
+        this.contentType = contentType;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptLoop);
+    }
+
+    public String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    public void setThrottleBytesPerSecond(long bytesPerSecond) {
+        throttleBytesPerSecond = bytesPerSecond;
+    }
+
+    public void setDropAfterBytes(long bytes) {
+        dropAfterBytes = bytes;
+    }
+
+    // name: value, without the line break
+    public void addHeader(String header) {
+        extraHeaders += header + "\r\n";
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> handle(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+            String requestLine = reader.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            requestCount.incrementAndGet();
+            boolean head = requestLine.startsWith("HEAD ");
+            String range = null;
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Range")) {
+                    range = line.substring(colon + 1).trim();
+                }
+            }
+
+            int start = 0;
+            int end = body.length - 1;
+            String status = "200 OK";
+            Matcher matcher = range == null ? null : RANGE.matcher(range);
+            if (matcher != null && matcher.matches()) {
+                start = Integer.parseInt(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Integer.parseInt(matcher.group(2)));
+                }
+                if (start > end) {
+                    writeHead(s.getOutputStream(), "416 Range Not Satisfiable", "Content-Range: bytes */" + body.length + "\r\nContent-Length: 0\r\n");
+                    return;
+                }
+                status = "206 Partial Content";
+            }
+
+            int length = end - start + 1;
+            String headers = "Content-Type: " + contentType + "\r\n"
+                    + "Content-Length: " + length + "\r\n"
+                    + "Accept-Ranges: bytes\r\n"
+                    + extraHeaders
+                    + (status.startsWith("206") ? "Content-Range: bytes " + start + "-" + end + "/" + body.length + "\r\n" : "");
+            OutputStream outputStream = s.getOutputStream();
+            writeHead(outputStream, status, headers);
+            if (!head) {
+                writeBody(outputStream, start, length);
+            }
+        } catch (IOException | InterruptedException e) {
+            // client went away, or the server is closing; nothing to do
+        }
+    }
+
+    private void writeHead(OutputStream outputStream, String status, String headers) throws IOException {
+        outputStream.write(("HTTP/1.1 " + status + "\r\n" + headers + "Connection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        outputStream.flush();
+    }
+
+    private void writeBody(OutputStream outputStream, int start, int length) throws IOException, InterruptedException {
+        int chunkSize = 16 * 1024;
+        long written = 0;
+        while (written < length) {
+            long drop = dropAfterBytes;
+            int chunk = (int) Math.min(chunkSize, length - written);
+            if (drop >= 0 && written + chunk > drop) {
+                chunk = (int) (drop - written);
+                outputStream.write(body, (int) (start + written), chunk);
+                bytesServed.addAndGet(chunk);
+                // hang up mid-transfer
+                return;
+            }
+            outputStream.write(body, (int) (start + written), chunk);
+            written += chunk;
+            bytesServed.addAndGet(chunk);
+            long throttle = throttleBytesPerSecond;
+            if (throttle > 0) {
+                Thread.sleep(chunk * 1000L / throttle);
+            }
+        }
+        outputStream.flush();
+    }
+}
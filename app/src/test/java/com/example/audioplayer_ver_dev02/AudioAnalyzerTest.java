@@ -0,0 +1,140 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for AudioAnalyzer, fed with generated 48 kHz stereo PCM.
+ */
+public class AudioAnalyzerTest {
+
+    private static final int SAMPLE_RATE = 48_000;
+    private static final int CHANNELS = 2;
+
+    private final AudioAnalyzer analyzer = new AudioAnalyzer();
+    private final AudioAnalyzer.Frame lastFrame = new AudioAnalyzer.Frame();
+    private int frames;
+
+    @Before
+    public void setUp() {
+        analyzer.setSampleRate(SAMPLE_RATE);
+        analyzer.addListener(frame -> {
+            frames++;
+            lastFrame.rmsDb = frame.rmsDb;
+            lastFrame.peakDb = frame.peakDb;
+            lastFrame.binHz = frame.binHz;
+            lastFrame.droppedSamples = frame.droppedSamples;
+            System.arraycopy(frame.spectrumDb, 0, lastFrame.spectrumDb, 0, frame.spectrumDb.length);
+        });
+    }
+
+    @Test
+    public void halfScaleSine_hasItsLevelsAndItsSpectralPeak() {
+        analyzer.writePcm16(sinePcm16(1000, 0.5, AudioAnalyzer.FFT_SIZE), CHANNELS);
+
+        assertTrue(analyzer.analyze());
+
+        // a sine's RMS is its amplitude / sqrt(2)
+        assertEquals(-9.03, lastFrame.rmsDb, 0.1);
+        assertEquals(-6.02, lastFrame.peakDb, 0.1);
+        assertEquals(SAMPLE_RATE / (float) AudioAnalyzer.FFT_SIZE, lastFrame.binHz, 0.001);
+        int peakBin = 0;
+        for (int i = 1; i < lastFrame.spectrumDb.length; i++) {
+            if (lastFrame.spectrumDb[i] > lastFrame.spectrumDb[peakBin]) {
+                peakBin = i;
+            }
+        }
+        assertEquals(1000, peakBin * lastFrame.binHz, lastFrame.binHz);
+        // well above everything far from it
+        assertTrue(lastFrame.spectrumDb[peakBin] - lastFrame.spectrumDb[peakBin * 4] > 40);
+    }
+
+    @Test
+    public void lessThanAWindow_isNotAnalyzedYet() {
+        analyzer.writePcm16(sinePcm16(1000, 0.5, AudioAnalyzer.FFT_SIZE - 1), CHANNELS);
+
+        assertFalse(analyzer.analyze());
+        assertEquals(0, frames);
+    }
+
+    @Test
+    public void silence_isAtTheFloor() {
+        analyzer.writePcm16(pcm16(new short[AudioAnalyzer.FFT_SIZE * CHANNELS]), CHANNELS);
+
+        assertTrue(analyzer.analyze());
+
+        assertEquals(AudioAnalyzer.MIN_DB, lastFrame.rmsDb, 0f);
+        assertEquals(AudioAnalyzer.MIN_DB, lastFrame.peakDb, 0f);
+    }
+
+    @Test
+    public void fallingBehind_dropsSamplesInsteadOfBlockingTheWriter() {
+        // three times what the ring holds, without any analysis in between
+        for (int i = 0; i < 3 * AudioAnalyzer.RING_SIZE / AudioAnalyzer.FFT_SIZE; i++) {
+            analyzer.writePcm16(sinePcm16(1000, 0.5, AudioAnalyzer.FFT_SIZE), CHANNELS);
+        }
+
+        assertTrue(analyzer.analyze());
+
+        assertEquals(3 * AudioAnalyzer.RING_SIZE - (AudioAnalyzer.RING_SIZE - AudioAnalyzer.FFT_SIZE), lastFrame.droppedSamples);
+        // what's left is still analyzed correctly
+        assertEquals(-9.03, lastFrame.rmsDb, 0.1);
+        assertFalse(analyzer.analyze());
+    }
+
+    @Test
+    public void floatPcm_isAnalyzedLikePcm16() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(AudioAnalyzer.FFT_SIZE * CHANNELS * 4).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < AudioAnalyzer.FFT_SIZE; i++) {
+            float sample = (float) (0.5 * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+            buffer.putFloat(sample).putFloat(sample);
+        }
+        buffer.flip();
+
+        analyzer.writeFloat(buffer, CHANNELS);
+
+        assertTrue(analyzer.analyze());
+        assertEquals(-9.03, lastFrame.rmsDb, 0.1);
+        // the writer's buffer is left as it was
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void analysisThread_wakesUpForNewAudio() throws InterruptedException {
+        CountDownLatch analyzed = new CountDownLatch(1);
+        analyzer.addListener(frame -> analyzed.countDown());
+        analyzer.start();
+        try {
+            // give it time to go idle first
+            Thread.sleep(50);
+            analyzer.writePcm16(sinePcm16(1000, 0.5, AudioAnalyzer.FFT_SIZE), CHANNELS);
+
+            assertTrue(analyzed.await(5, TimeUnit.SECONDS));
+        } finally {
+            analyzer.release();
+        }
+    }
+
+    private static ByteBuffer sinePcm16(double frequencyHz, double amplitude, int frameCount) {
+        short[] samples = new short[frameCount * CHANNELS];
+        for (int i = 0; i < frameCount; i++) {
+            short sample = (short) Math.round(amplitude * 32767 * Math.sin(2 * Math.PI * frequencyHz * i / SAMPLE_RATE));
+            samples[2 * i] = sample;
+            samples[2 * i + 1] = sample;
+        }
+        return pcm16(samples);
+    }
+
+    private static ByteBuffer pcm16(short[] samples) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(samples.length * 2).order(ByteOrder.nativeOrder());
+        buffer.asShortBuffer().put(samples);
+        return buffer;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for BrowsePages.
+ */
+public class BrowsePagesTest {
+
+    private static final int PAGE_SIZE = 3;
+    private static final int PREFETCH_DISTANCE = 1;
+
+    private final BrowsePages<String> pages = new BrowsePages<>(PAGE_SIZE);
+
+    @Test
+    public void nextPage_isRequestedNearTheEnd_onceAtATime() {
+        assertEquals(0, pages.requestPageFor(0, PREFETCH_DISTANCE));
+        // page 0 hasn't arrived yet
+        assertEquals(-1, pages.requestPageFor(0, PREFETCH_DISTANCE));
+
+        pages.onPageLoaded(0, items(0, 3));
+        // far enough from the end
+        assertEquals(-1, pages.requestPageFor(0, PREFETCH_DISTANCE));
+        assertEquals(1, pages.requestPageFor(2, PREFETCH_DISTANCE));
+        assertEquals(-1, pages.requestPageFor(2, PREFETCH_DISTANCE));
+    }
+
+    @Test
+    public void shortPage_isTheLast() {
+        pages.requestPageFor(0, PREFETCH_DISTANCE);
+        pages.onPageLoaded(0, items(0, 3));
+        pages.requestPageFor(2, PREFETCH_DISTANCE);
+        pages.onPageLoaded(1, items(3, 5));
+
+        assertTrue(pages.isEndReached());
+        assertEquals(-1, pages.requestPageFor(4, PREFETCH_DISTANCE));
+        assertEquals(items(0, 5), pages.snapshot());
+    }
+
+    @Test
+    public void redeliveredPage_replacesItsItemsInPlace() {
+        loadTwoFullPages();
+
+        // ex. after notifyChildrenChanged()
+        List<String> changed = new ArrayList<>(items(0, 3));
+        changed.set(1, "changed");
+        assertEquals(2, pages.onPageLoaded(0, changed));
+
+        assertEquals(Arrays.asList("0", "changed", "2", "3", "4", "5"), pages.snapshot());
+    }
+
+    @Test
+    public void shrunkNode_dropsThePagesPastItsNewEnd() {
+        loadTwoFullPages();
+
+        assertEquals(1, pages.onPageLoaded(0, items(0, 2)));
+
+        assertEquals(1, pages.pageCount());
+        assertEquals(items(0, 2), pages.snapshot());
+        // a late answer for a dropped page changes nothing
+        pages.onPageLoaded(1, items(3, 6));
+        assertEquals(items(0, 2), pages.snapshot());
+    }
+
+    @Test
+    public void lastPageFillingUp_allowsMorePages() {
+        pages.requestPageFor(0, PREFETCH_DISTANCE);
+        pages.onPageLoaded(0, items(0, 2));
+        assertTrue(pages.isEndReached());
+
+        pages.onPageLoaded(0, items(0, 3));
+
+        assertFalse(pages.isEndReached());
+        assertEquals(1, pages.requestPageFor(2, PREFETCH_DISTANCE));
+    }
+
+    @Test
+    public void failedPage_canBeRequestedAgain() {
+        pages.requestPageFor(0, PREFETCH_DISTANCE);
+        pages.onPageFailed(0);
+
+        assertEquals(0, pages.pageCount());
+        assertEquals(0, pages.requestPageFor(0, PREFETCH_DISTANCE));
+    }
+
+    private void loadTwoFullPages() {
+        pages.requestPageFor(0, PREFETCH_DISTANCE);
+        pages.onPageLoaded(0, items(0, 3));
+        pages.requestPageFor(2, PREFETCH_DISTANCE);
+        pages.onPageLoaded(1, items(3, 6));
+    }
+
+    private static List<String> items(int from, int to) {
+        List<String> items = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            items.add(String.valueOf(i));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for OfflineDownloader and DownloadIndex, against LocalHttpServer.
+ */
+public class OfflineDownloaderTest {
+
+    private static final String MEDIA_ID = "track:http://example.com/one.mp3";
+
+    private final byte[] body = new byte[300 * 1024];
+    private LocalHttpServer server;
+    private File directory;
+    private RecordingListener listener;
+    private OfflineDownloader downloader;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(body);
+        server = new LocalHttpServer(body, "audio/mpeg");
+        directory = Files.createTempDirectory("downloads").toFile();
+        listener = new RecordingListener();
+        downloader = new OfflineDownloader(directory, listener);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        downloader.release();
+        server.close();
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void download_isVerifiedIndexedAndKept() throws Exception {
+        assertTrue(downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), sha256Hex(body)));
+        // already on its way
+        assertFalse(downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null));
+
+        File file = listener.await(MEDIA_ID);
+
+        assertNotNull(file);
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+        DownloadIndex.Entry entry = downloader.getIndex().get(MEDIA_ID);
+        assertNotNull(entry);
+        assertEquals(sha256Hex(body), entry.sha256);
+        assertEquals(body.length, entry.length);
+        // already downloaded
+        assertFalse(downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null));
+
+        // a new process sees the same index, and serves the untouched file without hashing it
+        OfflineDownloader nextProcess = new OfflineDownloader(directory, listener);
+        assertEquals(file, nextProcess.getDownloadedFile(MEDIA_ID));
+        OfflineDownloader.Verification verification = nextProcess.verifyDownloads();
+        assertTrue(verification.verified.isEmpty());
+        assertTrue(verification.removed.isEmpty());
+    }
+
+    @Test
+    public void modifiedDownload_isServedOnceHashed() throws Exception {
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null);
+        File file = listener.await(MEDIA_ID);
+        // same bytes, but touched since it was indexed
+        assertTrue(file.setLastModified(file.lastModified() - 10_000));
+
+        OfflineDownloader nextProcess = new OfflineDownloader(directory, listener);
+        assertNull(nextProcess.getDownloadedFile(MEDIA_ID));
+        assertEquals(Collections.singletonList(MEDIA_ID), nextProcess.verifyDownloads().verified);
+        assertEquals(file, nextProcess.getDownloadedFile(MEDIA_ID));
+
+        // its new modification time was recorded, so the process after that doesn't hash it again
+        OfflineDownloader processAfter = new OfflineDownloader(directory, listener);
+        assertEquals(file, processAfter.getDownloadedFile(MEDIA_ID));
+    }
+
+    @Test
+    public void corruptedDownload_isRemovedWhenVerified() throws Exception {
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null);
+        File file = listener.await(MEDIA_ID);
+        // same length, one byte flipped
+        byte[] corrupted = Files.readAllBytes(file.toPath());
+        corrupted[corrupted.length / 2]++;
+        long lastModified = file.lastModified();
+        Files.write(file.toPath(), corrupted);
+        // on a coarse-grained file system the write may not move the modification time
+        assertTrue(file.setLastModified(lastModified - 10_000));
+
+        OfflineDownloader nextProcess = new OfflineDownloader(directory, listener);
+        assertNull(nextProcess.getDownloadedFile(MEDIA_ID));
+        assertEquals(Collections.singletonList(MEDIA_ID), nextProcess.verifyDownloads().removed);
+
+        assertNull(nextProcess.getDownloadedFile(MEDIA_ID));
+        assertFalse(file.exists());
+        assertNull(new DownloadIndex(directory).get(MEDIA_ID));
+    }
+
+    @Test
+    public void truncatedDownload_isNeverServed() throws Exception {
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null);
+        File file = listener.await(MEDIA_ID);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(body, 0, body.length / 2);
+        }
+
+        OfflineDownloader nextProcess = new OfflineDownloader(directory, listener);
+        nextProcess.verifyDownloads();
+
+        assertNull(nextProcess.getDownloadedFile(MEDIA_ID));
+        assertFalse(nextProcess.getIndex().contains(MEDIA_ID));
+        // and it can be downloaded again
+        listener.finished.remove(MEDIA_ID);
+        assertTrue(nextProcess.enqueue(MEDIA_ID, server.url("/one.mp3"), sha256Hex(body)));
+        assertArrayEquals(body, Files.readAllBytes(listener.await(MEDIA_ID).toPath()));
+        nextProcess.release();
+    }
+
+    @Test
+    public void droppedConnections_areResumedWithoutRefetching() throws Exception {
+        // every connection hangs up after 100 KiB
+        server.setDropAfterBytes(100 * 1024);
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), sha256Hex(body));
+
+        File file = listener.await(MEDIA_ID);
+
+        assertNull(listener.errors.get(MEDIA_ID));
+        assertNotNull(file);
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+        assertEquals(3, server.getRequestCount());
+        assertEquals(body.length, server.getBytesServed());
+    }
+
+    @Test
+    public void partialFileFromAnEarlierProcess_isResumed() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(new File(directory, OfflineDownloader.fileNameFor(MEDIA_ID) + ".part"))) {
+            out.write(body, 0, 200 * 1024);
+        }
+
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), sha256Hex(body));
+        File file = listener.await(MEDIA_ID);
+
+        assertNotNull(file);
+        assertArrayEquals(body, Files.readAllBytes(file.toPath()));
+        assertEquals(body.length - 200 * 1024, server.getBytesServed());
+    }
+
+    @Test
+    public void checksumMismatch_failsAndKeepsNothing() throws Exception {
+        byte[] other = Arrays.copyOf(body, body.length);
+        other[0]++;
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), sha256Hex(other));
+
+        assertNull(listener.await(MEDIA_ID));
+        assertTrue(listener.errors.get(MEDIA_ID) instanceof OfflineDownloader.ChecksumMismatchException);
+        assertNull(downloader.getDownloadedFile(MEDIA_ID));
+        assertFalse(new File(directory, OfflineDownloader.fileNameFor(MEDIA_ID) + ".part").exists());
+    }
+
+    @Test
+    public void serverDigest_isCheckedWithoutAnExpectedChecksum() throws Exception {
+        byte[] other = Arrays.copyOf(body, body.length);
+        other[0]++;
+        server.addHeader("Repr-Digest: sha-512=:AAAA:, sha-256=:" + sha256Base64(other) + ":");
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null);
+
+        assertNull(listener.await(MEDIA_ID));
+        assertTrue(listener.errors.get(MEDIA_ID) instanceof OfflineDownloader.ChecksumMismatchException);
+        assertNull(downloader.getDownloadedFile(MEDIA_ID));
+    }
+
+    @Test
+    public void legacyDigestHeader_isAccepted() throws Exception {
+        server.addHeader("Digest: SHA-256=" + sha256Base64(body));
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null);
+
+        assertNotNull(listener.await(MEDIA_ID));
+        assertEquals(sha256Hex(body), downloader.getIndex().get(MEDIA_ID).sha256);
+    }
+
+    @Test
+    public void concurrentDownloads_areBounded() throws Exception {
+        // slow enough that every download is still running when the last one is enqueued
+        server.setThrottleBytesPerSecond(1024 * 1024);
+        int count = OfflineDownloader.MAX_CONCURRENT_DOWNLOADS + 2;
+        for (int i = 0; i < count; i++) {
+            downloader.enqueue("track:" + i, server.url("/" + i + ".mp3"), null);
+        }
+        Thread.sleep(100);
+        assertEquals(OfflineDownloader.MAX_CONCURRENT_DOWNLOADS, server.getRequestCount());
+
+        for (int i = 0; i < count; i++) {
+            assertNotNull(listener.await("track:" + i));
+        }
+        assertEquals(count, downloader.getIndex().getAll().size());
+    }
+
+    @Test
+    public void remove_deletesTheFileAndItsEntry() throws Exception {
+        downloader.enqueue(MEDIA_ID, server.url("/one.mp3"), null);
+        File file = listener.await(MEDIA_ID);
+
+        downloader.remove(MEDIA_ID);
+
+        assertFalse(file.exists());
+        assertNull(downloader.getDownloadedFile(MEDIA_ID));
+        assertNull(new DownloadIndex(directory).get(MEDIA_ID));
+    }
+
+    private static String sha256Hex(byte[] bytes) throws Exception {
+        return OfflineDownloader.toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private static String sha256Base64(byte[] bytes) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private static class RecordingListener implements OfflineDownloader.Listener {
+        final Map<String, File> files = new ConcurrentHashMap<>();
+        final Map<String, IOException> errors = new ConcurrentHashMap<>();
+        final Map<String, CountDownLatch> finished = new ConcurrentHashMap<>();
+
+        @Override
+        public void onDownloadFinished(String mediaId, File file, IOException error) {
+            if (file != null) {
+                files.put(mediaId, file);
+            }
+            if (error != null) {
+                errors.put(mediaId, error);
+            }
+            latch(mediaId).countDown();
+        }
+
+        // the downloaded file, or null if it failed
+        File await(String mediaId) throws InterruptedException {
+            assertTrue(latch(mediaId).await(20, TimeUnit.SECONDS));
+            return files.get(mediaId);
+        }
+
+        private CountDownLatch latch(String mediaId) {
+            return finished.computeIfAbsent(mediaId, id -> new CountDownLatch(1));
+        }
+    }
+}
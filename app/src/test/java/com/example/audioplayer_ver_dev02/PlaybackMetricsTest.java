@@ -0,0 +1,113 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for PlaybackMetrics, driven with synthetic timestamps.
+ */
+public class PlaybackMetricsTest {
+
+    // same values as Player.STATE_*, without pulling media3 into a JVM test
+    private static final int STATE_IDLE = 1;
+    private static final int STATE_BUFFERING = 2;
+    private static final int STATE_READY = 3;
+
+    @Test
+    public void timeToFirstAudio_isMeasuredFromItemStart() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.onItemStart(1_000);
+        metrics.onFirstAudio(1_300);
+        metrics.onItemStart(5_000);
+        metrics.onFirstAudio(5_100);
+        // position advancing again without a new item start (ex. after a rebuffer) is not a new sample
+        metrics.onFirstAudio(9_000);
+
+        PlaybackMetrics.Snapshot snapshot = metrics.snapshot(10_000);
+        assertEquals(2, snapshot.firstAudioCount);
+        assertEquals(200, snapshot.firstAudioAverageMs);
+        assertEquals(300, snapshot.firstAudioMaxMs);
+        assertEquals(100, snapshot.lastFirstAudioMs);
+    }
+
+    @Test
+    public void resumes_areTimedApartFromFirstAudio() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.onItemStart(1_000);
+        metrics.onFirstAudio(1_400);
+        // paused, then played again
+        metrics.onResumeStart(3_000);
+        metrics.onFirstAudio(3_050);
+        metrics.onResumeStart(6_000);
+        metrics.onFirstAudio(6_150);
+
+        PlaybackMetrics.Snapshot snapshot = metrics.snapshot(10_000);
+        assertEquals(1, snapshot.firstAudioCount);
+        assertEquals(400, snapshot.firstAudioAverageMs);
+        assertEquals(2, snapshot.resumeCount);
+        assertEquals(100, snapshot.resumeAverageMs);
+        assertEquals(150, snapshot.resumeMaxMs);
+    }
+
+    @Test
+    public void rebuffers_countStallsAndIncludeOngoingOne() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.onRebufferStart(1_000);
+        metrics.onRebufferEnd(1_500);
+        metrics.onRebufferStart(2_000);
+        // a second start while already stalled is the same stall
+        metrics.onRebufferStart(2_100);
+
+        PlaybackMetrics.Snapshot snapshot = metrics.snapshot(2_250);
+        assertEquals(2, snapshot.rebufferCount);
+        assertEquals(750, snapshot.stallTotalMs);
+    }
+
+    @Test
+    public void bufferingAfterSeek_isNotARebuffer() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.onSeek();
+        metrics.onRebufferStart(1_000);
+        metrics.onRebufferEnd(1_500);
+        // audio advanced again; the next buffering is a stall
+        metrics.onFirstAudio(1_600);
+        metrics.onRebufferStart(3_000);
+        metrics.onRebufferEnd(3_200);
+
+        PlaybackMetrics.Snapshot snapshot = metrics.snapshot(10_000);
+        assertEquals(1, snapshot.rebufferCount);
+        assertEquals(200, snapshot.stallTotalMs);
+    }
+
+    @Test
+    public void stateTime_accumulatesPerState() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.onStateChanged(STATE_IDLE, 0);
+        metrics.onStateChanged(STATE_BUFFERING, 100);
+        metrics.onStateChanged(STATE_READY, 400);
+        metrics.onStateChanged(STATE_BUFFERING, 1_400);
+        metrics.onStateChanged(STATE_READY, 1_500);
+
+        long[] stateTimeMs = metrics.snapshot(2_000).stateTimeMs;
+        assertEquals(100, stateTimeMs[STATE_IDLE]);
+        assertEquals(400, stateTimeMs[STATE_BUFFERING]);
+        assertEquals(1_500, stateTimeMs[STATE_READY]);
+    }
+
+    @Test
+    public void loading_sumsBytesAndKeepsLatestBandwidth() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.onLoadCompleted(1_000);
+        metrics.onLoadCompleted(2_000);
+        metrics.onBandwidthEstimate(500_000);
+        metrics.onBandwidthEstimate(800_000);
+        metrics.onDroppedWork(3);
+
+        PlaybackMetrics.Snapshot snapshot = metrics.snapshot(0);
+        assertEquals(3_000, snapshot.bytesLoaded);
+        assertEquals(2, snapshot.loadCount);
+        assertEquals(800_000, snapshot.bandwidthEstimateBps);
+        assertEquals(3, snapshot.droppedWork);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for PositionTicker's position extrapolation.
+ */
+public class PositionTickerTest {
+
+    @Test
+    public void playing_advancesWithElapsedTimeAndSpeed() {
+        assertEquals(11_000, PositionTicker.extrapolate(10_000, 5_000, 1f, 6_000, 0));
+        assertEquals(10_500, PositionTicker.extrapolate(10_000, 5_000, 0.5f, 6_000, 0));
+        assertEquals(12_000, PositionTicker.extrapolate(10_000, 5_000, 2f, 6_000, 0));
+    }
+
+    @Test
+    public void notAdvancing_staysPut() {
+        // paused (speed 0), or the update time is unknown
+        assertEquals(10_000, PositionTicker.extrapolate(10_000, 5_000, 0f, 6_000, 0));
+        assertEquals(10_000, PositionTicker.extrapolate(10_000, 0, 1f, 6_000, 0));
+    }
+
+    @Test
+    public void position_isClampedToTheTrack() {
+        assertEquals(60_000, PositionTicker.extrapolate(59_500, 5_000, 1f, 6_000, 60_000));
+        // rewinding past the start
+        assertEquals(0, PositionTicker.extrapolate(500, 5_000, -1f, 6_000, 60_000));
+        // unknown position
+        assertEquals(0, PositionTicker.extrapolate(-1, 0, 0f, 6_000, 60_000));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for ReconnectionPolicy.
+ */
+public class ReconnectionPolicyTest {
+
+    private static final long BASE_MS = 500;
+    private static final long MAX_MS = 30_000;
+
+    @Test
+    public void delays_doubleWithinTheirJitterRange_upToTheCap() {
+        ReconnectionPolicy policy = new ReconnectionPolicy(BASE_MS, MAX_MS, new Random(42));
+        for (int attempt = 0; attempt < 20; attempt++) {
+            long ceilingMs = Math.min(MAX_MS, BASE_MS << attempt);
+            long delayMs = policy.nextDelayMs();
+            assertTrue("attempt " + attempt + ": " + delayMs, delayMs >= ceilingMs / 2 && delayMs <= ceilingMs);
+        }
+        assertEquals(20, policy.getAttempts());
+    }
+
+    @Test
+    public void delays_areSpreadOut() {
+        // without jitter, every client would retry at the same instant
+        ReconnectionPolicy policy = new ReconnectionPolicy(BASE_MS, MAX_MS, new Random(42));
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 100; i++) {
+            policy.reset();
+            long delayMs = policy.nextDelayMs();
+            min = Math.min(min, delayMs);
+            max = Math.max(max, delayMs);
+        }
+        assertTrue(max - min > BASE_MS / 4);
+    }
+
+    @Test
+    public void reset_startsFromTheBaseDelayAgain() {
+        ReconnectionPolicy policy = new ReconnectionPolicy(BASE_MS, MAX_MS, new Random(42));
+        for (int i = 0; i < 10; i++) {
+            policy.nextDelayMs();
+        }
+
+        policy.reset();
+
+        assertEquals(0, policy.getAttempts());
+        assertTrue(policy.nextDelayMs() <= BASE_MS);
+    }
+
+    @Test
+    public void manyAttempts_dontOverflow() {
+        ReconnectionPolicy policy = new ReconnectionPolicy(BASE_MS, MAX_MS, new Random(42));
+        for (int i = 0; i < 100; i++) {
+            long delayMs = policy.nextDelayMs();
+            assertTrue(delayMs > 0 && delayMs <= MAX_MS);
+        }
+    }
+}
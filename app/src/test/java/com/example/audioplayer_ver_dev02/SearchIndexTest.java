@@ -0,0 +1,78 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for SearchIndex.
+ */
+public class SearchIndexTest {
+
+    private SearchIndex searchIndex;
+
+    @Before
+    public void setUp() {
+        searchIndex = new SearchIndex();
+        searchIndex.put("track:1", "Let It Be", "The Beatles", "Let It Be");
+        searchIndex.put("track:2", "Beat It", "Michael Jackson", "Thriller");
+        searchIndex.put("track:3", "Halo", "Beyonc\u00e9", "I Am... Sasha Fierce");
+        searchIndex.put("track:4", "Here Comes the Sun", "The Beatles", "Abbey Road");
+    }
+
+    @Test
+    public void prefix_matchesWholeAndPartialTokens() {
+        List<String> results = searchIndex.search("beat", 10);
+        assertEquals(3, results.size());
+        // a whole-token title match beats prefix matches on the artist
+        assertEquals("track:2", results.get(0));
+    }
+
+    @Test
+    public void everyQueryToken_mustMatch() {
+        assertEquals(Collections.singletonList("track:4"), searchIndex.search("beatles sun", 10));
+        assertTrue(searchIndex.search("beatles thriller", 10).isEmpty());
+    }
+
+    @Test
+    public void accentsAndCase_areIgnored() {
+        assertEquals(Collections.singletonList("track:3"), searchIndex.search("BEYONCE", 10));
+    }
+
+    @Test
+    public void ties_areBrokenByTitle() {
+        assertEquals(Arrays.asList("track:4", "track:1"), searchIndex.search("beatles", 10));
+    }
+
+    @Test
+    public void limit_keepsOnlyTheBestMatches() {
+        assertEquals(Collections.singletonList("track:2"), searchIndex.search("beat", 1));
+    }
+
+    @Test
+    public void put_replacesAndRemove_forgetsATrack() {
+        searchIndex.put("track:2", "Billie Jean", "Michael Jackson", "Thriller");
+        assertEquals(Arrays.asList("track:1", "track:4"), sorted(searchIndex.search("beat", 10)));
+        assertEquals(Collections.singletonList("track:2"), searchIndex.search("billie", 10));
+
+        searchIndex.remove("track:2");
+        assertTrue(searchIndex.search("jackson", 10).isEmpty());
+        assertEquals(3, searchIndex.size());
+    }
+
+    @Test
+    public void queryWithoutWords_returnsNothing() {
+        assertTrue(searchIndex.search("  ...  ", 10).isEmpty());
+    }
+
+    private static List<String> sorted(List<String> list) {
+        String[] array = list.toArray(new String[0]);
+        Arrays.sort(array);
+        return Arrays.asList(array);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for SubscriptionTracker.
+ */
+public class SubscriptionTrackerTest {
+
+    private final SubscriptionTracker tracker = new SubscriptionTracker();
+
+    @Test
+    public void parent_isSubscribedUntilItsLastClientLeaves() {
+        tracker.subscribed("album:A", "auto");
+        tracker.subscribed("album:A", "phone");
+        assertEquals(2, tracker.clientCount("album:A"));
+
+        tracker.unsubscribed("album:A", "auto");
+        assertTrue(tracker.isSubscribed("album:A"));
+
+        tracker.unsubscribed("album:A", "phone");
+        assertFalse(tracker.isSubscribed("album:A"));
+        assertTrue(tracker.subscribedParents().isEmpty());
+    }
+
+    @Test
+    public void everySubscriptionOfAClient_isCounted() {
+        // ex. two pages of the same album
+        tracker.subscribed("album:A", "auto");
+        tracker.subscribed("album:A", "auto");
+        assertEquals(1, tracker.clientCount("album:A"));
+
+        tracker.unsubscribed("album:A", "auto");
+        assertTrue(tracker.isSubscribed("album:A"));
+        tracker.unsubscribed("album:A", "auto");
+        assertFalse(tracker.isSubscribed("album:A"));
+    }
+
+    @Test
+    public void unknownUnsubscribe_isIgnored() {
+        tracker.subscribed("root", "phone");
+        tracker.unsubscribed("root", "auto");
+        tracker.unsubscribed("album:B", "phone");
+        assertEquals(Collections.singletonList("root"), tracker.subscribedParents());
+    }
+
+    @Test
+    public void reconnectingClient_losesItsOldSubscriptions() {
+        tracker.subscribed("root", "auto");
+        tracker.subscribed("album:A", "auto");
+        tracker.subscribed("album:A", "auto");
+        tracker.subscribed("album:A", "phone");
+
+        // auto disconnected without unsubscribing, then connected again
+        tracker.connected("auto");
+
+        assertEquals(Collections.singletonList("album:A"), tracker.subscribedParents());
+        assertEquals(1, tracker.clientCount("album:A"));
+        tracker.unsubscribed("album:A", "phone");
+        assertFalse(tracker.isSubscribed("album:A"));
+    }
+
+    @Test
+    public void subscribedParents_listsEveryParentOnce() {
+        tracker.subscribed("root", "phone");
+        tracker.subscribed("album:A", "phone");
+        tracker.subscribed("album:A", "auto");
+        List<String> parents = tracker.subscribedParents();
+        Collections.sort(parents);
+        assertEquals(Arrays.asList("album:A", "root"), parents);
+    }
+}
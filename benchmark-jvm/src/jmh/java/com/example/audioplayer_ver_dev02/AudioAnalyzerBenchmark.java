@@ -0,0 +1,68 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AudioAnalyzer's cost for one second of 48 kHz stereo 16-bit PCM, in the buffers the player hands to its audio processors.
+ * oneSecondOfAudio (audio path + every analysis pass) has to stay under 10 ms, i.e. 1% of one core; the build fails when
+ * it doesn't (checkAudioAnalyzerBudget in this module's build.gradle, run after every jmh run).
+ * writeOnly is the part that runs on the playback thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AudioAnalyzerBenchmark {
+
+    private static final int SAMPLE_RATE = 48_000;
+    private static final int CHANNELS = 2;
+    // ~21 ms, about what the player queues at a time
+    private static final int FRAMES_PER_BUFFER = 1024;
+    private static final int BUFFERS_PER_SECOND = (SAMPLE_RATE + FRAMES_PER_BUFFER - 1) / FRAMES_PER_BUFFER;
+
+    private final AudioAnalyzer analyzer = new AudioAnalyzer();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(FRAMES_PER_BUFFER * CHANNELS * 2).order(ByteOrder.nativeOrder());
+    private float lastRmsDb;
+
+    @Setup
+    public void setUp() {
+        // music-ish: a few tones plus noise
+        Random random = new Random(42);
+        for (int i = 0; i < FRAMES_PER_BUFFER; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double sample = 0.3 * Math.sin(2 * Math.PI * 220 * t) + 0.2 * Math.sin(2 * Math.PI * 1760 * t) + 0.05 * random.nextGaussian();
+            short value = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(sample * 32767)));
+            buffer.putShort(value).putShort(value);
+        }
+        buffer.flip();
+        analyzer.setSampleRate(SAMPLE_RATE);
+        analyzer.addListener(frame -> lastRmsDb = frame.rmsDb);
+    }
+
+    @Benchmark
+    public float oneSecondOfAudio() {
+        for (int i = 0; i < BUFFERS_PER_SECOND; i++) {
+            analyzer.writePcm16(buffer, CHANNELS);
+            // the analysis thread's work, done inline so all of it is measured
+            analyzer.analyze();
+        }
+        return lastRmsDb;
+    }
+
+    @Benchmark
+    public void writeOnly() {
+        for (int i = 0; i < BUFFERS_PER_SECOND; i++) {
+            analyzer.writePcm16(buffer, CHANNELS);
+        }
+    }
+}
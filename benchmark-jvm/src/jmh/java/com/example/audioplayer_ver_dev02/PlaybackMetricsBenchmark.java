@@ -0,0 +1,56 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PlaybackMetrics recording, which runs on every player event (through PlaybackMetricsListener), and snapshots,
+ * including snapshots taken while the player thread keeps recording.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaybackMetricsBenchmark {
+
+    // same values as Player.STATE_*
+    private static final int STATE_BUFFERING = 2;
+    private static final int STATE_READY = 3;
+
+    private final PlaybackMetrics playbackMetrics = new PlaybackMetrics();
+    private long nowMs;
+
+    // the events of a typical buffering -> ready transition with a finished load
+    @Benchmark
+    @Group("recordOnly")
+    public void recordStateAndLoad() {
+        long now = nowMs++;
+        playbackMetrics.onStateChanged(STATE_BUFFERING, now);
+        playbackMetrics.onRebufferStart(now);
+        playbackMetrics.onLoadCompleted(64 * 1024);
+        playbackMetrics.onBandwidthEstimate(1_000_000);
+        playbackMetrics.onRebufferEnd(now + 1);
+        playbackMetrics.onStateChanged(STATE_READY, now + 1);
+    }
+
+    @Benchmark
+    @Group("recordWhileSnapshotting")
+    @GroupThreads(1)
+    public void record() {
+        recordStateAndLoad();
+    }
+
+    @Benchmark
+    @Group("recordWhileSnapshotting")
+    @GroupThreads(1)
+    public Object snapshot() {
+        return playbackMetrics.snapshot(nowMs);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.audioplayer_ver_dev02;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SearchIndex queries and updates at library sizes from 1k to 100k tracks.
+ * Titles, artists and albums are drawn from small vocabularies, so common words match large parts of the library,
+ * like they would in a real one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchIndexBenchmark {
+
+    private static final String[] WORDS = {
+            "love", "night", "baby", "heart", "dance", "summer", "blue", "fire",
+            "dream", "road", "river", "light", "rain", "gold", "moon", "home",
+    };
+    private static final int RESULT_LIMIT = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int trackCount;
+
+    private SearchIndex searchIndex;
+    private int nextUpdate;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        searchIndex = new SearchIndex();
+        for (int i = 0; i < trackCount; i++) {
+            searchIndex.put("track:" + i,
+                    WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i,
+                    "Artist " + random.nextInt(Math.max(1, trackCount / 10)),
+                    "Album " + random.nextInt(Math.max(1, trackCount / 12)));
+        }
+    }
+
+    // one common word: matches ~1/8 of the library
+    @Benchmark
+    public List<String> searchWord() {
+        return searchIndex.search("love", RESULT_LIMIT);
+    }
+
+    // what's typed a couple of keystrokes in
+    @Benchmark
+    public List<String> searchPrefix() {
+        return searchIndex.search("lo", RESULT_LIMIT);
+    }
+
+    // two words that both have to match
+    @Benchmark
+    public List<String> searchTwoWords() {
+        return searchIndex.search("love night", RESULT_LIMIT);
+    }
+
+    // one changed track from a library rescan
+    @Benchmark
+    public void updateTrack() {
+        int i = nextUpdate++ % trackCount;
+        searchIndex.put("track:" + i, "updated " + WORDS[i % WORDS.length], "Artist 1", "Album 1");
+    }
+}
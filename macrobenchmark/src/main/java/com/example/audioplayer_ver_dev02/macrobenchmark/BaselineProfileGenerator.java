@@ -0,0 +1,46 @@
+package com.example.audioplayer_ver_dev02.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Generates the app's baseline profile: the classes and methods used by a cold service start, browsing, and the first play,
+ * so they're AOT-compiled at install time instead of interpreted/JIT-compiled on every cold start.
+ * Needs a rooted device or an emulator (api 33+, or a userdebug build).
+ * Copy the resulting *-baseline-prof.txt (see the test output) to app/src/main/baseline-prof.txt.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collectBaselineProfile(BrowseClient.TARGET_PACKAGE, scope -> {
+            // the activity: binds to the service and shows the player
+            scope.pressHome();
+            scope.startActivityAndWait(intent -> Unit.INSTANCE);
+
+            // an outside client: browse the root, then play
+            BrowseClient client = new BrowseClient();
+            try {
+                client.connect();
+                client.loadChildren(client.getRoot());
+                client.playAndWait();
+                client.stop();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            } finally {
+                client.disconnect();
+            }
+            return Unit.INSTANCE;
+        });
+    }
+}
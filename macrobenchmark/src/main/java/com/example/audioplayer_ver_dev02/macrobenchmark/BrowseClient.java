@@ -0,0 +1,100 @@
+package com.example.audioplayer_ver_dev02.macrobenchmark;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.support.v4.media.MediaBrowserCompat;
+import android.support.v4.media.session.MediaControllerCompat;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects to the app's MediaBrowsingService the way an outside client (Android Auto, a media button, etc) would,
+ * and blocks the calling (instrumentation) thread until each step is done.
+ */
+class BrowseClient {
+
+    static final String TARGET_PACKAGE = "com.example.audioplayer_ver_dev02";
+    private static final String SERVICE_CLASS = TARGET_PACKAGE + ".MediaBrowsingService";
+    private static final long TIMEOUT_SECONDS = 20;
+
+    private final Context context = InstrumentationRegistry.getInstrumentation().getContext();
+    private MediaBrowserCompat mediaBrowser;
+    private MediaControllerCompat mediaController;
+
+    // binds to the service (cold starting it, if it isn't running) and waits for the connection
+    void connect() throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+        // MediaBrowserCompat delivers its callbacks on the thread it was created on, which has to have a Looper
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            mediaBrowser = new MediaBrowserCompat(context, new ComponentName(TARGET_PACKAGE, SERVICE_CLASS),
+                    new MediaBrowserCompat.ConnectionCallback() {
+                        @Override
+                        public void onConnected() {
+                            mediaController = new MediaControllerCompat(context, mediaBrowser.getSessionToken());
+                            connected.countDown();
+                        }
+                    }, null);
+            mediaBrowser.connect();
+        });
+        await(connected, "connecting");
+    }
+
+    // subscribes to parentId and waits for its first result
+    void loadChildren(@NonNull String parentId) throws InterruptedException {
+        CountDownLatch loaded = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                mediaBrowser.subscribe(parentId, new MediaBrowserCompat.SubscriptionCallback() {
+                    @Override
+                    public void onChildrenLoaded(@NonNull String id, @NonNull List<MediaBrowserCompat.MediaItem> children) {
+                        loaded.countDown();
+                    }
+
+                    @Override
+                    public void onError(@NonNull String id) {
+                        loaded.countDown();
+                    }
+                }));
+        await(loaded, "loading " + parentId);
+    }
+
+    String getRoot() {
+        return mediaBrowser.getRoot();
+    }
+
+    // sends play and waits for the session to report STATE_PLAYING
+    void playAndWait() throws InterruptedException {
+        CountDownLatch playing = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            mediaController.registerCallback(new MediaControllerCompat.Callback() {
+                @Override
+                public void onPlaybackStateChanged(PlaybackStateCompat state) {
+                    if (state != null && state.getState() == PlaybackStateCompat.STATE_PLAYING) {
+                        playing.countDown();
+                    }
+                }
+            });
+            mediaController.getTransportControls().play();
+        });
+        await(playing, "starting playback");
+    }
+
+    void stop() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> mediaController.getTransportControls().stop());
+    }
+
+    void disconnect() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> mediaBrowser.disconnect());
+    }
+
+    private static void await(CountDownLatch latch, String what) throws InterruptedException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new AssertionError("timed out " + what);
+        }
+    }
+}
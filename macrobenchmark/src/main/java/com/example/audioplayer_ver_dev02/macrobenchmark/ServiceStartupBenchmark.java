@@ -0,0 +1,88 @@
+package com.example.audioplayer_ver_dev02.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.TraceSectionMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import kotlin.Unit;
+
+/**
+ * Cold start benchmarks of MediaBrowsingService, driven through MediaBrowserCompat like an outside client.
+ * The metrics are the trace sections the service's StartupTracer emits (see StartupTracer's PHASE_* constants),
+ * so what's measured is the service's own view of each phase, not the benchmark's connection overhead.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ServiceStartupBenchmark {
+
+    // StartupTracer.SECTION_PREFIX + phase
+    private static final String SECTION_CREATE = "AudioPlayer:create";
+    private static final String SECTION_FIRST_ROOT = "AudioPlayer:first_root";
+    private static final String SECTION_FIRST_CHILDREN = "AudioPlayer:first_children";
+    private static final String SECTION_PLAY_TO_AUDIO = "AudioPlayer:play_to_audio";
+
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartToFirstLoadChildren() {
+        benchmarkRule.measureRepeated(
+                BrowseClient.TARGET_PACKAGE,
+                Arrays.asList(
+                        new TraceSectionMetric(SECTION_CREATE),
+                        new TraceSectionMetric(SECTION_FIRST_ROOT),
+                        new TraceSectionMetric(SECTION_FIRST_CHILDREN)),
+                CompilationMode.DEFAULT,
+                StartupMode.COLD,
+                ITERATIONS,
+                scope -> Unit.INSTANCE,
+                scope -> {
+                    BrowseClient client = new BrowseClient();
+                    try {
+                        client.connect();
+                        client.loadChildren(client.getRoot());
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    } finally {
+                        client.disconnect();
+                    }
+                    return Unit.INSTANCE;
+                });
+    }
+
+    // the default item is the hard-coded stream, so this also measures the network; run it on a stable connection
+    @Test
+    public void coldStartPlayToAudio() {
+        benchmarkRule.measureRepeated(
+                BrowseClient.TARGET_PACKAGE,
+                Arrays.asList(new TraceSectionMetric(SECTION_PLAY_TO_AUDIO)),
+                CompilationMode.DEFAULT,
+                StartupMode.COLD,
+                ITERATIONS,
+                scope -> Unit.INSTANCE,
+                scope -> {
+                    BrowseClient client = new BrowseClient();
+                    try {
+                        client.connect();
+                        client.playAndWait();
+                        // the section ends once audio actually advances, a little after STATE_PLAYING
+                        Thread.sleep(1000);
+                        client.stop();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    } finally {
+                        client.disconnect();
+                    }
+                    return Unit.INSTANCE;
+                });
+    }
+}